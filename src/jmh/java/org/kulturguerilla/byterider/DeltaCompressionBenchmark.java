@@ -0,0 +1,132 @@
+package org.kulturguerilla.byterider;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * encode / decode throughput of {@link DeltaCompression}, and of
+ * {@link StreamVByte} for comparison.
+ *
+ * Input is a random walk with small steps, which is what polylines and other
+ * slowly changing sequences look like.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeltaCompressionBenchmark {
+
+	/** small enough for the 1000000 values to be split among all cores. */
+	static final int CHUNK_SIZE = 1 << 14;
+
+	@Param({"100", "10000", "1000000"})
+	int size;
+
+	int [] values;
+	byte [] encoded;
+	byte [] encodedDeltas;
+	byte [] encodedPacked;
+	byte [] encodedStreamVByte;
+	CompressedIntArray compressed;
+	byte [] encodedChunks;
+	byte [] encodeBuffer;
+	int [] decodeBuffer;
+	final DeltaCompression.Decoder decoder = new DeltaCompression.Decoder();
+
+	@Setup public void setup() {
+		Random random = new Random(42);
+		values = new int[size];
+		int current = 0;
+		for (int i = 0; i < size; ++i) {
+			current += random.nextInt(2001) - 1000;
+			values[i] = current;
+		}
+		encoded = DeltaCompression.encode(values);
+		encodedDeltas = DeltaCompression.encode(values, DeltaCompression.Mode.DELTAS);
+		encodedPacked = DeltaCompression.encodePacked(values);
+		encodedStreamVByte = StreamVByte.encode(values);
+		compressed = CompressedIntArray.of(values);
+		encodedChunks = ChunkedCompression.encode(values, CHUNK_SIZE);
+		encodeBuffer = new byte[Math.max(DeltaCompression.maxPackedLength(size),
+				StreamVByte.maxEncodedLength(size))];
+		decodeBuffer = new int[size];
+	}
+
+	@Benchmark public byte [] encode() {
+		return DeltaCompression.encode(values);
+	}
+
+	@Benchmark public int [] decode() {
+		return DeltaCompression.decode(encoded);
+	}
+
+	@Benchmark public int encodeInto() {
+		return DeltaCompression.encode(values, 0, values.length, encodeBuffer, 0);
+	}
+
+	@Benchmark public int decodeInto() {
+		return DeltaCompression.decode(encoded, 0, encoded.length, decodeBuffer, 0);
+	}
+
+	@Benchmark public long decodeLazily() {
+		decoder.reset(encoded, 0, encoded.length);
+		long sum = 0;
+		while (decoder.hasNext()) {
+			sum += decoder.nextInt();
+		}
+		return sum;
+	}
+
+	@Benchmark public int encodeDeltas() {
+		return DeltaCompression.encode(values, 0, values.length, DeltaCompression.Mode.DELTAS, encodeBuffer, 0);
+	}
+
+	@Benchmark public int decodeDeltas() {
+		return DeltaCompression.decode(encodedDeltas, 0, encodedDeltas.length, DeltaCompression.Mode.DELTAS,
+				decodeBuffer, 0);
+	}
+
+	@Benchmark public int encodePacked() {
+		return DeltaCompression.encodePacked(values, 0, values.length, encodeBuffer, 0);
+	}
+
+	@Benchmark public int decodePacked() {
+		return DeltaCompression.decodePacked(encodedPacked, 0, decodeBuffer, 0);
+	}
+
+	@Benchmark public int encodeStreamVByte() {
+		return StreamVByte.encode(values, 0, values.length, encodeBuffer, 0);
+	}
+
+	@Benchmark public int decodeStreamVByte() {
+		return StreamVByte.decode(encodedStreamVByte, 0, decodeBuffer, 0);
+	}
+
+	/** 100 values from the middle, through the skip index. */
+	@Benchmark public int decodeRangeCompressed() {
+		int count = Math.min(100, size);
+		return compressed.get((size - count) / 2, decodeBuffer, 0, count);
+	}
+
+	@Benchmark public byte [] encodeChunks() {
+		return ChunkedCompression.encode(values, CHUNK_SIZE);
+	}
+
+	@Benchmark public int decodeChunks() {
+		return ChunkedCompression.decode(encodedChunks, decodeBuffer, 0);
+	}
+}
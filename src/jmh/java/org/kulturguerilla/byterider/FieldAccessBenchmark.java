@@ -0,0 +1,214 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kulturguerilla.byterider.examples.BitMaskBasedExample;
+import org.kulturguerilla.byterider.examples.ByteRiderExample;
+import org.kulturguerilla.byterider.examples.ExampleInterface.SampleEnum;
+import org.kulturguerilla.byterider.examples.GeneratedExample;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * get / set throughput of the individual field implementations, compared to
+ * the hand-written masks of {@link BitMaskBasedExample} and to a plain object
+ * that stores every attribute in its own field.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessBenchmark {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private static final BoolField boolField = br.addBool("bool");
+	private static final IntField  intField  = br.addInt(-4, 4, "int");
+	private static final LongField longField = br.addLong(1L << 40, "long");
+	private static final IntMappedObjField<SampleEnum> objField = br.addEnum(
+			SampleEnum.class, "enum");
+
+	static {
+		br.checkFields();
+	}
+
+	/** same layout, specialized by freeze(). */
+	static ByteRider frozenBr = new ByteRider(Size.LONG_SET);
+
+	private static final IntField  frozenIntField;
+	private static final LongField frozenLongField;
+
+	static {
+		frozenBr.addBool("bool");
+		IntField i = frozenBr.addInt(-4, 4, "int");
+		LongField l = frozenBr.addLong(1L << 40, "long");
+		frozenBr.freeze();
+		frozenIntField = frozenBr.frozen(i);
+		frozenLongField = frozenBr.frozen(l);
+	}
+
+	/** unpacked reference: one java field per attribute. */
+	public static class Pojo {
+		boolean bool;
+		int intValue;
+		long longValue;
+		SampleEnum sampleEnum;
+	}
+
+	long data;
+	boolean boolValue = true;
+	int intValue = 3;
+	long longValue = 1L << 33;
+	SampleEnum enumValue = SampleEnum.TWO;
+
+	Pojo pojo = new Pojo();
+	BitMaskBasedExample bitMasked = new BitMaskBasedExample(true, 3,
+			SampleEnum.TWO);
+	ByteRiderExample byteRiderExample = new ByteRiderExample(true, 3,
+			SampleEnum.TWO);
+	GeneratedExample generatedExample = new GeneratedExample(true, 3,
+			SampleEnum.TWO);
+
+	// byte rider fields
+
+	@Benchmark public boolean boolGet() {
+		return boolField.get(data);
+	}
+
+	@Benchmark public long boolSet() {
+		return data = boolField.set(data, boolValue);
+	}
+
+	@Benchmark public int intGet() {
+		return intField.get(data);
+	}
+
+	@Benchmark public long intSet() {
+		return data = intField.set(data, intValue);
+	}
+
+	@Benchmark public long longGet() {
+		return longField.get(data);
+	}
+
+	@Benchmark public long longSet() {
+		return data = longField.set(data, longValue);
+	}
+
+	@Benchmark public SampleEnum objGet() {
+		return objField.get(data);
+	}
+
+	@Benchmark public long objSet() {
+		return data = objField.set(data, enumValue);
+	}
+
+	// frozen byte rider fields
+
+	@Benchmark public int frozenIntGet() {
+		return frozenIntField.get(data);
+	}
+
+	@Benchmark public long frozenIntSet() {
+		return data = frozenIntField.set(data, intValue);
+	}
+
+	@Benchmark public long frozenLongGet() {
+		return frozenLongField.get(data);
+	}
+
+	// hand-written masks
+
+	@Benchmark public boolean bitMaskBoolGet() {
+		return bitMasked.booleanField();
+	}
+
+	@Benchmark public int bitMaskIntGet() {
+		return bitMasked.intField();
+	}
+
+	@Benchmark public void bitMaskIntSet() {
+		bitMasked.setIntField(intValue);
+	}
+
+	@Benchmark public SampleEnum bitMaskEnumGet() {
+		return bitMasked.sampleEnum();
+	}
+
+	@Benchmark public void bitMaskEnumSet() {
+		bitMasked.setSampleEnum(SampleEnum.TWO);
+	}
+
+	// same layout as the hand-written one, but through byte rider
+
+	@Benchmark public int exampleIntGet() {
+		return byteRiderExample.intField();
+	}
+
+	@Benchmark public void exampleIntSet() {
+		byteRiderExample.setIntField(intValue);
+	}
+
+	@Benchmark public SampleEnum exampleEnumGet() {
+		return byteRiderExample.sampleEnum();
+	}
+
+	// same layout, accessors generated from @BitLayout
+
+	@Benchmark public int generatedIntGet() {
+		return generatedExample.intField();
+	}
+
+	@Benchmark public void generatedIntSet() {
+		generatedExample.setIntField(intValue);
+	}
+
+	@Benchmark public SampleEnum generatedEnumGet() {
+		return generatedExample.sampleEnum();
+	}
+
+	// plain object
+
+	@Benchmark public boolean pojoBoolGet() {
+		return pojo.bool;
+	}
+
+	@Benchmark public void pojoBoolSet() {
+		pojo.bool = boolValue;
+	}
+
+	@Benchmark public int pojoIntGet() {
+		return pojo.intValue;
+	}
+
+	@Benchmark public void pojoIntSet() {
+		pojo.intValue = intValue;
+	}
+
+	@Benchmark public long pojoLongGet() {
+		return pojo.longValue;
+	}
+
+	@Benchmark public void pojoLongSet() {
+		pojo.longValue = longValue;
+	}
+
+	@Benchmark public SampleEnum pojoEnumGet() {
+		return pojo.sampleEnum;
+	}
+
+	@Benchmark public void pojoEnumSet() {
+		pojo.sampleEnum = enumValue;
+	}
+}
@@ -0,0 +1,91 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * cost of call sites that see several {@link BitField} implementations.
+ *
+ * The same loop runs once over fields of a single implementation (monomorphic),
+ * over two implementations (bimorphic, still inlined by hotspot) and over all
+ * four implementations (megamorphic, falls back to an itable call).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MegamorphicBenchmark {
+
+	enum Colour { RED, GREEN, BLUE }
+
+	BitField [] monomorphic;
+	BitField [] bimorphic;
+	BitField [] megamorphic;
+
+	long data = 0xCAFEBABEDEADBEEFL;
+
+	public MegamorphicBenchmark() {
+		ByteRider mono = new ByteRider();
+		monomorphic = new BitField [] {
+			mono.addInt(7, "i0"), mono.addInt(7, "i1"),
+			mono.addInt(7, "i2"), mono.addInt(7, "i3") };
+
+		ByteRider bi = new ByteRider();
+		bimorphic = new BitField [] {
+			bi.addBool("b0"), bi.addInt(7, "i0"),
+			bi.addBool("b1"), bi.addInt(7, "i1") };
+
+		ByteRider mega = new ByteRider();
+		megamorphic = new BitField [] {
+			mega.addBool("b0"), mega.addInt(7, "i0"),
+			mega.addLong(1L << 20, "l0"), mega.addEnum(Colour.class, "e0") };
+	}
+
+	@Benchmark public long clearMonomorphic() {
+		return clearAll(monomorphic, data);
+	}
+
+	@Benchmark public long clearBimorphic() {
+		return clearAll(bimorphic, data);
+	}
+
+	@Benchmark public long clearMegamorphic() {
+		return clearAll(megamorphic, data);
+	}
+
+	@Benchmark public long maskMonomorphic() {
+		return combinedMask(monomorphic);
+	}
+
+	@Benchmark public long maskMegamorphic() {
+		return combinedMask(megamorphic);
+	}
+
+	private static long clearAll(BitField [] fields, long data) {
+		for (BitField f : fields) {
+			data = f.clear(data);
+		}
+		return data;
+	}
+
+	private static long combinedMask(BitField [] fields) {
+		long mask = 0;
+		for (BitField f : fields) {
+			mask |= f.mask();
+		}
+		return mask;
+	}
+}
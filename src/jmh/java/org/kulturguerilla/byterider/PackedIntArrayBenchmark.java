@@ -0,0 +1,75 @@
+package org.kulturguerilla.byterider;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * reading all values of a {@link PackedIntArray}, one by one and in bulk,
+ * against a plain int [], for widths with an aligned and a generic kernel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedIntArrayBenchmark {
+
+	private static final int SIZE = 1 << 20;
+
+	@Param({"3", "8", "13"})
+	int bits;
+
+	int [] plain;
+	PackedIntArray packed;
+	int [] block = new int[1024];
+
+	@Setup public void setup() {
+		Random random = new Random(42);
+		plain = new int[SIZE];
+		packed = new PackedIntArray(0, (1 << bits) - 1, SIZE);
+		for (int i = 0; i < SIZE; ++i) {
+			plain[i] = random.nextInt(1 << bits);
+		}
+		packed.set(0, plain, 0, SIZE);
+	}
+
+	@Benchmark public long plainSum() {
+		long sum = 0;
+		for (int v : plain) {
+			sum += v;
+		}
+		return sum;
+	}
+
+	@Benchmark public long getSum() {
+		long sum = 0;
+		for (int i = 0; i < SIZE; ++i) {
+			sum += packed.get(i);
+		}
+		return sum;
+	}
+
+	@Benchmark public long bulkSum() {
+		long sum = 0;
+		for (int i = 0; i < SIZE; i += block.length) {
+			packed.get(i, block, 0, block.length);
+			for (int v : block) {
+				sum += v;
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,99 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link RecordScan} against a loop reading the fields, for
+ * "freeway and net2Class in [2, 4]" on random records; counting, collecting
+ * and updating the matches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private static final BoolField freeway = br.addBool("freeway");
+	private static final IntField net2Class = br.addInt(6, "net2Class");
+	private static final LongField length = br.addLong(1L << 40, "length");
+
+	@Param({"10000", "1000000"})
+	int size;
+
+	ByteRiderArray records;
+	RecordScan scan;
+	Patch patch;
+
+	@Setup public void setup() {
+		Random random = new Random(42);
+		records = new ByteRiderArray(br, size);
+		for (int i = 0; i < size; ++i) {
+			long data = freeway.set(0L, random.nextBoolean());
+			data = net2Class.set(data, random.nextInt(7));
+			records.append(length.set(data, random.nextInt(100_000)));
+		}
+		scan = br.scan().is(freeway, true).between(net2Class, 2, 4).build();
+		patch = br.update().set(length, 42L).build();
+	}
+
+	@Benchmark public int fieldLoopCount() {
+		int count = 0;
+		for (int i = 0; i < records.size(); ++i) {
+			long data = records.word(i);
+			int n2c = net2Class.get(data);
+			if (freeway.get(data) && n2c >= 2 && n2c <= 4) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark public int scanCount() {
+		return scan.count(records);
+	}
+
+	@Benchmark public long [] scanBitmap() {
+		return scan.bitmap(records);
+	}
+
+	@Benchmark public int [] scanIndices() {
+		return scan.indices(records);
+	}
+
+	@Benchmark public void fieldLoopUpdate() {
+		for (int i = 0; i < records.size(); ++i) {
+			long data = records.word(i);
+			int n2c = net2Class.get(data);
+			if (freeway.get(data) && n2c >= 2 && n2c <= 4) {
+				records.setWord(i, length.set(data, 42L));
+			}
+		}
+	}
+
+	@Benchmark public int scanUpdate() {
+		return scan.update(records, patch);
+	}
+
+	@Benchmark public int scanParallelUpdate() {
+		return scan.parallelUpdate(records, patch);
+	}
+}
@@ -0,0 +1,72 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link RadixSort} against sorting boxed indices with a comparator reading
+ * the fields, by net2Class, then length, on random records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private static final BoolField freeway = br.addBool("freeway");
+	private static final IntField net2Class = br.addInt(6, "net2Class");
+	private static final LongField length = br.addLong(1L << 40, "length");
+
+	@Param({"10000", "1000000"})
+	int size;
+
+	ByteRiderArray records;
+
+	@Setup public void setup() {
+		Random random = new Random(42);
+		records = new ByteRiderArray(br, size);
+		for (int i = 0; i < size; ++i) {
+			long data = freeway.set(0L, random.nextBoolean());
+			data = net2Class.set(data, random.nextInt(7));
+			records.append(length.set(data, random.nextInt(100_000)));
+		}
+	}
+
+	@Benchmark public Integer [] comparatorOrder() {
+		Integer [] order = new Integer[size];
+		for (int i = 0; i < size; ++i) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.<Integer>comparingInt(i -> net2Class.get(records, i))
+				.thenComparingLong(i -> length.get(records, i)));
+		return order;
+	}
+
+	@Benchmark public int [] radixOrder() {
+		return RadixSort.order(records, net2Class, length);
+	}
+
+	@Benchmark public int [] parallelRadixOrder() {
+		return RadixSort.parallelOrder(records, net2Class, length);
+	}
+}
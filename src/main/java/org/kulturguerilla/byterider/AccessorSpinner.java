@@ -0,0 +1,478 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spins a class per field for {@link ByteRider#freeze()}.
+ *
+ * The spun class extends the regular implementation (so everything but the
+ * hot path is inherited) and overrides get / set / clear with code that has
+ * mask, offset and minimum value as constants in the bytecode. The class is
+ * defined as hidden class in this package, or as anonymous class through
+ * sun.misc.Unsafe on runtimes older than java 15; as each field gets its own
+ * class, a call site using a single field stays monomorphic and the JIT
+ * inlines the constants.
+ *
+ * The generated methods contain no branches (range checks call a static
+ * method with the range as constants), so no stack map frames are needed.
+ * Neither do they pass this anywhere: before java 15 the verifier can't load
+ * an anonymous class by name to check it is assignable to its super class.
+ */
+final class AccessorSpinner {
+
+	private static final Logger log = LoggerFactory.getLogger(AccessorSpinner.class);
+
+	private static final Definer definer = Definer.create();
+
+	private AccessorSpinner() {
+	}
+
+	/**
+	 * @return a specialized copy of f, or f itself if there is none for its type
+	 *   or the runtime can define neither hidden nor anonymous classes.
+	 */
+	static BitField specialize(BitField f) {
+		if (definer == null) {
+			return f;
+		} else if (f.getClass() == BoolImpl.class) {
+			BoolImpl b = (BoolImpl) f;
+			return definer.define(boolClass(b), b.highestBit(), b.name());
+		} else if (f.getClass() == IntImpl.class) {
+			IntImpl i = (IntImpl) f;
+			return definer.define(intClass(i), i.mask(), i.offset(), i.minValue(),
+					i.maxValue(), i.name(), i.highestBit());
+		} else if (f.getClass() == LongImpl.class) {
+			LongImpl l = (LongImpl) f;
+			return definer.define(longClass(l), l.mask(), l.offset(), l.minValue(),
+					l.maxValue(), l.name(), l.highestBit());
+		} else if (f instanceof ObjFieldImpl) {
+			ObjFieldImpl<?> o = (ObjFieldImpl<?>) f;
+			return o.withIntField((IntField) specialize(o.intField));
+		} else if (f instanceof NullableBitField) {
+			return specializeCodes((NullableBitField<?>) f);
+		}
+		return f;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <F extends BitField> BitField specializeCodes(NullableBitField<F> f) {
+		return f.withCodes((F) specialize(f.codes));
+	}
+
+	static byte [] boolClass(BoolImpl b) {
+		long mask = b.mask();
+		int idx = b.highestBit() & 63;
+		ClassFile cf = new ClassFile("FrozenBool", BoolImpl.class);
+		cf.constructor("(ILjava/lang/String;)V", Op.ILOAD, 1, Op.ALOAD, 2);
+
+		Code get = cf.method("get", "(J)Z", 3);
+		get.lload(1).ldc(idx).lushr().ldc(1L).land().l2i().ireturn();
+
+		Code set = cf.method("set", "(J)J", 3);
+		set.lload(1).ldc(mask).lor().lreturn();
+
+		Code setVal = cf.method("set", "(JZ)J", 4);
+		setVal.lload(1).ldc(~mask).land().iload(3).i2l().ldc(idx).lshl().lor().lreturn();
+
+		Code clear = cf.method("clear", "(J)J", 3);
+		clear.lload(1).ldc(~mask).land().lreturn();
+		return cf.toBytes();
+	}
+
+	static byte [] intClass(IntImpl i) {
+		long mask = i.mask();
+		long min = i.minValue();
+		ClassFile cf = new ClassFile("FrozenInt", IntImpl.class);
+		cf.constructor("(JIIILjava/lang/String;I)V", Op.LLOAD, 1, Op.ILOAD, 3, Op.ILOAD, 4,
+				Op.ILOAD, 5, Op.ALOAD, 6, Op.ILOAD, 7);
+
+		Code get = cf.method("get", "(J)I", 3);
+		get.lload(1).ldc(mask).land().ldc(i.offset()).lushr().ldc(min).ladd().l2i().ireturn();
+
+		Code set = cf.method("set", "(JI)J", 4);
+		set.iload(3).i2l().ldc(min).ldc((long) i.maxValue()).checkRange()
+			.lload(1).ldc(~mask).land()
+			.iload(3).i2l().ldc(min).lsub().ldc(i.offset()).lshl().lor().lreturn();
+
+		Code clear = cf.method("clear", "(J)J", 3);
+		clear.lload(1).ldc(~mask).land().lreturn();
+		return cf.toBytes();
+	}
+
+	static byte [] longClass(LongImpl l) {
+		long mask = l.mask();
+		long min = l.minValue();
+		ClassFile cf = new ClassFile("FrozenLong", LongImpl.class);
+		cf.constructor("(JIJJLjava/lang/String;I)V", Op.LLOAD, 1, Op.ILOAD, 3, Op.LLOAD, 4,
+				Op.LLOAD, 6, Op.ALOAD, 8, Op.ILOAD, 9);
+
+		Code get = cf.method("get", "(J)J", 3);
+		get.lload(1).ldc(mask).land().ldc(l.offset()).lushr().ldc(min).ladd().lreturn();
+
+		Code set = cf.method("set", "(JJ)J", 5);
+		set.lload(3).ldc(min).ldc(l.maxValue()).checkRange()
+			.lload(1).ldc(~mask).land()
+			.lload(3).ldc(min).lsub().ldc(l.offset()).lshl().lor().lreturn();
+
+		Code clear = cf.method("clear", "(J)J", 3);
+		clear.lload(1).ldc(~mask).land().lreturn();
+		return cf.toBytes();
+	}
+
+	/**
+	 * defines classes in this package that are unloaded with their field:
+	 * hidden classes through MethodHandles.Lookup#defineHiddenClass (java 15
+	 * and later), anonymous classes through sun.misc.Unsafe before. Both are
+	 * looked up reflectively since this library is built for java 8.
+	 */
+	abstract static class Definer {
+
+		/** @return a definer for this runtime, null if there is none. */
+		static Definer create() {
+			try {
+				return new Hidden();
+			} catch (ReflectiveOperationException e) {
+				log.debug("no hidden classes on this runtime, trying anonymous classes");
+			}
+			try {
+				return new Anonymous();
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				log.debug("no anonymous classes on this runtime, fields won't be specialized");
+				return null;
+			}
+		}
+
+		abstract Class<?> defineClass(byte [] classFile) throws ReflectiveOperationException;
+
+		BitField define(byte [] classFile, Object... args) {
+			try {
+				return (BitField) defineClass(classFile).getDeclaredConstructors()[0].newInstance(args);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("failed to define specialized field", e);
+			}
+		}
+	}
+
+	static final class Hidden extends Definer {
+		private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+		private final Method defineHiddenClass;
+		private final Object noOptions;
+
+		Hidden() throws ReflectiveOperationException {
+			Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+			noOptions = Array.newInstance(option, 0);
+			defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+					byte[].class, boolean.class, noOptions.getClass());
+		}
+
+		@Override Class<?> defineClass(byte [] classFile) throws ReflectiveOperationException {
+			return ((MethodHandles.Lookup) defineHiddenClass.invoke(lookup, classFile, true, noOptions))
+				.lookupClass();
+		}
+	}
+
+	/** what java 8 spins lambdas with, gone since java 17. */
+	static final class Anonymous extends Definer {
+		private final Object unsafe;
+		private final Method defineAnonymousClass;
+
+		Anonymous() throws ReflectiveOperationException {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+			defineAnonymousClass = unsafeClass.getMethod("defineAnonymousClass",
+					Class.class, byte[].class, Object[].class);
+		}
+
+		@Override Class<?> defineClass(byte [] classFile) throws ReflectiveOperationException {
+			// the host class puts the new class into this package
+			return (Class<?>) defineAnonymousClass.invoke(unsafe, AccessorSpinner.class, classFile, null);
+		}
+	}
+
+	/** the few opcodes needed here. */
+	static final class Op {
+		static final int ILOAD = 0x15, LLOAD = 0x16, ALOAD = 0x19;
+		static final int LADD = 0x61, LSUB = 0x65, LSHL = 0x79, LUSHR = 0x7d;
+		static final int LAND = 0x7f, LOR = 0x81, I2L = 0x85, L2I = 0x88;
+		static final int IRETURN = 0xac, LRETURN = 0xad, RETURN = 0xb1;
+		static final int BIPUSH = 0x10, LDC_W = 0x13, LDC2_W = 0x14;
+		static final int INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+		private Op() {
+		}
+	}
+
+	/**
+	 * minimal class file writer: a constant pool, a constructor delegating to
+	 * the super class and a handful of straight-line methods.
+	 */
+	static final class ClassFile {
+		private static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+		private final List<byte []> pool = new ArrayList<>();
+		private final Map<String, Integer> poolIndex = new HashMap<>();
+		private int poolSize = 1;
+
+		private final int thisClass;
+		private final int superClass;
+		private final String superName;
+		private final List<Code> methods = new ArrayList<>();
+
+		ClassFile(String simpleName, Class<?> superClass) {
+			this.superName = internalName(superClass);
+			String pkg = superName.substring(0, superName.lastIndexOf('/') + 1);
+			this.thisClass = classRef(pkg + simpleName);
+			this.superClass = classRef(superName);
+		}
+
+		/** a constructor passing all its arguments on to the super constructor. */
+		void constructor(String descriptor, int... loads) {
+			int locals = 1;
+			Code code = method("<init>", descriptor, 0);
+			code.aload(0);
+			for (int i = 0; i < loads.length; i += 2) {
+				code.load(loads[i], loads[i + 1]);
+				locals = loads[i + 1] + (loads[i] == Op.LLOAD ? 2 : 1);
+			}
+			code.maxLocals = locals;
+			code.invoke(Op.INVOKESPECIAL, superName, "<init>", descriptor).vreturn();
+		}
+
+		Code method(String name, String descriptor, int maxLocals) {
+			Code code = new Code(this, utf8(name), utf8(descriptor), maxLocals);
+			methods.add(code);
+			return code;
+		}
+
+		byte [] toBytes() {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				int codeAttribute = utf8("Code");
+				out.writeInt(0xCAFEBABE);
+				out.writeShort(0);
+				out.writeShort(52);
+				out.writeShort(poolSize);
+				for (byte [] entry : pool) {
+					out.write(entry);
+				}
+				out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+				out.writeShort(thisClass);
+				out.writeShort(superClass);
+				out.writeShort(0); // interfaces
+				out.writeShort(0); // fields
+				out.writeShort(methods.size());
+				for (Code m : methods) {
+					m.write(out, codeAttribute);
+				}
+				out.writeShort(0); // attributes
+				return bytes.toByteArray();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		int utf8(String s) {
+			return constant("U" + s, 1, out -> {
+				out.writeByte(1);
+				out.writeUTF(s);
+			});
+		}
+
+		int classRef(String internalName) {
+			int name = utf8(internalName);
+			return constant("C" + internalName, 1, out -> {
+				out.writeByte(7);
+				out.writeShort(name);
+			});
+		}
+
+		int methodRef(String owner, String name, String descriptor) {
+			int cls = classRef(owner);
+			int n = utf8(name);
+			int d = utf8(descriptor);
+			int nameAndType = constant("N" + name + descriptor, 1, out -> {
+				out.writeByte(12);
+				out.writeShort(n);
+				out.writeShort(d);
+			});
+			return constant("M" + owner + "." + name + descriptor, 1, out -> {
+				out.writeByte(10);
+				out.writeShort(cls);
+				out.writeShort(nameAndType);
+			});
+		}
+
+		int longConstant(long value) {
+			return constant("J" + value, 2, out -> {
+				out.writeByte(5);
+				out.writeLong(value);
+			});
+		}
+
+		private int constant(String key, int slots, Entry entry) {
+			Integer idx = poolIndex.get(key);
+			if (idx != null) {
+				return idx;
+			}
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				entry.write(new DataOutputStream(bytes));
+				pool.add(bytes.toByteArray());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			int index = poolSize;
+			poolIndex.put(key, index);
+			poolSize += slots;
+			return index;
+		}
+
+		static String internalName(Class<?> c) {
+			return c.getName().replace('.', '/');
+		}
+
+		interface Entry {
+			void write(DataOutputStream out) throws IOException;
+		}
+	}
+
+	/**
+	 * the (branch free) body of a single method.
+	 */
+	static final class Code {
+		private final ClassFile cf;
+		private final int name;
+		private final int descriptor;
+		private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+		int maxLocals;
+		/** operand stack slots used after the last instruction, and at most. */
+		private int stack;
+		private int maxStack;
+
+		Code(ClassFile cf, int name, int descriptor, int maxLocals) {
+			this.cf = cf;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.maxLocals = maxLocals;
+		}
+
+		/** @param slots the change of the operand stack by the instruction */
+		Code op(int opcode, int slots) {
+			code.write(opcode);
+			stack += slots;
+			maxStack = Math.max(maxStack, stack);
+			return this;
+		}
+
+		Code load(int opcode, int slot) {
+			op(opcode, opcode == Op.LLOAD ? 2 : 1);
+			code.write(slot);
+			return this;
+		}
+
+		Code aload(int slot) { return load(Op.ALOAD, slot); }
+		Code iload(int slot) { return load(Op.ILOAD, slot); }
+		Code lload(int slot) { return load(Op.LLOAD, slot); }
+
+		/** pushes an int shift distance (0..63). */
+		Code ldc(int shift) {
+			op(Op.BIPUSH, 1);
+			code.write(shift);
+			return this;
+		}
+
+		Code ldc(long value) {
+			int idx = cf.longConstant(value);
+			op(Op.LDC2_W, 2);
+			code.write(idx >> 8);
+			code.write(idx);
+			return this;
+		}
+
+		Code land() { return op(Op.LAND, -2); }
+		Code lor() { return op(Op.LOR, -2); }
+		Code ladd() { return op(Op.LADD, -2); }
+		Code lsub() { return op(Op.LSUB, -2); }
+		Code lshl() { return op(Op.LSHL, -1); }
+		Code lushr() { return op(Op.LUSHR, -1); }
+		Code i2l() { return op(Op.I2L, 1); }
+		Code l2i() { return op(Op.L2I, -1); }
+		Code ireturn() { return op(Op.IRETURN, -1); }
+		Code lreturn() { return op(Op.LRETURN, -2); }
+		Code vreturn() { return op(Op.RETURN, 0); }
+
+		/** BaseBitField.checkRange(value, min, max), all longs. */
+		Code checkRange() {
+			return invoke(Op.INVOKESTATIC, ClassFile.internalName(BaseBitField.class),
+					"checkRange", "(JJJ)V");
+		}
+
+		Code invoke(int opcode, String owner, String name, String descriptor) {
+			int idx = cf.methodRef(owner, name, descriptor);
+			// pops the receiver and the arguments, pushes the result
+			int close = descriptor.indexOf(')');
+			int receiver = opcode == Op.INVOKESTATIC ? 0 : 1;
+			op(opcode, -receiver - slots(descriptor.substring(1, close))
+					+ slots(descriptor.substring(close + 1)));
+			code.write(idx >> 8);
+			code.write(idx);
+			return this;
+		}
+
+		/** @return stack slots taken by the types of a descriptor, long and double take two. */
+		static int slots(String types) {
+			int slots = 0;
+			for (int i = 0; i < types.length(); ++i) {
+				char c = types.charAt(i);
+				if (c == 'V') {
+					continue;
+				}
+				slots += c == 'J' || c == 'D' ? 2 : 1;
+				while (types.charAt(i) == '[') {
+					++i;
+				}
+				if (types.charAt(i) == 'L') {
+					i = types.indexOf(';', i);
+				}
+			}
+			return slots;
+		}
+
+		int maxStack() { return maxStack; }
+
+		void write(DataOutputStream out, int codeAttribute) throws IOException {
+			byte [] bytes = code.toByteArray();
+			out.writeShort(0x0001); // public
+			out.writeShort(name);
+			out.writeShort(descriptor);
+			out.writeShort(1);
+			out.writeShort(codeAttribute);
+			out.writeInt(2 + 2 + 4 + bytes.length + 2 + 2);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free updates of single fields inside packed words shared between
+ * threads.
+ *
+ * Every operation is a compare-and-set loop on the whole word. A failed CAS
+ * caused by another thread changing <em>other</em> fields of the same word
+ * is simply retried with the new word, so concurrent updates of different
+ * fields never block each other and never fail. Only compareAndSet looks at
+ * the current value of the field itself, and fails if it doesn't match.
+ *
+ * The AtomicLongArray variants take the index of the array element holding
+ * the field; for layouts spanning several words that is
+ * {@code record * br.words() + field.word()}.
+ */
+public final class AtomicFields {
+
+	private AtomicFields() {
+	}
+
+	/** @throws IllegalArgumentException if the sum overflows, it's out of any field's range */
+	private static int sum(int previous, int delta) {
+		long sum = (long) previous + delta;
+		if (sum != (int) sum) {
+			throw new IllegalArgumentException(String.format(
+					"sum of %d and %d out of range [%d, %d]", previous, delta, Integer.MIN_VALUE, Integer.MAX_VALUE));
+		}
+		return (int) sum;
+	}
+
+	/** @throws IllegalArgumentException if the sum overflows, it's out of any field's range */
+	private static long sum(long previous, long delta) {
+		long sum = previous + delta;
+		if (((previous ^ sum) & (delta ^ sum)) < 0) {
+			throw new IllegalArgumentException(String.format(
+					"sum of %d and %d out of range [%d, %d]", previous, delta, Long.MIN_VALUE, Long.MAX_VALUE));
+		}
+		return sum;
+	}
+
+	// bool fields
+
+	/**
+	 * atomically sets the field to val.
+	 *
+	 * @return the previous value of the field
+	 */
+	public static boolean getAndSet(BoolField f, AtomicLong target, boolean val) {
+		while (true) {
+			long current = target.get();
+			if (target.compareAndSet(current, f.set(current, val))) {
+				return f.get(current);
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to update if it currently is expect.
+	 *
+	 * @return true if successful, false if the field wasn't expect
+	 */
+	public static boolean compareAndSet(BoolField f, AtomicLong target,
+			boolean expect, boolean update)
+	{
+		while (true) {
+			long current = target.get();
+			if (f.get(current) != expect) {
+				return false;
+			} else if (target.compareAndSet(current, f.set(current, update))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to val.
+	 *
+	 * @return the previous value of the field
+	 */
+	public static boolean getAndSet(BoolField f, AtomicLongArray target, int index,
+			boolean val)
+	{
+		while (true) {
+			long current = target.get(index);
+			if (target.compareAndSet(index, current, f.set(current, val))) {
+				return f.get(current);
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to update if it currently is expect.
+	 *
+	 * @return true if successful, false if the field wasn't expect
+	 */
+	public static boolean compareAndSet(BoolField f, AtomicLongArray target, int index,
+			boolean expect, boolean update)
+	{
+		while (true) {
+			long current = target.get(index);
+			if (f.get(current) != expect) {
+				return false;
+			} else if (target.compareAndSet(index, current, f.set(current, update))) {
+				return true;
+			}
+		}
+	}
+
+	// int fields
+
+	/**
+	 * atomically sets the field to value.
+	 *
+	 * @return the previous value of the field
+	 * @throws IllegalArgumentException if value is out of the field's range
+	 */
+	public static int getAndSet(IntField f, AtomicLong target, int value) {
+		while (true) {
+			long current = target.get();
+			if (target.compareAndSet(current, f.set(current, value))) {
+				return f.get(current);
+			}
+		}
+	}
+
+	/**
+	 * atomically adds delta to the field.
+	 *
+	 * @return the previous value of the field
+	 * @throws IllegalArgumentException if the sum is out of the field's range,
+	 *   the word is left unchanged in that case
+	 */
+	public static int getAndAdd(IntField f, AtomicLong target, int delta) {
+		while (true) {
+			long current = target.get();
+			int previous = f.get(current);
+			if (target.compareAndSet(current, f.set(current, sum(previous, delta)))) {
+				return previous;
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to update if it currently is expect.
+	 *
+	 * @return true if successful, false if the field wasn't expect
+	 * @throws IllegalArgumentException if update is out of the field's range
+	 */
+	public static boolean compareAndSet(IntField f, AtomicLong target, int expect, int update) {
+		while (true) {
+			long current = target.get();
+			if (f.get(current) != expect) {
+				return false;
+			} else if (target.compareAndSet(current, f.set(current, update))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to value.
+	 *
+	 * @return the previous value of the field
+	 * @throws IllegalArgumentException if value is out of the field's range
+	 */
+	public static int getAndSet(IntField f, AtomicLongArray target, int index, int value) {
+		while (true) {
+			long current = target.get(index);
+			if (target.compareAndSet(index, current, f.set(current, value))) {
+				return f.get(current);
+			}
+		}
+	}
+
+	/**
+	 * atomically adds delta to the field.
+	 *
+	 * @return the previous value of the field
+	 * @throws IllegalArgumentException if the sum is out of the field's range,
+	 *   the word is left unchanged in that case
+	 */
+	public static int getAndAdd(IntField f, AtomicLongArray target, int index, int delta) {
+		while (true) {
+			long current = target.get(index);
+			int previous = f.get(current);
+			if (target.compareAndSet(index, current, f.set(current, sum(previous, delta)))) {
+				return previous;
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to update if it currently is expect.
+	 *
+	 * @return true if successful, false if the field wasn't expect
+	 * @throws IllegalArgumentException if update is out of the field's range
+	 */
+	public static boolean compareAndSet(IntField f, AtomicLongArray target, int index,
+			int expect, int update)
+	{
+		while (true) {
+			long current = target.get(index);
+			if (f.get(current) != expect) {
+				return false;
+			} else if (target.compareAndSet(index, current, f.set(current, update))) {
+				return true;
+			}
+		}
+	}
+
+	// long fields
+
+	/**
+	 * atomically sets the field to value.
+	 *
+	 * @return the previous value of the field
+	 * @throws IllegalArgumentException if value is out of the field's range
+	 */
+	public static long getAndSet(LongField f, AtomicLong target, long value) {
+		while (true) {
+			long current = target.get();
+			if (target.compareAndSet(current, f.set(current, value))) {
+				return f.get(current);
+			}
+		}
+	}
+
+	/**
+	 * atomically adds delta to the field.
+	 *
+	 * @return the previous value of the field
+	 * @throws IllegalArgumentException if the sum is out of the field's range,
+	 *   the word is left unchanged in that case
+	 */
+	public static long getAndAdd(LongField f, AtomicLong target, long delta) {
+		while (true) {
+			long current = target.get();
+			long previous = f.get(current);
+			if (target.compareAndSet(current, f.set(current, sum(previous, delta)))) {
+				return previous;
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to update if it currently is expect.
+	 *
+	 * @return true if successful, false if the field wasn't expect
+	 * @throws IllegalArgumentException if update is out of the field's range
+	 */
+	public static boolean compareAndSet(LongField f, AtomicLong target, long expect, long update) {
+		while (true) {
+			long current = target.get();
+			if (f.get(current) != expect) {
+				return false;
+			} else if (target.compareAndSet(current, f.set(current, update))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to value.
+	 *
+	 * @return the previous value of the field
+	 * @throws IllegalArgumentException if value is out of the field's range
+	 */
+	public static long getAndSet(LongField f, AtomicLongArray target, int index, long value) {
+		while (true) {
+			long current = target.get(index);
+			if (target.compareAndSet(index, current, f.set(current, value))) {
+				return f.get(current);
+			}
+		}
+	}
+
+	/**
+	 * atomically adds delta to the field.
+	 *
+	 * @return the previous value of the field
+	 * @throws IllegalArgumentException if the sum is out of the field's range,
+	 *   the word is left unchanged in that case
+	 */
+	public static long getAndAdd(LongField f, AtomicLongArray target, int index, long delta) {
+		while (true) {
+			long current = target.get(index);
+			long previous = f.get(current);
+			if (target.compareAndSet(index, current, f.set(current, sum(previous, delta)))) {
+				return previous;
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to update if it currently is expect.
+	 *
+	 * @return true if successful, false if the field wasn't expect
+	 * @throws IllegalArgumentException if update is out of the field's range
+	 */
+	public static boolean compareAndSet(LongField f, AtomicLongArray target, int index,
+			long expect, long update)
+	{
+		while (true) {
+			long current = target.get(index);
+			if (f.get(current) != expect) {
+				return false;
+			} else if (target.compareAndSet(index, current, f.set(current, update))) {
+				return true;
+			}
+		}
+	}
+
+	// object fields
+
+	/**
+	 * atomically sets the field to x.
+	 *
+	 * @return the previous value of the field
+	 */
+	public static <T> T getAndSet(IntMappedObjField<T> f, AtomicLong target, T x) {
+		while (true) {
+			long current = target.get();
+			if (target.compareAndSet(current, f.set(current, x))) {
+				return f.get(current);
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to update if it currently is expect. Objects
+	 * are compared by their int representation.
+	 *
+	 * @return true if successful, false if the field wasn't expect
+	 */
+	public static <T> boolean compareAndSet(IntMappedObjField<T> f, AtomicLong target,
+			T expect, T update)
+	{
+		long expectBits = f.set(0L, expect) & f.mask();
+		while (true) {
+			long current = target.get();
+			if ((current & f.mask()) != expectBits) {
+				return false;
+			} else if (target.compareAndSet(current, f.set(current, update))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to x.
+	 *
+	 * @return the previous value of the field
+	 */
+	public static <T> T getAndSet(IntMappedObjField<T> f, AtomicLongArray target, int index,
+			T x)
+	{
+		while (true) {
+			long current = target.get(index);
+			if (target.compareAndSet(index, current, f.set(current, x))) {
+				return f.get(current);
+			}
+		}
+	}
+
+	/**
+	 * atomically sets the field to update if it currently is expect. Objects
+	 * are compared by their int representation.
+	 *
+	 * @return true if successful, false if the field wasn't expect
+	 */
+	public static <T> boolean compareAndSet(IntMappedObjField<T> f, AtomicLongArray target,
+			int index, T expect, T update)
+	{
+		long expectBits = f.set(0L, expect) & f.mask();
+		while (true) {
+			long current = target.get(index);
+			if ((current & f.mask()) != expectBits) {
+				return false;
+			} else if (target.compareAndSet(index, current, f.set(current, update))) {
+				return true;
+			}
+		}
+	}
+}
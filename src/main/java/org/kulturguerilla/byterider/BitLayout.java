@@ -0,0 +1,55 @@
+package org.kulturguerilla.byterider;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.kulturguerilla.byterider.ByteRider.Size;
+
+/**
+ * Declares a packed layout at compile time. {@link BitLayoutProcessor}
+ * generates a final class next to the annotated type, with masks and shifts
+ * as static final constants and static accessors for every field, so there
+ * is neither virtual dispatch nor a field load involved in accessing them.
+ *
+ * Every method without parameters and with a boolean, int, long or enum
+ * return type declares a field, in declaration order. int and long fields
+ * need a {@link Range}, without one they are a compile error. All other
+ * methods, including getters of other types, are ignored, so the getters of
+ * an interface can double as layout:
+ *
+ * <pre>
+ * &#64;BitLayout
+ * public interface Segment {
+ *     boolean freeway();
+ *     &#64;BitLayout.Range(min = 0, max = 6) int net2Class();
+ *     RoadType roadType();
+ * }
+ * </pre>
+ *
+ * generates {@code SegmentBits} with {@code freeway(long)},
+ * {@code freeway(long, boolean)}, {@code net2Class(long)}, ... Fields are
+ * placed like {@link ByteRider} does, lowest bits first; an enum uses just
+ * enough bits for its constants.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface BitLayout {
+
+	/** the number of bits available. */
+	Size size() default Size.LONG_SET;
+
+	/** name of the generated class, defaults to the annotated type's name + "Bits". */
+	String className() default "";
+
+	/**
+	 * the range of an int or long field, both inclusive.
+	 */
+	@Retention(RetentionPolicy.SOURCE)
+	@Target(ElementType.METHOD)
+	@interface Range {
+		long min() default 0;
+		long max();
+	}
+}
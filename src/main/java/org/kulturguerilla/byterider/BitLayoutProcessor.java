@@ -0,0 +1,247 @@
+package org.kulturguerilla.byterider;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the accessor class for types annotated with {@link BitLayout}.
+ *
+ * Registered through META-INF/services, so it runs whenever the library is on
+ * the compile classpath.
+ */
+@SupportedAnnotationTypes("org.kulturguerilla.byterider.BitLayout")
+public class BitLayoutProcessor extends AbstractProcessor {
+
+	@Override public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+		for (Element e : env.getElementsAnnotatedWith(BitLayout.class)) {
+			if (e instanceof TypeElement) {
+				generate((TypeElement) e);
+			}
+		}
+		return true;
+	}
+
+	private void generate(TypeElement type) {
+		BitLayout layout = type.getAnnotation(BitLayout.class);
+		List<Field> fields = new ArrayList<>();
+		int offset = 0;
+		for (Element member : type.getEnclosedElements()) {
+			if (member.getKind() != ElementKind.METHOD) {
+				continue;
+			}
+			ExecutableElement method = (ExecutableElement) member;
+			if (!method.getParameters().isEmpty()
+					|| method.getModifiers().contains(Modifier.STATIC)
+					|| method.getReturnType().getKind() == TypeKind.VOID) {
+				continue;
+			}
+			Field f = field(method, offset);
+			if (f == null) {
+				continue;
+			}
+			offset += f.bits;
+			if (offset > layout.size().size) {
+				error(method, "field overflows available bits: " + f.name);
+				return;
+			}
+			fields.add(f);
+		}
+
+		String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		String name = layout.className().isEmpty()
+			? type.getSimpleName() + "Bits"
+			: layout.className();
+		try (Writer out = processingEnv.getFiler()
+				.createSourceFile(qualified(pkg, name), type).openWriter())
+		{
+			out.write(source(pkg, name, type, fields));
+		} catch (IOException ex) {
+			error(type, "failed to write " + name + ": " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * @return the field declared by method, null if there is none: for
+	 *   unsupported return types, or after reporting an error for a missing or
+	 *   invalid range.
+	 */
+	private Field field(ExecutableElement method, int offset) {
+		String name = method.getSimpleName().toString();
+		TypeMirror type = method.getReturnType();
+		BitLayout.Range range = method.getAnnotation(BitLayout.Range.class);
+		switch (type.getKind()) {
+			case BOOLEAN:
+				return new Field(Kind.BOOL, name, "boolean", offset, 0, 1);
+			case INT:
+			case LONG:
+				if (range == null) {
+					error(method, name + " needs a @BitLayout.Range");
+					return null;
+				} else if (range.min() > range.max() || (type.getKind() == TypeKind.INT
+							&& (range.min() < Integer.MIN_VALUE || range.max() > Integer.MAX_VALUE))) {
+					error(method, "invalid range for " + name);
+					return null;
+				}
+				return type.getKind() == TypeKind.INT
+					? new Field(Kind.INT, name, "int", offset, range.min(), range.max())
+					: new Field(Kind.LONG, name, "long", offset, range.min(), range.max());
+			case DECLARED:
+				Element element = ((DeclaredType) type).asElement();
+				if (element.getKind() == ElementKind.ENUM) {
+					int constants = 0;
+					for (Element c : element.getEnclosedElements()) {
+						constants += c.getKind() == ElementKind.ENUM_CONSTANT ? 1 : 0;
+					}
+					String typeName = ((TypeElement) element).getQualifiedName().toString();
+					return new Field(Kind.ENUM, name, typeName, offset, 0, Math.max(constants - 1, 1));
+				}
+				return null;
+			default:
+				return null;
+		}
+	}
+
+	private static String source(String pkg, String name, TypeElement type, List<Field> fields) {
+		StringBuilder sb = new StringBuilder();
+		if (!pkg.isEmpty()) {
+			sb.append("package ").append(pkg).append(";\n\n");
+		}
+		sb.append("/**\n")
+			.append(" * packed accessors for {@link ").append(type.getQualifiedName()).append("},\n")
+			.append(" * generated by ").append(BitLayoutProcessor.class.getName()).append(".\n")
+			.append(" */\n")
+			.append("public final class ").append(name).append(" {\n\n")
+			.append("\tprivate ").append(name).append("() {\n\t}\n");
+		for (Field f : fields) {
+			f.write(sb);
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static String qualified(String pkg, String name) {
+		return pkg.isEmpty() ? name : pkg + "." + name;
+	}
+
+	private void error(Element e, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, e);
+	}
+
+	enum Kind { BOOL, INT, LONG, ENUM }
+
+	/**
+	 * a single field of the layout, and the code to access it.
+	 */
+	static final class Field {
+		final Kind kind;
+		final String name;
+		final String type;
+		final int offset;
+		final int bits;
+		final long min;
+		final long max;
+
+		Field(Kind kind, String name, String type, int offset, long min, long max) {
+			this.kind = kind;
+			this.name = name;
+			this.type = type;
+			this.offset = offset;
+			this.min = min;
+			this.max = max;
+			// same as ByteRider.bitsRequired, which would drag in ByteRider's logger
+			this.bits = kind == Kind.BOOL ? 1 : 64 - Long.numberOfLeadingZeros(max - min);
+		}
+
+		long mask() {
+			return (bits == 64 ? -1L : (1L << bits) - 1) << offset;
+		}
+
+		void write(StringBuilder sb) {
+			String c = constantName(name);
+			sb.append("\n");
+			sb.append("\tpublic static final long ").append(c).append("_MASK = 0x")
+				.append(Long.toHexString(mask())).append("L;\n");
+			sb.append("\tpublic static final int ").append(c).append("_OFFSET = ")
+				.append(offset).append(";\n");
+			switch (kind) {
+				case BOOL:
+					sb.append("\n")
+						.append("\tpublic static boolean ").append(name).append("(long data) {\n")
+						.append("\t\treturn (data & ").append(c).append("_MASK) != 0;\n")
+						.append("\t}\n\n")
+						.append("\tpublic static long ").append(name).append("(long data, boolean value) {\n")
+						.append("\t\treturn value ? data | ").append(c).append("_MASK : data & ~")
+						.append(c).append("_MASK;\n")
+						.append("\t}\n");
+					break;
+				case INT:
+				case LONG:
+					String suffix = kind == Kind.LONG ? "L" : "";
+					sb.append("\tpublic static final ").append(type).append(" ").append(c)
+						.append("_MIN = ").append(min).append(suffix).append(";\n");
+					sb.append("\tpublic static final ").append(type).append(" ").append(c)
+						.append("_MAX = ").append(max).append(suffix).append(";\n\n");
+					sb.append("\tpublic static ").append(type).append(" ").append(name).append("(long data) {\n")
+						.append("\t\treturn (").append(type).append(") ((data & ").append(c)
+						.append("_MASK) >>> ").append(c).append("_OFFSET) + ").append(c).append("_MIN;\n")
+						.append("\t}\n\n");
+					sb.append("\tpublic static long ").append(name).append("(long data, ")
+						.append(type).append(" value) {\n")
+						.append("\t\tif (value < ").append(c).append("_MIN || value > ").append(c).append("_MAX) {\n")
+						.append("\t\t\tthrow new IllegalArgumentException(String.format\n")
+						.append("\t\t\t\t\t(\"value %d out of range [%d, %d]\", value, ")
+						.append(c).append("_MIN, ").append(c).append("_MAX));\n")
+						.append("\t\t}\n")
+						.append("\t\treturn data & ~").append(c).append("_MASK | ((long) value - ")
+						.append(c).append("_MIN) << ").append(c).append("_OFFSET;\n")
+						.append("\t}\n");
+					break;
+				case ENUM:
+					sb.append("\tprivate static final ").append(type).append(" [] ").append(c)
+						.append("_VALUES = ").append(type).append(".values();\n\n");
+					sb.append("\tpublic static ").append(type).append(" ").append(name).append("(long data) {\n")
+						.append("\t\treturn ").append(c).append("_VALUES[(int) ((data & ").append(c)
+						.append("_MASK) >>> ").append(c).append("_OFFSET)];\n")
+						.append("\t}\n\n");
+					sb.append("\tpublic static long ").append(name).append("(long data, ")
+						.append(type).append(" value) {\n")
+						.append("\t\treturn data & ~").append(c).append("_MASK | ((long) value.ordinal() << ")
+						.append(c).append("_OFFSET);\n")
+						.append("\t}\n");
+					break;
+			}
+		}
+
+		static String constantName(String name) {
+			StringBuilder sb = new StringBuilder();
+			for (char ch : name.toCharArray()) {
+				if (Character.isUpperCase(ch) && sb.length() > 0) {
+					sb.append('_');
+				}
+				sb.append(Character.toUpperCase(ch));
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.kulturguerilla.byterider;
+
+import java.util.Arrays;
+
+/**
+ * Packing of ints into longs at a fixed bit width, in blocks of 64 values.
+ *
+ * A block of 64 values of b bits fills exactly b longs, so blocks start at
+ * word boundaries and can be decoded independently. Values are stored as
+ * value - base, unsigned, in their lowest bits; the first value of a block
+ * goes into the lowest bits of the first word.
+ *
+ * Widths dividing 64 have their own decode kernels with constant shifts,
+ * which the JIT unrolls; all other widths share a generic one.
+ */
+final class BitPacking {
+
+	static final int BLOCK = 64;
+
+	private BitPacking() {
+	}
+
+	/**
+	 * packs in[inPos, inPos + 64) into out[outPos, outPos + bits).
+	 *
+	 * @param base subtracted from every value
+	 * @param bits width of value - base, taken as unsigned, in [0, 32]
+	 */
+	static void pack(int [] in, int inPos, int base, int bits, long [] out, int outPos) {
+		if (bits == 0) {
+			return;
+		}
+		long mask = (1L << bits) - 1;
+		long acc = 0;
+		int fill = 0;
+		for (int i = inPos, end = inPos + BLOCK; i < end; ++i) {
+			long v = (in[i] - base) & mask;
+			acc |= v << fill;
+			fill += bits;
+			if (fill >= 64) {
+				out[outPos++] = acc;
+				fill -= 64;
+				acc = v >>> (bits - fill);
+			}
+		}
+	}
+
+	/**
+	 * unpacks the 64 values of in[inPos, inPos + bits) into out[outPos, outPos + 64).
+	 *
+	 * @param bits width of the packed values, in [0, 32]
+	 * @param base added to every value
+	 */
+	static void unpack(long [] in, int inPos, int bits, int base, int [] out, int outPos) {
+		switch (bits) {
+		case 0:
+			Arrays.fill(out, outPos, outPos + BLOCK, base);
+			break;
+		case 1:
+			unpack1(in, inPos, base, out, outPos);
+			break;
+		case 2:
+			unpack2(in, inPos, base, out, outPos);
+			break;
+		case 4:
+			unpack4(in, inPos, base, out, outPos);
+			break;
+		case 8:
+			unpack8(in, inPos, base, out, outPos);
+			break;
+		case 16:
+			unpack16(in, inPos, base, out, outPos);
+			break;
+		case 32:
+			unpack32(in, inPos, base, out, outPos);
+			break;
+		default:
+			unpackGeneric(in, inPos, bits, base, out, outPos);
+		}
+	}
+
+	private static void unpack1(long [] in, int inPos, int base, int [] out, int outPos) {
+		long w = in[inPos];
+		for (int s = 0; s < 64; ++s) {
+			out[outPos + s] = (int) (w >>> s & 1) + base;
+		}
+	}
+
+	private static void unpack2(long [] in, int inPos, int base, int [] out, int outPos) {
+		for (int i = 0; i < 2; ++i) {
+			long w = in[inPos + i];
+			for (int s = 0; s < 32; ++s) {
+				out[outPos++] = (int) (w >>> (s << 1) & 0x3) + base;
+			}
+		}
+	}
+
+	private static void unpack4(long [] in, int inPos, int base, int [] out, int outPos) {
+		for (int i = 0; i < 4; ++i) {
+			long w = in[inPos + i];
+			for (int s = 0; s < 16; ++s) {
+				out[outPos++] = (int) (w >>> (s << 2) & 0xF) + base;
+			}
+		}
+	}
+
+	private static void unpack8(long [] in, int inPos, int base, int [] out, int outPos) {
+		for (int i = 0; i < 8; ++i) {
+			long w = in[inPos + i];
+			for (int s = 0; s < 8; ++s) {
+				out[outPos++] = (int) (w >>> (s << 3) & 0xFF) + base;
+			}
+		}
+	}
+
+	private static void unpack16(long [] in, int inPos, int base, int [] out, int outPos) {
+		for (int i = 0; i < 16; ++i) {
+			long w = in[inPos + i];
+			out[outPos++] = (int) (w & 0xFFFF) + base;
+			out[outPos++] = (int) (w >>> 16 & 0xFFFF) + base;
+			out[outPos++] = (int) (w >>> 32 & 0xFFFF) + base;
+			out[outPos++] = (int) (w >>> 48) + base;
+		}
+	}
+
+	private static void unpack32(long [] in, int inPos, int base, int [] out, int outPos) {
+		for (int i = 0; i < 32; ++i) {
+			long w = in[inPos + i];
+			out[outPos++] = (int) w + base;
+			out[outPos++] = (int) (w >>> 32) + base;
+		}
+	}
+
+	private static void unpackGeneric(long [] in, int inPos, int bits, int base, int [] out, int outPos) {
+		long mask = (1L << bits) - 1;
+		long w = in[inPos];
+		int shift = 0;
+		for (int i = outPos, end = outPos + BLOCK; i < end; ++i) {
+			long v = w >>> shift;
+			shift += bits;
+			if (shift > 64) {
+				w = in[++inPos];
+				shift -= 64;
+				v |= w << (bits - shift);
+			} else if (shift == 64 && i + 1 < end) {
+				w = in[++inPos];
+				shift = 0;
+			}
+			out[i] = (int) (v & mask) + base;
+		}
+	}
+}
@@ -0,0 +1,535 @@
+package org.kulturguerilla.byterider;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of record indices, split into chunks of 2^16 indices like
+ * a roaring bitmap. Each chunk is held by a container: a sorted array of the
+ * low 16 bits while it has at most 4096 entries, a plain bitmap of 1024 longs
+ * otherwise.
+ *
+ * The set operations {@link #and(Bitmap)}, {@link #or(Bitmap)} and
+ * {@link #andNot(Bitmap)} leave their operands alone and return new bitmaps,
+ * combining chunk by chunk; chunks missing on either side are skipped or
+ * copied as they are. {@link #orAll(Bitmap...)} merges any number of bitmaps
+ * in a single pass.
+ *
+ * <pre>
+ * int [] matches = index.get(net2Class, 4).and(index.get(freeway, true)).toArray();
+ * </pre>
+ */
+public final class Bitmap {
+
+	/** largest number of entries of an array container. */
+	static final int ARRAY_MAX = 4096;
+
+	private static final char [] NO_KEYS = {};
+	private static final Container [] NO_CONTAINERS = {};
+
+	/** high 16 bits of the chunks, sorted. */
+	private char [] keys;
+	private Container [] containers;
+	private int size;
+
+	public Bitmap() {
+		this(NO_KEYS, NO_CONTAINERS, 0);
+	}
+
+	private Bitmap(char [] keys, Container [] containers, int size) {
+		this.keys = keys;
+		this.containers = containers;
+		this.size = size;
+	}
+
+	/**
+	 * @param values non-negative indices, in any order
+	 * @return a new bitmap holding the values
+	 */
+	public static Bitmap of(int... values) {
+		Bitmap b = new Bitmap();
+		for (int v : values) {
+			if (v < 0) {
+				throw new IllegalArgumentException("negative index " + v);
+			}
+			b.add(v);
+		}
+		return b;
+	}
+
+	/** @return true if the bitmap holds the index */
+	public boolean contains(int index) {
+		int k = Arrays.binarySearch(keys, 0, size, (char) (index >>> 16));
+		return k >= 0 && containers[k].contains((char) index);
+	}
+
+	/** @return the number of indices in the bitmap */
+	public int cardinality() {
+		int cardinality = 0;
+		for (int k = 0; k < size; ++k) {
+			cardinality += containers[k].cardinality();
+		}
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** @return the indices in both bitmaps */
+	public Bitmap and(Bitmap other) {
+		Bitmap result = new Bitmap(new char[Math.min(size, other.size)],
+				new Container[Math.min(size, other.size)], 0);
+		int i = 0;
+		int j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				++i;
+			} else if (keys[i] > other.keys[j]) {
+				++j;
+			} else {
+				result.append(keys[i], and(containers[i++], other.containers[j++]));
+			}
+		}
+		return result;
+	}
+
+	/** @return the indices in either bitmap */
+	public Bitmap or(Bitmap other) {
+		Bitmap result = new Bitmap(new char[size + other.size],
+				new Container[size + other.size], 0);
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || i < size && keys[i] < other.keys[j]) {
+				result.append(keys[i], containers[i++].copy());
+			} else if (i == size || keys[i] > other.keys[j]) {
+				result.append(other.keys[j], other.containers[j++].copy());
+			} else {
+				result.append(keys[i], or(containers[i++], other.containers[j++]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the indices in any of the bitmaps; chunks held by several of
+	 *   them are combined in one go, not pairwise
+	 */
+	public static Bitmap orAll(Bitmap... bitmaps) {
+		int chunks = 0;
+		for (Bitmap b : bitmaps) {
+			chunks += b.size;
+		}
+		chunks = Math.min(chunks, 1 << 16);
+		Bitmap result = new Bitmap(new char[chunks], new Container[chunks], 0);
+		int [] next = new int[bitmaps.length];
+		for (;;) {
+			int key = Integer.MAX_VALUE;
+			int holders = 0;
+			int holder = -1;
+			for (int b = 0; b < bitmaps.length; ++b) {
+				if (next[b] < bitmaps[b].size) {
+					char k = bitmaps[b].keys[next[b]];
+					if (k < key) {
+						key = k;
+						holders = 0;
+					}
+					if (k == key) {
+						++holders;
+						holder = b;
+					}
+				}
+			}
+			if (holders == 0) {
+				return result;
+			} else if (holders == 1) {
+				result.append((char) key, bitmaps[holder].containers[next[holder]++].copy());
+				continue;
+			}
+			long [] words = new long[BitmapContainer.WORDS];
+			for (int b = 0; b < bitmaps.length; ++b) {
+				if (next[b] < bitmaps[b].size && bitmaps[b].keys[next[b]] == key) {
+					bitmaps[b].containers[next[b]++].orInto(words);
+				}
+			}
+			result.append((char) key, BitmapContainer.of(words));
+		}
+	}
+
+	/** @return the indices in this bitmap, but not in the other */
+	public Bitmap andNot(Bitmap other) {
+		Bitmap result = new Bitmap(new char[size], new Container[size], 0);
+		int j = 0;
+		for (int i = 0; i < size; ++i) {
+			while (j < other.size && other.keys[j] < keys[i]) {
+				++j;
+			}
+			if (j < other.size && other.keys[j] == keys[i]) {
+				result.append(keys[i], andNot(containers[i], other.containers[j]));
+			} else {
+				result.append(keys[i], containers[i].copy());
+			}
+		}
+		return result;
+	}
+
+	/** @return a copy, unaffected by changes of this bitmap */
+	public Bitmap copy() {
+		Bitmap copy = new Bitmap(new char[size], new Container[size], 0);
+		for (int k = 0; k < size; ++k) {
+			copy.append(keys[k], containers[k].copy());
+		}
+		return copy;
+	}
+
+	/** @return the indices in ascending order */
+	public int [] toArray() {
+		int [] indices = new int[cardinality()];
+		int pos = 0;
+		for (int k = 0; k < size; ++k) {
+			pos = containers[k].toArray(keys[k] << 16, indices, pos);
+		}
+		return indices;
+	}
+
+	/** passes the indices to action, in ascending order. */
+	public void forEach(IntConsumer action) {
+		for (int k = 0; k < size; ++k) {
+			containers[k].forEach(keys[k] << 16, action);
+		}
+	}
+
+	@Override public boolean equals(Object o) {
+		return o instanceof Bitmap && Arrays.equals(toArray(), ((Bitmap) o).toArray());
+	}
+
+	@Override public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override public String toString() {
+		return "Bitmap" + Arrays.toString(toArray());
+	}
+
+	/** @return true if the index was added, false if it was there already */
+	boolean add(int index) {
+		char key = (char) (index >>> 16);
+		int k = Arrays.binarySearch(keys, 0, size, key);
+		if (k < 0) {
+			k = -k - 1;
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+				containers = Arrays.copyOf(containers, keys.length);
+			}
+			System.arraycopy(keys, k, keys, k + 1, size - k);
+			System.arraycopy(containers, k, containers, k + 1, size - k);
+			keys[k] = key;
+			containers[k] = new ArrayContainer();
+			++size;
+		}
+		int before = containers[k].cardinality();
+		containers[k] = containers[k].add((char) index);
+		return containers[k].cardinality() != before;
+	}
+
+	/** @return true if the index was removed, false if it wasn't there */
+	boolean remove(int index) {
+		int k = Arrays.binarySearch(keys, 0, size, (char) (index >>> 16));
+		if (k < 0) {
+			return false;
+		}
+		int before = containers[k].cardinality();
+		containers[k] = containers[k].remove((char) index);
+		if (containers[k].cardinality() == 0) {
+			System.arraycopy(keys, k + 1, keys, k, size - k - 1);
+			System.arraycopy(containers, k + 1, containers, k, size - k - 1);
+			containers[--size] = null;
+			return true;
+		}
+		return containers[k].cardinality() != before;
+	}
+
+	void clear() {
+		keys = NO_KEYS;
+		containers = NO_CONTAINERS;
+		size = 0;
+	}
+
+	/** appends a chunk after all others, dropping empty ones. */
+	private void append(char key, Container c) {
+		if (c.cardinality() > 0) {
+			keys[size] = key;
+			containers[size++] = c;
+		}
+	}
+
+	// operations on single chunks
+
+	private static Container and(Container a, Container b) {
+		if (a instanceof ArrayContainer) {
+			return ((ArrayContainer) a).filter(b, true);
+		}
+		if (b instanceof ArrayContainer) {
+			return ((ArrayContainer) b).filter(a, true);
+		}
+		long [] x = ((BitmapContainer) a).words;
+		long [] y = ((BitmapContainer) b).words;
+		long [] words = new long[BitmapContainer.WORDS];
+		for (int w = 0; w < words.length; ++w) {
+			words[w] = x[w] & y[w];
+		}
+		return BitmapContainer.of(words);
+	}
+
+	private static Container or(Container a, Container b) {
+		if (a instanceof ArrayContainer && b instanceof ArrayContainer
+				&& a.cardinality() + b.cardinality() <= ARRAY_MAX)
+		{
+			return ((ArrayContainer) a).union((ArrayContainer) b);
+		}
+		long [] words = a.toWords();
+		b.orInto(words);
+		return BitmapContainer.of(words);
+	}
+
+	private static Container andNot(Container a, Container b) {
+		if (a instanceof ArrayContainer) {
+			return ((ArrayContainer) a).filter(b, false);
+		}
+		long [] words = a.toWords();
+		if (b instanceof ArrayContainer) {
+			ArrayContainer array = (ArrayContainer) b;
+			for (int i = 0; i < array.cardinality; ++i) {
+				words[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+			}
+		} else {
+			long [] y = ((BitmapContainer) b).words;
+			for (int w = 0; w < words.length; ++w) {
+				words[w] &= ~y[w];
+			}
+		}
+		return BitmapContainer.of(words);
+	}
+
+	/** the low 16 bits of the indices of a chunk. */
+	private static abstract class Container {
+		abstract int cardinality();
+
+		abstract boolean contains(char value);
+
+		/** @return this or a container of another kind, holding value too */
+		abstract Container add(char value);
+
+		/** @return this or a container of another kind, without value */
+		abstract Container remove(char value);
+
+		abstract Container copy();
+
+		/** @return the chunk as a new bitmap of 1024 longs */
+		abstract long [] toWords();
+
+		/** sets the bits of the chunk's values in a bitmap of 1024 longs. */
+		abstract void orInto(long [] words);
+
+		/** writes high | value for all values into indices, from pos on. */
+		abstract int toArray(int high, int [] indices, int pos);
+
+		abstract void forEach(int high, IntConsumer action);
+	}
+
+	private static final class ArrayContainer extends Container {
+		char [] values;
+		int cardinality;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char [] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		@Override int cardinality() { return cardinality; }
+
+		@Override boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+
+		@Override Container add(char value) {
+			int i = Arrays.binarySearch(values, 0, cardinality, value);
+			if (i >= 0) {
+				return this;
+			}
+			if (cardinality == ARRAY_MAX) {
+				return new BitmapContainer(toWords(), cardinality).add(value);
+			}
+			i = -i - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+			}
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = value;
+			++cardinality;
+			return this;
+		}
+
+		@Override Container remove(char value) {
+			int i = Arrays.binarySearch(values, 0, cardinality, value);
+			if (i >= 0) {
+				System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+				--cardinality;
+			}
+			return this;
+		}
+
+		@Override Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+		}
+
+		@Override long [] toWords() {
+			long [] words = new long[BitmapContainer.WORDS];
+			orInto(words);
+			return words;
+		}
+
+		@Override void orInto(long [] words) {
+			for (int i = 0; i < cardinality; ++i) {
+				words[values[i] >>> 6] |= 1L << values[i];
+			}
+		}
+
+		@Override int toArray(int high, int [] indices, int pos) {
+			for (int i = 0; i < cardinality; ++i) {
+				indices[pos++] = high | values[i];
+			}
+			return pos;
+		}
+
+		@Override void forEach(int high, IntConsumer action) {
+			for (int i = 0; i < cardinality; ++i) {
+				action.accept(high | values[i]);
+			}
+		}
+
+		/** the values other contains (keep) or doesn't contain (!keep). */
+		ArrayContainer filter(Container other, boolean keep) {
+			char [] result = new char[Math.max(1, cardinality)];
+			int n = 0;
+			for (int i = 0; i < cardinality; ++i) {
+				if (other.contains(values[i]) == keep) {
+					result[n++] = values[i];
+				}
+			}
+			return new ArrayContainer(result, n);
+		}
+
+		ArrayContainer union(ArrayContainer other) {
+			char [] result = new char[cardinality + other.cardinality];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < cardinality && j < other.cardinality) {
+				char a = values[i];
+				char b = other.values[j];
+				result[n++] = a <= b ? a : b;
+				i += a <= b ? 1 : 0;
+				j += b <= a ? 1 : 0;
+			}
+			while (i < cardinality) {
+				result[n++] = values[i++];
+			}
+			while (j < other.cardinality) {
+				result[n++] = other.values[j++];
+			}
+			return new ArrayContainer(result, n);
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+		static final int WORDS = 1 << 10;
+
+		final long [] words;
+		int cardinality;
+
+		BitmapContainer(long [] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		/** the container for the words, an array container if they are sparse. */
+		static Container of(long [] words) {
+			int cardinality = 0;
+			for (long w : words) {
+				cardinality += Long.bitCount(w);
+			}
+			BitmapContainer c = new BitmapContainer(words, cardinality);
+			return cardinality > ARRAY_MAX ? c : c.toArrayContainer();
+		}
+
+		@Override int cardinality() { return cardinality; }
+
+		@Override boolean contains(char value) {
+			return (words[value >>> 6] & 1L << value) != 0;
+		}
+
+		@Override Container add(char value) {
+			long w = words[value >>> 6];
+			long x = w | 1L << value;
+			words[value >>> 6] = x;
+			cardinality += w != x ? 1 : 0;
+			return this;
+		}
+
+		@Override Container remove(char value) {
+			long w = words[value >>> 6];
+			long x = w & ~(1L << value);
+			words[value >>> 6] = x;
+			cardinality -= w != x ? 1 : 0;
+			return cardinality > ARRAY_MAX ? this : toArrayContainer();
+		}
+
+		@Override Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+
+		@Override long [] toWords() {
+			return words.clone();
+		}
+
+		@Override void orInto(long [] dest) {
+			for (int w = 0; w < WORDS; ++w) {
+				dest[w] |= words[w];
+			}
+		}
+
+		@Override int toArray(int high, int [] indices, int pos) {
+			for (int w = 0; w < WORDS; ++w) {
+				for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+					indices[pos++] = high | w << 6 | Long.numberOfTrailingZeros(bits);
+				}
+			}
+			return pos;
+		}
+
+		@Override void forEach(int high, IntConsumer action) {
+			for (int w = 0; w < WORDS; ++w) {
+				for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+					action.accept(high | w << 6 | Long.numberOfTrailingZeros(bits));
+				}
+			}
+		}
+
+		ArrayContainer toArrayContainer() {
+			char [] values = new char[Math.max(1, cardinality)];
+			int n = 0;
+			for (int w = 0; w < WORDS; ++w) {
+				for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+					values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(bits));
+				}
+			}
+			return new ArrayContainer(values, n);
+		}
+	}
+}
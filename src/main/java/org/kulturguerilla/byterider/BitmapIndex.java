@@ -0,0 +1,246 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Secondary indexes over low cardinality fields: one {@link Bitmap} of record
+ * indices per field value.
+ *
+ * The index wraps the storage holding the records and is a
+ * {@link RecordStorage} itself. Fields set through the index keep the bitmaps
+ * up to date, record by record:
+ *
+ * <pre>
+ * BitmapIndex index = new BitmapIndex(segments, net2Class, roadType, freeway);
+ * net2Class.set(index, i, 4);
+ * Bitmap fastFerries = index.get(roadType, RoadType.FERRY).and(index.between(net2Class, 3, 6));
+ * fastFerries.forEach(i -&gt; ...);
+ * </pre>
+ *
+ * Records appended to the underlying storage are indexed when the index is
+ * used next. Records changed directly in the underlying storage are not
+ * noticed, call {@link #rebuild()} afterwards.
+ *
+ * The bitmaps returned by the lookups are live, they change with the records;
+ * the results of combining them with and, or and andNot don't. The index
+ * isn't thread safe.
+ */
+public final class BitmapIndex implements RecordStorage {
+
+	/** fields may have at most 2^MAX_BITS values. */
+	static final int MAX_BITS = 16;
+
+	private final RecordStorage records;
+	private final List<FieldIndex> indexes = new ArrayList<>();
+	/** indexes by word of the record. */
+	private final FieldIndex [][] byWord;
+	/** records [0, indexed) are in the bitmaps. */
+	private int indexed;
+
+	/**
+	 * @param records the records to index
+	 * @param fields fields of the records' layout, of at most 2^16 values
+	 * @throws IllegalArgumentException if a field can't be indexed
+	 */
+	public BitmapIndex(RecordStorage records, BitField... fields) {
+		this.records = records;
+		int words = records.layout().words();
+		List<List<FieldIndex>> perWord = new ArrayList<>();
+		for (int w = 0; w < words; ++w) {
+			perWord.add(new ArrayList<>());
+		}
+		for (BitField f : fields) {
+			int position = records.layout().indexOf(f);
+			if (position < 0) {
+				throw new IllegalArgumentException("field " + f.name() + " isn't part of the layout");
+			}
+			if (Long.bitCount(f.mask()) > MAX_BITS) {
+				throw new IllegalArgumentException("field " + f.name() + " has too many values to index");
+			}
+			FieldIndex index = new FieldIndex(f, position);
+			indexes.add(index);
+			perWord.get(index.word).add(index);
+		}
+		this.byWord = new FieldIndex[words][];
+		for (int w = 0; w < words; ++w) {
+			byWord[w] = perWord.get(w).toArray(new FieldIndex[0]);
+		}
+		sync();
+	}
+
+	/** the indexed records. */
+	public RecordStorage records() { return records; }
+
+	@Override public ByteRider layout() { return records.layout(); }
+
+	@Override public int size() { return records.size(); }
+
+	@Override public long word(int index, int word) {
+		return records.word(index, word);
+	}
+
+	/** replaces the word and moves the record between the bitmaps of fields in it. */
+	@Override public void setWord(int index, int word, long value) {
+		sync();
+		long old = records.word(index, word);
+		records.setWord(index, word, value);
+		if (index < indexed) {
+			for (FieldIndex f : byWord[word]) {
+				int before = f.code(old);
+				int after = f.code(value);
+				if (before != after) {
+					f.bitmap(before).remove(index);
+					f.bitmap(after).add(index);
+				}
+			}
+		}
+	}
+
+	/** re-indexes all records, after they were changed in the underlying storage. */
+	public void rebuild() {
+		for (FieldIndex f : indexes) {
+			f.clear();
+		}
+		indexed = 0;
+		sync();
+	}
+
+	// lookups
+
+	/** @return the records with the field set (value) or cleared (!value) */
+	public Bitmap get(BoolField f, boolean value) {
+		return lookup(f, f.set(0L, value));
+	}
+
+	/** @return the records holding value, empty if value is out of the field's range */
+	public Bitmap get(IntField f, int value) {
+		if (value < f.minValue() || value > f.maxValue()) {
+			return new Bitmap();
+		}
+		return lookup(f, f.set(0L, value));
+	}
+
+	/** @return the records holding value */
+	public <T> Bitmap get(IntMappedObjField<T> f, T value) {
+		return lookup(f, f.set(0L, value));
+	}
+
+	/** @return the records holding value, the null ones if value is null */
+	public Bitmap get(IntegerField f, Integer value) {
+		return lookup(f, f.set(0L, value));
+	}
+
+	/** @return the records holding value, the null ones if value is null */
+	public <T extends Enum<T>> Bitmap get(NullableEnumField<T> f, T value) {
+		return lookup(f, f.set(0L, value));
+	}
+
+	/** @return the records with a value in [min, max] */
+	public Bitmap between(IntField f, int min, int max) {
+		long from = Math.max(min, f.minValue());
+		long to = Math.min(max, f.maxValue());
+		if (from > to) {
+			return new Bitmap();
+		}
+		// at most 2^16 values, see MAX_BITS
+		Bitmap [] bitmaps = new Bitmap[(int) (to - from + 1)];
+		for (int i = 0; i < bitmaps.length; ++i) {
+			bitmaps[i] = get(f, (int) (from + i));
+		}
+		return Bitmap.orAll(bitmaps);
+	}
+
+	/**
+	 * @return the bitmaps of all values of the field, indexed by the stored
+	 *   code, i.e. value - minValue, the ordinal for enums, 0 for null
+	 */
+	public Bitmap [] bitmaps(BitField f) {
+		sync();
+		FieldIndex index = index(f);
+		Bitmap [] bitmaps = new Bitmap[index.bitmaps.length];
+		for (int code = 0; code < bitmaps.length; ++code) {
+			bitmaps[code] = index.bitmap(code);
+		}
+		return bitmaps;
+	}
+
+	/** the live bitmap of the field's code in the packed word data. */
+	private Bitmap lookup(BitField f, long data) {
+		sync();
+		FieldIndex index = index(f);
+		return index.bitmap(index.code(data));
+	}
+
+	/** the index of f, which may be the original or the frozen field. */
+	private FieldIndex index(BitField f) {
+		int position = records.layout().indexOf(f);
+		for (FieldIndex index : indexes) {
+			if (index.position == position && position >= 0) {
+				return index;
+			}
+		}
+		throw new IllegalArgumentException("field " + f.name() + " isn't indexed");
+	}
+
+	/** indexes records appended since the last call, starts over if records were removed. */
+	private void sync() {
+		int size = records.size();
+		if (size < indexed) {
+			for (FieldIndex f : indexes) {
+				f.clear();
+			}
+			indexed = 0;
+		}
+		for (; indexed < size; ++indexed) {
+			for (int w = 0; w < byWord.length; ++w) {
+				if (byWord[w].length > 0) {
+					long data = records.word(indexed, w);
+					for (FieldIndex f : byWord[w]) {
+						f.bitmap(f.code(data)).add(indexed);
+					}
+				}
+			}
+		}
+	}
+
+	/** the bitmaps of a single field, created on first use. */
+	private static final class FieldIndex {
+		/** of the field in the layout's fields. */
+		final int position;
+		final int word;
+		final long mask;
+		final int shift;
+		final Bitmap [] bitmaps;
+
+		FieldIndex(BitField field, int position) {
+			this.position = position;
+			this.word = field.word();
+			this.mask = field.mask();
+			this.shift = Long.numberOfTrailingZeros(mask);
+			this.bitmaps = new Bitmap[1 << Long.bitCount(mask)];
+		}
+
+		int code(long data) {
+			return (int) ((data & mask) >>> shift);
+		}
+
+		Bitmap bitmap(int code) {
+			Bitmap b = bitmaps[code];
+			if (b == null) {
+				b = bitmaps[code] = new Bitmap();
+			}
+			return b;
+		}
+
+		void clear() {
+			for (Bitmap b : bitmaps) {
+				if (b != null) {
+					b.clear();
+				}
+			}
+		}
+	}
+}
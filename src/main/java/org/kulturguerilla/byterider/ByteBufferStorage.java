@@ -0,0 +1,105 @@
+package org.kulturguerilla.byterider;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link RecordStorage} inside a {@link ByteBuffer}, eight bytes per word.
+ *
+ * With a direct buffer the records live outside of the java heap, so the
+ * garbage collector neither has to copy nor to scan them, no matter how many
+ * there are. Word w of record i is the long at byte offset 8 * (i * words + w),
+ * read and written with the absolute {@link ByteBuffer#getLong(int)} /
+ * {@link ByteBuffer#putLong(int, long)}, which is a single word load / store on
+ * direct buffers.
+ *
+ * A single buffer is limited to 2GB, i.e. 2^28 words.
+ */
+public class ByteBufferStorage implements RecordStorage {
+
+	private final ByteRider layout;
+	private final ByteBuffer buffer;
+	private final int words;
+	private final int size;
+
+	private ByteBufferStorage(ByteRider layout, ByteBuffer buffer) {
+		this.layout = layout;
+		this.buffer = buffer;
+		this.words = layout.words();
+		this.size = buffer.capacity() / recordBytes(layout);
+	}
+
+	/** number of bytes a single record of the given layout occupies. */
+	static int recordBytes(ByteRider layout) {
+		return layout.words() * Long.BYTES;
+	}
+
+	/**
+	 * allocates a direct buffer (in native byte order) holding the given number
+	 * of records, all bits cleared.
+	 *
+	 * @param layout the layout of the stored records
+	 * @param records number of records
+	 * @return off-heap storage for records
+	 */
+	public static ByteBufferStorage allocateDirect(ByteRider layout, int records) {
+		if (records < 0 || records > Integer.MAX_VALUE / recordBytes(layout)) {
+			throw new IllegalArgumentException("unsupported number of records: " + records);
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(records * recordBytes(layout))
+			.order(ByteOrder.nativeOrder());
+		return new ByteBufferStorage(layout, buffer);
+	}
+
+	/**
+	 * uses the remaining bytes of an existing buffer as storage, keeping its
+	 * byte order. The buffer's content is not copied, and its position and
+	 * limit are not touched.
+	 *
+	 * @param layout the layout of the stored records
+	 * @param buffer the records, remaining() must be a multiple of the record size
+	 * @return storage backed by the buffer
+	 */
+	public static ByteBufferStorage wrap(ByteRider layout, ByteBuffer buffer) {
+		if (buffer.remaining() % recordBytes(layout) != 0) {
+			throw new IllegalArgumentException(String.format(
+					"buffer size %d is not a multiple of the record size %d",
+					buffer.remaining(), recordBytes(layout)));
+		}
+		return new ByteBufferStorage(layout, buffer.slice().order(buffer.order()));
+	}
+
+	/** the underlying buffer, starting at the first record. */
+	public ByteBuffer buffer() { return buffer; }
+
+	@Override public ByteRider layout() { return layout; }
+
+	@Override public int size() { return size; }
+
+	@Override public long word(int index, int word) {
+		return buffer.getLong(offset(index, word));
+	}
+
+	@Override public void setWord(int index, int word, long value) {
+		buffer.putLong(offset(index, word), value);
+	}
+
+	/**
+	 * copies all records into a {@link ByteRiderArray} on the heap.
+	 *
+	 * @return heap copy of the records
+	 */
+	public ByteRiderArray toArray() {
+		long [] data = new long[size * words];
+		buffer.duplicate().order(buffer.order()).asLongBuffer().get(data);
+		return ByteRiderArray.wrap(layout, data);
+	}
+
+	private int offset(int index, int word) {
+		if (index < 0 || index >= size || word < 0 || word >= words) {
+			throw new IndexOutOfBoundsException(String.format(
+					"index %d, word %d, size %d", index, word, size));
+		}
+		return (index * words + word) * Long.BYTES;
+	}
+}
@@ -1,8 +1,14 @@
 package org.kulturguerilla.byterider;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,16 +16,90 @@ import org.slf4j.LoggerFactory;
 /**
  * Helper Class to simplify handling of bit-fuddling for storing
  * multiple different values inside a single primitive long.
+ *
+ * Layouts that need more than 64 bits span several longs (words), see
+ * {@link #ByteRider(int)}. Such records are accessed through a
+ * {@link RecordStorage}.
  */
 public class ByteRider {
 	private ArrayList<BitField> fields = new ArrayList<>();
 
 	private static final Logger log = LoggerFactory.getLogger(ByteRider.class);
 
-	private final Size size;
+	private final int bits;
+	private final int words;
+
+	private List<BitField> unfrozen;
+
+	/** place fields from the top down, see {@link #keyLayout(Size)}. */
+	private final boolean keyOrder;
+	private int keyWord;
+	private int keyFree;
 
 	public ByteRider(Size size) {
-		this.size = size;
+		this(size.size, 1, false);
+	}
+
+	private ByteRider(int bits, int words, boolean keyOrder) {
+		this.bits = bits;
+		this.words = words;
+		this.keyOrder = keyOrder;
+		this.keyFree = Math.min(bits, 64);
+	}
+
+	/**
+	 * creates a layout spanning the given number of longs.
+	 *
+	 * Fields don't straddle words: one that doesn't fit into the rest of a word
+	 * starts at the bottom of the next one, so every field is read and written
+	 * with a single word access. Word index and shift of every field are fixed
+	 * when it's added.
+	 *
+	 * @param words number of longs per record
+	 */
+	public ByteRider(int words) {
+		this(checkWords(words) * 64, words, false);
+	}
+
+	/**
+	 * creates a layout for order preserving keys: fields are placed from the
+	 * most significant bit down, in the order they are added, so comparing two
+	 * records with {@link Long#compareUnsigned} compares their fields
+	 * lexicographically. Fields store value - minValue, so negative values
+	 * order correctly, too.
+	 *
+	 * <pre>
+	 * ByteRider key = ByteRider.keyLayout(Size.LONG_SET);
+	 * IntField tile = key.addInt(-1000, 1000, "tile");   // most significant
+	 * IntField id = key.addInt(1 &lt;&lt; 20, "id");
+	 * Arrays.sort(keys);  // fine as long as the top bit is unused, otherwise compare unsigned
+	 * </pre>
+	 *
+	 * @param size number of bits of the key
+	 * @return an empty key layout
+	 */
+	public static ByteRider keyLayout(Size size) {
+		return new ByteRider(size.size, 1, true);
+	}
+
+	/**
+	 * creates a key layout spanning several words, see {@link #keyLayout(Size)}.
+	 * Fields don't straddle words: one that doesn't fit into the rest of a word
+	 * starts at the top of the next one. Keys compare like their words,
+	 * unsigned and in order, see {@link #compareKeys(RecordStorage, int, int)}.
+	 *
+	 * @param words number of longs per key
+	 * @return an empty key layout
+	 */
+	public static ByteRider keyLayout(int words) {
+		return new ByteRider(checkWords(words) * 64, words, true);
+	}
+
+	private static int checkWords(int words) {
+		if (words < 1 || words > Integer.MAX_VALUE / 64) {
+			throw new IllegalArgumentException("invalid number of words: " + words);
+		}
+		return words;
 	}
 
 	public ByteRider() {
@@ -36,16 +116,52 @@ public class ByteRider {
 	 * @return bool field representing storage for a single boolean value
 	 */
 	public BoolField addBool(String name) {
-		int offset = lowestUnusedOffset(fields);
-		log.debug("initializing bool starting at offset: " + offset);
-		BoolField b = createBoolField(offset, name);
-		addField(b);
-		return b;
+		return add(offset -> createBoolField(offset, name));
+	}
+
+	/**
+	 * adds the field created at the next free offset: right after the highest
+	 * field, or below the lowest one for {@link #keyLayout key layouts}. A
+	 * field that doesn't fit into the rest of the word moves on to the next.
+	 */
+	private <F extends BitField> F add(IntFunction<F> factory) {
+		int offset;
+		int keyWord = this.keyWord;
+		int keyFree = this.keyFree;
+		int width = factory.apply(0).highestBit() + 1;
+		if (keyOrder) {
+			if (width > keyFree) {
+				// key fields never straddle, the rest of the word stays empty
+				++keyWord;
+				keyFree = 64;
+			}
+			keyFree -= width;
+			offset = keyWord * 64 + keyFree;
+		} else {
+			offset = lowestUnusedOffset(fields);
+			if (crossesWord(offset, width)) {
+				offset = (offset + 63) & ~63;
+			}
+		}
+		F f = factory.apply(offset);
+		log.debug("initializing {} starting at offset: {}", f.name(), offset);
+		addField(f);
+		this.keyWord = keyWord;
+		this.keyFree = keyFree;
+		return f;
+	}
+
+	/** adds a field created at an explicit offset, see {@link LayoutPlanner}. */
+	<F extends BitField> F place(F field) {
+		addField(field);
+		return field;
 	}
 
 	private void addField(BitField bf) {
-		log.debug("{} <> {}", bf.highestBit(), size.size);
-		if (bf.highestBit() >= size.size) {
+		log.debug("{} <> {}", bf.highestBit(), bits);
+		if (isFrozen()) {
+			throw new IllegalStateException("layout is frozen, can't add " + bf.name());
+		} else if (bf.highestBit() >= bits) {
 			throw new IllegalArgumentException("field overflows availabile bits: " +
 					bf.name());
 		} else {
@@ -79,11 +195,7 @@ public class ByteRider {
 	 * @return int field representing storage for the int in the given range.
 	 */
 	public IntField  addInt(int minValue, int maxValue, String name) {
-		int offset = lowestUnusedOffset(fields);
-		log.debug("initializing int field starting at offset: " + offset);
-		IntField i = createIntField(offset, minValue, maxValue, name);
-		addField(i);
-		return i;
+		return add(offset -> createIntField(offset, minValue, maxValue, name));
 	}
 
 	public LongField addLong(long maxValue) {
@@ -95,10 +207,7 @@ public class ByteRider {
 	}
 
 	public LongField addLong(long minValue, long maxValue, String name) {
-		int offset = lowestUnusedOffset(fields);
-		LongField i = createLongField(offset, minValue, maxValue, name);
-		addField(i);
-		return i;
+		return add(offset -> createLongField(offset, minValue, maxValue, name));
 	}
 
 
@@ -110,6 +219,10 @@ public class ByteRider {
 	 * TODO: add use cases, e.g. LengthInMetres(100), or enum(?) or map-lookup
 	 *   without providing access to the map directly, using the functions.
 	 *
+	 * The functions take and return boxed Integers, prefer
+	 * {@link #addIntMappedObj(int, ToIntFunction, IntFunction, String)} where
+	 * allocations matter.
+	 *
 	 * @param <T> the type of the object to be stored
 	 * @param cardinality the number of different objects to be stored
 	 * @param fromObject function that accepts an object of type T and returns the
@@ -123,19 +236,37 @@ public class ByteRider {
 			Function<T, Integer> fromObject,
 			Function<Integer, T> toObject, String name)
 	{
-		int offset = lowestUnusedOffset(fields);
-		log.debug("initializing obj field starting at offset: " + offset);
-		IntMappedObjField<T> e = new ObjFieldImpl<T>(offset, cardinality,
-				fromObject, toObject, name);
-		addField(e);
-		return e;
+		return addIntMappedObj(cardinality, x -> fromObject.apply(x),
+				i -> toObject.apply(i), name);
+	}
+
+	/**
+	 * creates a field for storing objects of type T, like
+	 * {@link #addObj(int, Function, Function, String)}, but with conversion
+	 * functions on primitive ints, so reading and writing the field doesn't box.
+	 *
+	 * @param <T> the type of the object to be stored
+	 * @param cardinality the number of different objects to be stored
+	 * @param fromObject function that accepts an object of type T and returns its
+	 *    int representation, in [0, cardinality).
+	 * @param toObject function that accepts an int and returns an object
+	 *    of type T.
+	 * @param name field name
+	 * @return field providing access to storage for objects of type T.
+	 */
+	public <T> IntMappedObjField<T> addIntMappedObj(int cardinality,
+			ToIntFunction<T> fromObject, IntFunction<T> toObject, String name)
+	{
+		return add(offset -> createObjField(offset, cardinality, fromObject, toObject, name));
 	}
 
 	/**
 	 * creates a field for storing an enum into the bit store.
 	 *
 	 * Automatically copmutes the required number of bits and uses the
-	 * Enums ordinal function to convert to integer under the hood.
+	 * Enums ordinal function to convert to integer under the hood. Constants are
+	 * looked up in a copy of the enum's values, so no allocation happens on
+	 * get or set.
 	 *
 	 * @param <T> the type of the enum to be stored.
 	 * @param enumClass class representation of the enum to be stored
@@ -145,17 +276,211 @@ public class ByteRider {
 	public <T extends Enum<T>> IntMappedObjField<T> addEnum(
 			Class<T> enumClass, String name)
 	{
-		int offset = lowestUnusedOffset(fields);
-		log.debug("initializing enum field starting at offset: " + offset);
-		T [] candidates = enumClass.getEnumConstants();
-		IntMappedObjField<T> e = new ObjFieldImpl<T>(offset, candidates.length,
-				en -> en.ordinal(), i -> candidates[i], name);
-		addField(e);
-		return e;
+		return add(offset -> createEnumField(offset, enumClass, name));
+	}
+
+	/**
+	 * creates an {@link IntegerField} with the provided name, values ranging
+	 * from zero to maxValue, inclusive, or null.
+	 *
+	 * @param maxValue maximum valid value for the field.
+	 * @param name field name
+	 * @return nullable int field
+	 */
+	public IntegerField addNullableInt(int maxValue, String name) {
+		return addNullableInt(0, maxValue, name);
+	}
+
+	/**
+	 * creates an {@link IntegerField} with the provided name, values ranging
+	 * from minValue to maxValue, inclusive, or null.
+	 *
+	 * Null is stored as code zero and value v as v - minValue + 1, so the
+	 * field takes the bits of a field with one more value, and a record that
+	 * was never written reads as null.
+	 *
+	 * @param minValue minimum valid value for the field
+	 * @param maxValue maximum valid value for the field
+	 * @param name field name
+	 * @return nullable int field
+	 */
+	public IntegerField addNullableInt(int minValue, int maxValue, String name) {
+		return add(offset -> createNullableIntField(offset, minValue, maxValue, name));
+	}
+
+	/**
+	 * creates a {@link NullableLongField} with the provided name, values
+	 * ranging from zero to maxValue, inclusive, or null.
+	 */
+	public NullableLongField addNullableLong(long maxValue, String name) {
+		return addNullableLong(0, maxValue, name);
+	}
+
+	/**
+	 * creates a {@link NullableLongField} with the provided name, values
+	 * ranging from minValue to maxValue, inclusive, or null. Null is stored as
+	 * in {@link #addNullableInt(int, int, String)}.
+	 *
+	 * @param minValue minimum valid value for the field
+	 * @param maxValue maximum valid value for the field
+	 * @param name field name
+	 * @return nullable long field
+	 * @throws IllegalArgumentException if the range plus null doesn't fit into
+	 *   64 bits
+	 */
+	public NullableLongField addNullableLong(long minValue, long maxValue, String name) {
+		return add(offset -> createNullableLongField(offset, minValue, maxValue, name));
+	}
+
+	/**
+	 * creates a field for storing an enum or null. Null is stored as code zero,
+	 * constants as their ordinal plus one.
+	 *
+	 * @param <T> the type of the enum to be stored.
+	 * @param enumClass class representation of the enum to be stored
+	 * @param name field name
+	 * @return nullable enum field
+	 */
+	public <T extends Enum<T>> NullableEnumField<T> addNullableEnum(
+			Class<T> enumClass, String name)
+	{
+		return add(offset -> createNullableEnumField(offset, enumClass, name));
+	}
+
+	/**
+	 * starts an update of several fields at once, applied with a single AND and
+	 * OR per word:
+	 *
+	 * <pre>
+	 * data = br.update().set(net2Class, 3).set(freeway, true).apply(data);
+	 * </pre>
+	 *
+	 * @return a builder for a {@link Patch} of this layout
+	 */
+	public Patch.Builder update() {
+		return new Patch.Builder(this);
+	}
+
+	/**
+	 * starts a scan over records of this layout:
+	 *
+	 * <pre>
+	 * int n = br.scan().is(freeway, true).between(net2Class, 2, 4).build().count(segments);
+	 * </pre>
+	 *
+	 * @return a builder for a {@link RecordScan} of this layout
+	 */
+	public RecordScan.Builder scan() {
+		return new RecordScan.Builder(this);
 	}
 
 	public List<BitField> fields() { return this.fields; }
 
+	/**
+	 * completes the layout: no more fields can be added, and every field is
+	 * replaced by an implementation specialized for it, with mask, offset and
+	 * minimum value as constants the JIT can fold into the call site. Useful for
+	 * layouts assembled at runtime, where {@link BitLayout} can't be used.
+	 *
+	 * The specialized fields are available from {@link #fields()} and from the
+	 * frozen(...) methods. The specialized classes are hidden classes (java 15
+	 * and later) or anonymous classes of sun.misc.Unsafe (before), on runtimes
+	 * offering neither the fields stay as they are.
+	 *
+	 * @return this layout
+	 */
+	public ByteRider freeze() {
+		if (!isFrozen()) {
+			unfrozen = new ArrayList<>(fields);
+			for (int i = 0; i < fields.size(); ++i) {
+				fields.set(i, AccessorSpinner.specialize(fields.get(i)));
+			}
+		}
+		return this;
+	}
+
+	public boolean isFrozen() { return unfrozen != null; }
+
+	/**
+	 * the specialized version of a field of this layout, freezes the layout if
+	 * that didn't happen yet.
+	 *
+	 * @param field a field created by this layout
+	 * @return the same field, specialized by {@link #freeze()}
+	 */
+	public BoolField frozen(BoolField field) { return (BoolField) frozenField(field); }
+
+	/** see {@link #frozen(BoolField)}. */
+	public IntField frozen(IntField field) { return (IntField) frozenField(field); }
+
+	/** see {@link #frozen(BoolField)}. */
+	public LongField frozen(LongField field) { return (LongField) frozenField(field); }
+
+	/** see {@link #frozen(BoolField)}. */
+	@SuppressWarnings("unchecked")
+	public <T> IntMappedObjField<T> frozen(IntMappedObjField<T> field) {
+		return (IntMappedObjField<T>) frozenField(field);
+	}
+
+	/** see {@link #frozen(BoolField)}. */
+	public IntegerField frozen(IntegerField field) { return (IntegerField) frozenField(field); }
+
+	/** see {@link #frozen(BoolField)}. */
+	public NullableLongField frozen(NullableLongField field) {
+		return (NullableLongField) frozenField(field);
+	}
+
+	/** see {@link #frozen(BoolField)}. */
+	@SuppressWarnings("unchecked")
+	public <T extends Enum<T>> NullableEnumField<T> frozen(NullableEnumField<T> field) {
+		return (NullableEnumField<T>) frozenField(field);
+	}
+
+	private BitField frozenField(BitField field) {
+		freeze();
+		int i = indexOf(field);
+		if (i < 0) {
+			throw new IllegalArgumentException("not a field of this layout: " + field.name());
+		}
+		return fields.get(i);
+	}
+
+	/**
+	 * @return the position of field in {@link #fields()}, for both the
+	 *   original and the specialized field of a frozen layout; -1 if it isn't
+	 *   a field of this layout
+	 */
+	int indexOf(BitField field) {
+		for (int i = 0; i < fields.size(); ++i) {
+			if (fields.get(i) == field || (unfrozen != null && unfrozen.get(i) == field)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** number of longs per record. */
+	public int words() { return this.words; }
+
+	/** true for layouts created by {@link #keyLayout(Size)}. */
+	public boolean isKeyLayout() { return this.keyOrder; }
+
+	/**
+	 * compares two records word by word, unsigned. For a {@link #keyLayout key
+	 * layout} that's the lexicographic order of the fields.
+	 *
+	 * @return negative, zero or positive, like {@link Long#compareUnsigned}
+	 */
+	public int compareKeys(RecordStorage storage, int a, int b) {
+		for (int w = 0; w < words; ++w) {
+			int c = Long.compareUnsigned(storage.word(a, w), storage.word(b, w));
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
 	public void checkFields() {
 		checkFields(fields.toArray(new BitField[0]));
 	}
@@ -164,14 +489,82 @@ public class ByteRider {
 		return new BoolImpl(idx, name);
 	}
 
+	/**
+	 * creates an {@link IntField} starting at the given bit of a record. Offsets
+	 * beyond 63 address the following words.
+	 *
+	 * @throws IllegalArgumentException if the field would cross a word boundary
+	 */
 	public static IntField createIntField(int offset, int minValue, int maxValue, String name) {
+		checkWithinWord(offset, bitsRequired(maxValue+1l-minValue), name);
 		return IntImpl.create(offset, minValue, maxValue, name);
 	}
 
+	/**
+	 * creates a {@link LongField} starting at the given bit of a record, see
+	 * {@link #createIntField}.
+	 */
 	public static LongField createLongField(int offset, long minValue, long maxValue, String name) {
+		checkWithinWord(offset, bitsRequired(maxValue+1l-minValue), name);
 		return LongImpl.create(offset, minValue, maxValue, name);
 	}
 
+	static <T> IntMappedObjField<T> createObjField(int offset, int cardinality,
+			ToIntFunction<T> fromObject, IntFunction<T> toObject, String name)
+	{
+		return new ObjFieldImpl<T>(createIntField(offset, 0, cardinality + 1, name),
+				fromObject, toObject);
+	}
+
+	static <T extends Enum<T>> IntMappedObjField<T> createEnumField(int offset,
+			Class<T> enumClass, String name)
+	{
+		T [] candidates = enumClass.getEnumConstants();
+		return new EnumFieldImpl<T>(createIntField(offset, 0, candidates.length + 1, name),
+				candidates);
+	}
+
+	static IntegerField createNullableIntField(int offset, int minValue, int maxValue,
+			String name)
+	{
+		if (minValue > maxValue) {
+			throw new IllegalArgumentException("invalid range for " + name);
+		}
+		return new NullableIntImpl(
+				createLongField(offset, 0, (long) maxValue - minValue + 1, name),
+				minValue, maxValue);
+	}
+
+	static NullableLongField createNullableLongField(int offset, long minValue,
+			long maxValue, String name)
+	{
+		long span = maxValue - minValue;
+		if (minValue > maxValue || span < 0 || span >= Long.MAX_VALUE - 1) {
+			throw new IllegalArgumentException("invalid range for " + name);
+		}
+		return new NullableLongImpl(createLongField(offset, 0, span + 1, name),
+				minValue, maxValue);
+	}
+
+	static <T extends Enum<T>> NullableEnumField<T> createNullableEnumField(int offset,
+			Class<T> enumClass, String name)
+	{
+		T [] candidates = enumClass.getEnumConstants();
+		return new NullableEnumImpl<T>(createIntField(offset, 0, candidates.length, name),
+				candidates);
+	}
+
+	private static boolean crossesWord(int offset, int bits) {
+		return (offset & 63) + bits > 64;
+	}
+
+	private static void checkWithinWord(int offset, int bits, String name) {
+		if (crossesWord(offset, bits)) {
+			throw new IllegalArgumentException(String.format(
+					"%s: %d bits at offset %d cross a word boundary", name, bits, offset));
+		}
+	}
+
 	public enum Size {
 		BYTE_SET(8), SHORT_SET(16), INT_SET(32), LONG_SET(64);
 
@@ -187,11 +580,25 @@ public class ByteRider {
 		}
 	};
 
-	interface BitField {
+	public interface BitField {
 		long clear(long field);
+
+		/** the bits covered by this field, inside the word {@link #word()}. */
 		long mask();
+
+		/** the highest bit covered by this field, counted from the record's first word. */
 		int highestBit();
 		String name();
+
+		/** index of the (first) word of a record holding this field. */
+		default int word() {
+			return highestBit() >>> 6;
+		}
+
+		/** the bits covered by this field inside the given word of a record. */
+		default long mask(int word) {
+			return word == word() ? mask() : 0L;
+		}
 	}
 
 	static abstract class BaseBitField implements BitField
@@ -216,6 +623,14 @@ public class ByteRider {
 		@Override public long mask() { return mask; }
 
 		@Override public int highestBit() { return this.highestBit; }
+
+		/** static, so the frozen fields can call it without a receiver. */
+		static void checkRange(long value, long minValue, long maxValue) {
+			if (value < minValue || value > maxValue) {
+				throw new IllegalArgumentException(String.format
+						("value %d out of range [%d, %d]", value, minValue, maxValue));
+			}
+		}
 	}
 
 	/**
@@ -226,6 +641,15 @@ public class ByteRider {
 		boolean get(long field);
 		long set(long field);
 		long set(long field, boolean val);
+
+		default boolean get(RecordStorage storage, int index) {
+			return get(storage.word(index, word()));
+		}
+
+		default void set(RecordStorage storage, int index, boolean val) {
+			int word = word();
+			storage.setWord(index, word, set(storage.word(index, word), val));
+		}
 	}
 
 	/**
@@ -237,6 +661,20 @@ public class ByteRider {
 		long set(long field, int value);
 		int maxValue();
 		int minValue();
+
+		default int get(RecordStorage storage, int index) {
+			return get(storage.word(index, word()));
+		}
+
+		default void set(RecordStorage storage, int index, int value) {
+			int word = word();
+			storage.setWord(index, word, set(storage.word(index, word), value));
+		}
+
+		/** @return the values of this field in all records of storage, see {@link RecordStreams} */
+		default IntStream stream(RecordStorage storage) {
+			return RecordStreams.stream(this, storage);
+		}
 	}
 
 	/**
@@ -248,6 +686,20 @@ public class ByteRider {
 		long set(long field, long value);
 		long minValue();
 		long maxValue();
+
+		default long get(RecordStorage storage, int index) {
+			return get(storage.word(index, word()));
+		}
+
+		default void set(RecordStorage storage, int index, long value) {
+			int word = word();
+			storage.setWord(index, word, set(storage.word(index, word), value));
+		}
+
+		/** @return the values of this field in all records of storage, see {@link RecordStreams} */
+		default LongStream stream(RecordStorage storage) {
+			return RecordStreams.stream(this, storage);
+		}
 	}
 
 	/**
@@ -256,15 +708,123 @@ public class ByteRider {
 	public interface IntMappedObjField<T> extends BitField {
 		T get(long field);
 		long set(long field, T x);
+
+		default T get(RecordStorage storage, int index) {
+			return get(storage.word(index, word()));
+		}
+
+		default void set(RecordStorage storage, int index, T x) {
+			int word = word();
+			storage.setWord(index, word, set(storage.word(index, word), x));
+		}
+
+		/** @return the values of this field in all records of storage, see {@link RecordStreams} */
+		default Stream<T> stream(RecordStorage storage) {
+			return RecordStreams.stream(this, storage);
+		}
 	}
 
 	/**
-	 * Represents a {@link BitField} containing a single, nullable,
-	 * primitive boolean.
+	 * Represents a {@link BitField} containing a nullable int value.
+	 *
+	 * {@link #get(long)} boxes, hot paths should use {@link #isNull(long)} and
+	 * {@link #getOrDefault(long, int)} instead.
 	 */
 	public interface IntegerField extends BitField {
 		Integer get(long field);
 		long set(long field, Integer x);
+
+		boolean isNull(long field);
+		int getOrDefault(long field, int dflt);
+		long set(long field, int value);
+		long setNull(long field);
+		int minValue();
+		int maxValue();
+
+		default boolean isNull(RecordStorage storage, int index) {
+			return isNull(storage.word(index, word()));
+		}
+
+		default int getOrDefault(RecordStorage storage, int index, int dflt) {
+			return getOrDefault(storage.word(index, word()), dflt);
+		}
+
+		default void set(RecordStorage storage, int index, int value) {
+			int word = word();
+			storage.setWord(index, word, set(storage.word(index, word), value));
+		}
+
+		default void setNull(RecordStorage storage, int index) {
+			int word = word();
+			storage.setWord(index, word, setNull(storage.word(index, word)));
+		}
+	}
+
+	/**
+	 * Represents a {@link BitField} containing a nullable long value, see
+	 * {@link IntegerField}.
+	 */
+	public interface NullableLongField extends BitField {
+		Long get(long field);
+		long set(long field, Long x);
+
+		boolean isNull(long field);
+		long getOrDefault(long field, long dflt);
+		long set(long field, long value);
+		long setNull(long field);
+		long minValue();
+		long maxValue();
+
+		default boolean isNull(RecordStorage storage, int index) {
+			return isNull(storage.word(index, word()));
+		}
+
+		default long getOrDefault(RecordStorage storage, int index, long dflt) {
+			return getOrDefault(storage.word(index, word()), dflt);
+		}
+
+		default void set(RecordStorage storage, int index, long value) {
+			int word = word();
+			storage.setWord(index, word, set(storage.word(index, word), value));
+		}
+
+		default void setNull(RecordStorage storage, int index) {
+			int word = word();
+			storage.setWord(index, word, setNull(storage.word(index, word)));
+		}
+	}
+
+	/**
+	 * Represents a {@link BitField} containing an enum constant or null.
+	 */
+	public interface NullableEnumField<T extends Enum<T>> extends BitField {
+		/** @return the stored constant, or null */
+		T get(long field);
+		long set(long field, T x);
+
+		boolean isNull(long field);
+		T getOrDefault(long field, T dflt);
+
+		default long setNull(long field) {
+			return set(field, null);
+		}
+
+		default T get(RecordStorage storage, int index) {
+			return get(storage.word(index, word()));
+		}
+
+		default void set(RecordStorage storage, int index, T x) {
+			int word = word();
+			storage.setWord(index, word, set(storage.word(index, word), x));
+		}
+
+		default boolean isNull(RecordStorage storage, int index) {
+			return isNull(storage.word(index, word()));
+		}
+
+		default T getOrDefault(RecordStorage storage, int index, T dflt) {
+			return getOrDefault(storage.word(index, word()), dflt);
+		}
 	}
 
 	/**
@@ -301,7 +861,7 @@ public class ByteRider {
 		public static IntImpl create(int offset, int minValue, int maxValue, String name) {
 			int bits = bitsRequired(maxValue+1l-minValue);
 			long mask = ((1L << bits) - 1) << offset;
-			return new IntImpl(mask, offset, minValue, maxValue, name, offset + bits - 1);
+			return new IntImpl(mask, offset & 63, minValue, maxValue, name, offset + bits - 1);
 		}
 
 		IntImpl(long mask, int offset, int minValue, int maxValue, String name, int highestBit) {
@@ -312,16 +872,20 @@ public class ByteRider {
 		}
 
 		@Override public int get(long field) {
-			return (int) (((field & mask) >> offset) + minValue);
+			return (int) (((field & mask) >>> offset) + minValue);
 		}
 
 		@Override public long set(long field, int value) {
-			if (value < minValue || value > maxValue) {
-				throw new IllegalArgumentException(String.format
-						("value %d out of range [%d, %d]", value, minValue, maxValue));
-			} else {
-				return field & clear | ((value - minValue) << offset);
-			}
+			check(value);
+			return field & clear | ((value - minValue) << offset);
+		}
+
+		void check(int value) {
+			checkRange(value, minValue, maxValue);
+		}
+
+		int offset() {
+			return offset;
 		}
 
 		@Override public int minValue() {
@@ -345,7 +909,7 @@ public class ByteRider {
 		public static LongImpl create(int offset, long minValue, long maxValue, String name) {
 			int bits = bitsRequired(maxValue+1l-minValue);
 			long mask = ((1L << bits) - 1) << offset;
-			return new LongImpl(mask, offset, minValue, maxValue, name, offset + bits - 1);
+			return new LongImpl(mask, offset & 63, minValue, maxValue, name, offset + bits - 1);
 		}
 
 		LongImpl(long mask, int offset, long minValue, long maxValue, String name, int highestBit) {
@@ -356,20 +920,24 @@ public class ByteRider {
 		}
 
 		@Override public long get(long field) {
-			return ((field & mask) >> offset) + minValue;
+			return ((field & mask) >>> offset) + minValue;
 		}
 
 		@Override public long set(long field, long value) {
-			if (value < minValue || value > maxValue) {
-				throw new IllegalArgumentException(String.format
-						("value %d out of range [%d, %d]", value, minValue, maxValue));
-			} else {
-				return field & clear | ((value - minValue) << offset);
-			}
+			check(value);
+			return field & clear | ((value - minValue) << offset);
+		}
+
+		void check(long value) {
+			checkRange(value, minValue, maxValue);
+		}
+
+		int offset() {
+			return offset;
 		}
 
 		@Override public long minValue() {
-			return (int) minValue;
+			return minValue;
 		}
 
 		@Override public long maxValue() {
@@ -378,24 +946,41 @@ public class ByteRider {
 	}
 
 	public static class ObjFieldImpl<T> implements IntMappedObjField<T> {
-		final Function<Integer, T> toObject;
-		final Function<T, Integer> fromObject;
+		final IntFunction<T> toObject;
+		final ToIntFunction<T> fromObject;
 		final IntField intField;
 
 		public ObjFieldImpl(int offset, int values, Function<T, Integer> fromObject,
 				Function<Integer, T> toObject, String name)
 		{
-			this.intField = IntImpl.create(offset, 0, values+1, name);
+			this(createIntField(offset, 0, values+1, name), x -> fromObject.apply(x),
+					i -> toObject.apply(i));
+		}
+
+		ObjFieldImpl(IntField intField, ToIntFunction<T> fromObject,
+				IntFunction<T> toObject)
+		{
+			this.intField = intField;
 			this.toObject = toObject;
 			this.fromObject = fromObject;
 		}
 
+		/** the same mapping on top of another int field, see {@link #freeze()}. */
+		ObjFieldImpl<T> withIntField(IntField intField) {
+			return new ObjFieldImpl<>(intField, fromObject, toObject);
+		}
+
+		/** the number of objects, the int field allows for one more on top. */
+		int cardinality() {
+			return intField.maxValue() - 1;
+		}
+
 		@Override public T get(long field) {
 			return toObject.apply(intField.get(field));
 		}
 
 		@Override public long set(long field, T x) {
-			return intField.set(field, fromObject.apply(x));
+			return intField.set(field, fromObject.applyAsInt(x));
 		}
 
 		@Override public String name() { return intField.name(); }
@@ -405,6 +990,278 @@ public class ByteRider {
 		@Override public long mask() { return intField.mask(); }
 
 		@Override public int highestBit() { return intField.highestBit(); }
+
+		@Override public int word() { return intField.word(); }
+
+		@Override public long mask(int word) { return intField.mask(word); }
+
+		@Override public T get(RecordStorage storage, int index) {
+			return toObject.apply(intField.get(storage, index));
+		}
+
+		@Override public void set(RecordStorage storage, int index, T x) {
+			intField.set(storage, index, fromObject.applyAsInt(x));
+		}
+	}
+
+	/**
+	 * an enum stored by its ordinal, read back from a cached values array.
+	 */
+	static class EnumFieldImpl<T extends Enum<T>> extends ObjFieldImpl<T> {
+		private final T [] values;
+
+		EnumFieldImpl(IntField intField, T [] values) {
+			super(intField, T::ordinal, i -> values[i]);
+			this.values = values;
+		}
+
+		@Override ObjFieldImpl<T> withIntField(IntField intField) {
+			return new EnumFieldImpl<>(intField, values);
+		}
+
+		T [] constants() {
+			return values;
+		}
+
+		@Override public T get(long field) {
+			return values[intField.get(field)];
+		}
+
+		@Override public long set(long field, T x) {
+			return intField.set(field, x.ordinal());
+		}
+
+		@Override public T get(RecordStorage storage, int index) {
+			return values[intField.get(storage, index)];
+		}
+
+		@Override public void set(RecordStorage storage, int index, T x) {
+			intField.set(storage, index, x.ordinal());
+		}
+	}
+
+	/**
+	 * base for fields storing null as code zero of an underlying int or long
+	 * field, which holds all the bits.
+	 */
+	static abstract class NullableBitField<F extends BitField> implements BitField {
+		final F codes;
+
+		NullableBitField(F codes) {
+			this.codes = codes;
+		}
+
+		/** the same field on top of other codes, see {@link #freeze()}. */
+		abstract NullableBitField<F> withCodes(F codes);
+
+		@Override public String name() { return codes.name(); }
+
+		@Override public long clear(long field) { return codes.clear(field); }
+
+		@Override public long mask() { return codes.mask(); }
+
+		@Override public int highestBit() { return codes.highestBit(); }
+
+		@Override public int word() { return codes.word(); }
+
+		@Override public long mask(int word) { return codes.mask(word); }
+	}
+
+	static class NullableIntImpl extends NullableBitField<LongField> implements IntegerField {
+		private final int minValue;
+		private final int maxValue;
+
+		NullableIntImpl(LongField codes, int minValue, int maxValue) {
+			super(codes);
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+		}
+
+		@Override NullableIntImpl withCodes(LongField codes) {
+			return new NullableIntImpl(codes, minValue, maxValue);
+		}
+
+		@Override public Integer get(long field) {
+			long code = codes.get(field);
+			return code == 0 ? null : value(code);
+		}
+
+		@Override public long set(long field, Integer x) {
+			return x == null ? setNull(field) : set(field, x.intValue());
+		}
+
+		@Override public boolean isNull(long field) {
+			return codes.clear(field) == field;
+		}
+
+		@Override public int getOrDefault(long field, int dflt) {
+			long code = codes.get(field);
+			return code == 0 ? dflt : value(code);
+		}
+
+		@Override public long set(long field, int value) {
+			return codes.set(field, code(value));
+		}
+
+		@Override public long setNull(long field) {
+			return codes.clear(field);
+		}
+
+		@Override public boolean isNull(RecordStorage storage, int index) {
+			return codes.get(storage, index) == 0;
+		}
+
+		@Override public int getOrDefault(RecordStorage storage, int index, int dflt) {
+			long code = codes.get(storage, index);
+			return code == 0 ? dflt : value(code);
+		}
+
+		@Override public void set(RecordStorage storage, int index, int value) {
+			codes.set(storage, index, code(value));
+		}
+
+		@Override public void setNull(RecordStorage storage, int index) {
+			codes.set(storage, index, 0L);
+		}
+
+		@Override public int minValue() { return minValue; }
+
+		@Override public int maxValue() { return maxValue; }
+
+		private int value(long code) {
+			return (int) (code - 1 + minValue);
+		}
+
+		private long code(int value) {
+			if (value < minValue || value > maxValue) {
+				throw new IllegalArgumentException(String.format
+						("value %d out of range [%d, %d]", value, minValue, maxValue));
+			}
+			return (long) value - minValue + 1;
+		}
+	}
+
+	static class NullableLongImpl extends NullableBitField<LongField> implements NullableLongField {
+		private final long minValue;
+		private final long maxValue;
+
+		NullableLongImpl(LongField codes, long minValue, long maxValue) {
+			super(codes);
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+		}
+
+		@Override NullableLongImpl withCodes(LongField codes) {
+			return new NullableLongImpl(codes, minValue, maxValue);
+		}
+
+		@Override public Long get(long field) {
+			long code = codes.get(field);
+			return code == 0 ? null : code - 1 + minValue;
+		}
+
+		@Override public long set(long field, Long x) {
+			return x == null ? setNull(field) : set(field, x.longValue());
+		}
+
+		@Override public boolean isNull(long field) {
+			return codes.clear(field) == field;
+		}
+
+		@Override public long getOrDefault(long field, long dflt) {
+			long code = codes.get(field);
+			return code == 0 ? dflt : code - 1 + minValue;
+		}
+
+		@Override public long set(long field, long value) {
+			return codes.set(field, code(value));
+		}
+
+		@Override public long setNull(long field) {
+			return codes.clear(field);
+		}
+
+		@Override public boolean isNull(RecordStorage storage, int index) {
+			return codes.get(storage, index) == 0;
+		}
+
+		@Override public long getOrDefault(RecordStorage storage, int index, long dflt) {
+			long code = codes.get(storage, index);
+			return code == 0 ? dflt : code - 1 + minValue;
+		}
+
+		@Override public void set(RecordStorage storage, int index, long value) {
+			codes.set(storage, index, code(value));
+		}
+
+		@Override public void setNull(RecordStorage storage, int index) {
+			codes.set(storage, index, 0L);
+		}
+
+		@Override public long minValue() { return minValue; }
+
+		@Override public long maxValue() { return maxValue; }
+
+		private long code(long value) {
+			if (value < minValue || value > maxValue) {
+				throw new IllegalArgumentException(String.format
+						("value %d out of range [%d, %d]", value, minValue, maxValue));
+			}
+			return value - minValue + 1;
+		}
+	}
+
+	static class NullableEnumImpl<T extends Enum<T>> extends NullableBitField<IntField>
+		implements NullableEnumField<T>
+	{
+		private final T [] values;
+
+		NullableEnumImpl(IntField codes, T [] values) {
+			super(codes);
+			this.values = values;
+		}
+
+		@Override NullableEnumImpl<T> withCodes(IntField codes) {
+			return new NullableEnumImpl<>(codes, values);
+		}
+
+		T [] constants() {
+			return values;
+		}
+
+		@Override public T get(long field) {
+			return getOrDefault(field, null);
+		}
+
+		@Override public long set(long field, T x) {
+			return codes.set(field, x == null ? 0 : x.ordinal() + 1);
+		}
+
+		@Override public boolean isNull(long field) {
+			return codes.clear(field) == field;
+		}
+
+		@Override public T getOrDefault(long field, T dflt) {
+			int code = codes.get(field);
+			return code == 0 ? dflt : values[code - 1];
+		}
+
+		@Override public T get(RecordStorage storage, int index) {
+			return getOrDefault(storage, index, null);
+		}
+
+		@Override public void set(RecordStorage storage, int index, T x) {
+			codes.set(storage, index, x == null ? 0 : x.ordinal() + 1);
+		}
+
+		@Override public boolean isNull(RecordStorage storage, int index) {
+			return codes.get(storage, index) == 0;
+		}
+
+		@Override public T getOrDefault(RecordStorage storage, int index, T dflt) {
+			int code = codes.get(storage, index);
+			return code == 0 ? dflt : values[code - 1];
+		}
 	}
 
 	/**
@@ -422,28 +1279,36 @@ public class ByteRider {
 	 * @throws IllegalArgumentException when fields are inconsisent and overlap.
 	 */
 	public static void checkFields(BitField... fields) {
-		long init = 0;
-		for (int i = 0; i < fields.length; ++i) {
-			log.debug("{} | {} -> {}", Long.toBinaryString(init), Long.toBinaryString(fields[i].mask()), Long.toBinaryString(init | fields[i].mask()));
-			// failure case: go back through processed field to find contradicting pair.
-			if ((init & fields[i].mask()) != 0) {
-				for(int j=0; j<i; ++j) {
-					if((fields[i].mask() & fields[j].mask()) != 0) {
-						throw new IllegalArgumentException("overlapping bitfields: "
-								+ fields[i].name() + " <> " + fields[j].name());
+		int words = (lowestUnusedOffset(Arrays.asList(fields)) + 63) >>> 6;
+		for (int w = 0; w < words; ++w) {
+			long init = 0;
+			for (int i = 0; i < fields.length; ++i) {
+				long mask = fields[i].mask(w);
+				log.debug("{} | {} -> {}", Long.toBinaryString(init), Long.toBinaryString(mask), Long.toBinaryString(init | mask));
+				// failure case: go back through processed field to find contradicting pair.
+				if ((init & mask) != 0) {
+					for(int j=0; j<i; ++j) {
+						if((mask & fields[j].mask(w)) != 0) {
+							throw new IllegalArgumentException("overlapping bitfields: "
+									+ fields[i].name() + " <> " + fields[j].name());
+						}
 					}
 				}
+				init |= mask;
 			}
-			init |= fields[i].mask();
 		}
 	}
 
+	/**
+	 * computes the first bit (counted from the record's first word) above all
+	 * the given fields.
+	 */
 	public static int lowestUnusedOffset(List<BitField> fields) {
-		long mask = 0;
+		int offset = 0;
 		for (BitField f : fields) {
-			mask |= f.mask();
+			offset = Math.max(offset, f.highestBit() + 1);
 		}
-		return 64 - Long.numberOfLeadingZeros(mask);
+		return offset;
 	}
 
 }
@@ -0,0 +1,314 @@
+package org.kulturguerilla.byterider;
+
+import java.util.Arrays;
+
+/**
+ * Storage for many records sharing a single {@link ByteRider} layout, kept in
+ * one contiguous long [].
+ *
+ * Instead of one object (with its header and a reference to it) per record,
+ * every record is just a long (or {@link ByteRider#words()} consecutive longs)
+ * inside the backing array, addressed by its index. The fields of the layout
+ * read and write records directly:
+ *
+ * <pre>
+ * ByteRiderArray segments = new ByteRiderArray(br, 1000);
+ * int i = segments.append();
+ * net2Class.set(segments, i, 4);
+ * if (freeway.get(segments, i)) { ... }
+ * </pre>
+ *
+ * The methods taking a single long as record only work for single word
+ * layouts, the ones taking a long [] for any layout.
+ *
+ * Not thread safe, in the same way a plain long [] isn't.
+ */
+public class ByteRiderArray implements RecordStorage {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final ByteRider layout;
+	private final int stride;
+
+	private long [] data;
+	private int size;
+
+	/**
+	 * creates an empty array for records of the given layout.
+	 *
+	 * @param layout the layout of the stored records
+	 */
+	public ByteRiderArray(ByteRider layout) {
+		this(layout, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * creates an empty array for records of the given layout, with room for
+	 * capacity records before the backing array has to grow.
+	 *
+	 * @param layout the layout of the stored records
+	 * @param capacity initial number of records that fit without growing
+	 */
+	public ByteRiderArray(ByteRider layout, int capacity) {
+		this(layout, new long[Math.multiplyExact(capacity, layout.words())], 0);
+	}
+
+	private ByteRiderArray(ByteRider layout, long [] data, int size) {
+		this.layout = layout;
+		this.stride = layout.words();
+		this.data = data;
+		this.size = size;
+	}
+
+	/**
+	 * wraps an existing long [], each {@link ByteRider#words()} elements being
+	 * one record. The array is not copied, changes are visible on both sides
+	 * until the array grows.
+	 *
+	 * @param layout the layout of the stored records
+	 * @param data the records
+	 * @return array of all records in data, backed by data
+	 */
+	public static ByteRiderArray wrap(ByteRider layout, long [] data) {
+		if (data.length % layout.words() != 0) {
+			throw new IllegalArgumentException(String.format(
+					"%d words don't make up records of %d words", data.length, layout.words()));
+		}
+		return new ByteRiderArray(layout, data, data.length / layout.words());
+	}
+
+	@Override public ByteRider layout() { return layout; }
+
+	@Override public int size() { return size; }
+
+	/** the backing array, records beyond size() are garbage; for bulk operations. */
+	long [] data() { return data; }
+
+	/** number of records that fit without growing the backing array. */
+	public int capacity() { return data.length / stride; }
+
+	@Override public long word(int index, int word) {
+		checkIndex(index, word);
+		return data[Math.multiplyExact(index, stride) + word];
+	}
+
+	@Override public void setWord(int index, int word, long value) {
+		checkIndex(index, word);
+		data[Math.multiplyExact(index, stride) + word] = value;
+	}
+
+	/**
+	 * appends a record with all bits cleared.
+	 *
+	 * @return the index of the new record
+	 */
+	public int append() {
+		ensureCapacity(size + 1);
+		Arrays.fill(data, size * stride, (size + 1) * stride, 0L);
+		return size++;
+	}
+
+	/**
+	 * appends a record of a single word layout, growing the backing array when
+	 * necessary.
+	 *
+	 * @param value the packed record to append
+	 * @return the index of the new record
+	 */
+	public int append(long value) {
+		checkSingleWord();
+		ensureCapacity(size + 1);
+		data[size] = value;
+		return size++;
+	}
+
+	/**
+	 * appends a record, growing the backing array when necessary.
+	 *
+	 * @param record the words of the packed record to append
+	 * @return the index of the new record
+	 */
+	public int append(long [] record) {
+		checkRecord(record);
+		ensureCapacity(size + 1);
+		System.arraycopy(record, 0, data, size * stride, stride);
+		return size++;
+	}
+
+	/**
+	 * appends count records of a single word layout, all set to value.
+	 *
+	 * @param value the packed record to append
+	 * @param count number of records to append
+	 * @return the index of the first appended record
+	 * @throws IllegalArgumentException if count is negative
+	 */
+	public int append(long value, int count) {
+		checkSingleWord();
+		checkCount(count);
+		int first = size;
+		ensureCapacity(Math.addExact(size, count));
+		size += count;
+		Arrays.fill(data, first, size, value);
+		return first;
+	}
+
+	/**
+	 * appends count records, all set to record.
+	 *
+	 * @param record the words of the packed record to append
+	 * @param count number of records to append
+	 * @return the index of the first appended record
+	 * @throws IllegalArgumentException if count is negative
+	 */
+	public int append(long [] record, int count) {
+		checkRecord(record);
+		checkCount(count);
+		int first = size;
+		ensureCapacity(Math.addExact(size, count));
+		size += count;
+		fillRecords(first, size, record);
+		return first;
+	}
+
+	/**
+	 * sets all records in [from, to) of a single word layout to the given
+	 * packed value.
+	 *
+	 * @param from first record index, inclusive
+	 * @param to last record index, exclusive
+	 * @param value the packed record
+	 */
+	public void fill(int from, int to, long value) {
+		checkSingleWord();
+		checkRange(from, to);
+		Arrays.fill(data, from, to, value);
+	}
+
+	/** sets all records of a single word layout to the given packed value. */
+	public void fill(long value) {
+		fill(0, size, value);
+	}
+
+	/**
+	 * sets all records in [from, to) to the given packed record.
+	 *
+	 * @param from first record index, inclusive
+	 * @param to last record index, exclusive
+	 * @param record the words of the packed record
+	 */
+	public void fill(int from, int to, long [] record) {
+		checkRecord(record);
+		checkRange(from, to);
+		fillRecords(from, to, record);
+	}
+
+	/**
+	 * applies the patch to all records in [from, to), one AND and OR per word,
+	 * see {@link Patch#apply(RecordStorage, int, int)}.
+	 *
+	 * @param patch patch for this array's layout
+	 * @param from first record index, inclusive
+	 * @param to last record index, exclusive
+	 * @throws IllegalArgumentException if the patch is for a different layout
+	 */
+	public void apply(Patch patch, int from, int to) {
+		patch.checkLayout(this);
+		checkRange(from, to);
+		patch.apply(data, from, to);
+	}
+
+	/**
+	 * copies length records starting at srcPos into dest, starting at destPos.
+	 * Same semantics as {@link System#arraycopy}, overlapping ranges within a
+	 * single array are fine.
+	 *
+	 * @param srcPos first record to copy
+	 * @param dest target array, must already contain the target range
+	 * @param destPos first record to write in dest
+	 * @param length number of records to copy
+	 */
+	public void copy(int srcPos, ByteRiderArray dest, int destPos, int length) {
+		if (dest.stride != stride) {
+			throw new IllegalArgumentException(String.format(
+					"can't copy records of %d words to records of %d words", stride, dest.stride));
+		}
+		checkRange(srcPos, srcPos + length);
+		dest.checkRange(destPos, destPos + length);
+		System.arraycopy(data, srcPos * stride, dest.data, destPos * stride, length * stride);
+	}
+
+	/** @return an independent copy containing the same records. */
+	public ByteRiderArray copyOf() {
+		return new ByteRiderArray(layout, toArray(), size);
+	}
+
+	/** @return a copy of the packed records, {@link ByteRider#words()} longs per record. */
+	public long [] toArray() {
+		return Arrays.copyOf(data, size * stride);
+	}
+
+	/** removes all records, keeping the capacity. */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * grows the backing array so that it holds at least capacity records.
+	 *
+	 * @param capacity minimum number of records
+	 * @throws ArithmeticException if capacity records take more than
+	 *   Integer.MAX_VALUE longs
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > capacity()) {
+			// grow by half, as far as an array can
+			long grown = Math.max(capacity,
+					Math.min(capacity() + (capacity() >> 1) + 1L, Integer.MAX_VALUE / stride));
+			data = Arrays.copyOf(data, Math.multiplyExact((int) grown, stride));
+		}
+	}
+
+	private void fillRecords(int from, int to, long [] record) {
+		if (stride == 1) {
+			Arrays.fill(data, from, to, record[0]);
+		} else {
+			for (int i = from; i < to; ++i) {
+				System.arraycopy(record, 0, data, i * stride, stride);
+			}
+		}
+	}
+
+	private void checkIndex(int index, int word) {
+		if (index < 0 || index >= size || word < 0 || word >= stride) {
+			throw new IndexOutOfBoundsException(String.format(
+					"index %d, word %d, size %d", index, word, size));
+		}
+	}
+
+	private void checkRange(int from, int to) {
+		if (from < 0 || from > to || to > size) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), size %d", from, to, size));
+		}
+	}
+
+	private static void checkCount(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("negative number of records: " + count);
+		}
+	}
+
+	private void checkSingleWord() {
+		if (stride != 1) {
+			throw new IllegalStateException("layout spans " + stride + " words, pass a long []");
+		}
+	}
+
+	private void checkRecord(long [] record) {
+		if (record.length != stride) {
+			throw new IllegalArgumentException(String.format(
+					"record has %d words, layout %d", record.length, stride));
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package org.kulturguerilla.byterider;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Large int sequences split into independent chunks, which are encoded and
+ * decoded in parallel on the common fork join pool.
+ *
+ * Each chunk is a sequence in the packed format of
+ * {@link DeltaCompression#encodePacked}, with its own count, and deltas taken
+ * from its first value, kept as base in the header, so no chunk depends on
+ * the one before it, and the first block of a chunk isn't widened by a delta
+ * from 0.
+ *
+ * Format (little endian):
+ * <pre>
+ * count         int, number of values
+ * chunkSize     int, values per chunk, the last one may be shorter
+ * chunks        int
+ * chunks times:
+ *   base        int, first value of the chunk
+ *   end         int, end offset of the chunk, counted from the first chunk
+ * chunks        the packed chunks
+ * </pre>
+ *
+ * Sequences of a single chunk are encoded and decoded on the calling thread.
+ */
+public final class ChunkedCompression {
+
+	/** values per chunk, unless given otherwise. */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+	private static final int HEADER = 3 * Integer.BYTES;
+	/** bytes per chunk in the header, base and end offset. */
+	private static final int CHUNK_HEADER = 2 * Integer.BYTES;
+
+	private ChunkedCompression() {
+	}
+
+	/** @return values, in chunks of {@link #DEFAULT_CHUNK_SIZE} */
+	public static byte [] encode(int [] values) {
+		return encode(values, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @return values, in chunks of chunkSize
+	 * @throws IllegalArgumentException if chunkSize &lt; 1
+	 */
+	public static byte [] encode(int [] values, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunk size " + chunkSize + " < 1");
+		}
+		int n = values.length;
+		int chunks = (int) ((n + (long) chunkSize - 1) / chunkSize);
+		byte [][] encoded = new byte[chunks][];
+		int [] lengths = new int[chunks];
+		forEachChunk(chunks, c -> {
+			int from = c * chunkSize;
+			int count = Math.min(chunkSize, n - from);
+			encoded[c] = new byte[DeltaCompression.maxPackedLength(count)];
+			lengths[c] = DeltaCompression.encodePacked(values, from, count, values[from], encoded[c], 0);
+		});
+
+		int start = HEADER + chunks * CHUNK_HEADER;
+		int [] offsets = new int[chunks];
+		int end = 0;
+		for (int c = 0; c < chunks; ++c) {
+			offsets[c] = end;
+			end = Math.addExact(end, lengths[c]);
+		}
+		byte [] result = new byte[Math.addExact(start, end)];
+		ByteBuffer header = ByteBuffer.wrap(result).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(n).putInt(chunkSize).putInt(chunks);
+		for (int c = 0; c < chunks; ++c) {
+			header.putInt(values[c * chunkSize]).putInt(offsets[c] + lengths[c]);
+		}
+		forEachChunk(chunks, c -> {
+			System.arraycopy(encoded[c], 0, result, start + offsets[c], lengths[c]);
+			encoded[c] = null;
+		});
+		return result;
+	}
+
+	/** @return the number of values in bs */
+	public static int count(byte [] bs) {
+		if (bs.length < HEADER) {
+			throw new IllegalArgumentException("truncated header, " + bs.length + " bytes");
+		}
+		return header(bs).getInt(0);
+	}
+
+	public static int [] decode(byte [] bs) {
+		int [] result = new int[count(bs)];
+		decode(bs, result, 0);
+		return result;
+	}
+
+	/**
+	 * decodes all values in bs into dest, starting at destPos.
+	 *
+	 * @return values written, see {@link #count}
+	 * @throws IndexOutOfBoundsException if dest is too small
+	 * @throws IllegalArgumentException if bs is corrupt
+	 */
+	public static int decode(byte [] bs, int [] dest, int destPos) {
+		int n = count(bs);
+		ByteBuffer header = header(bs);
+		int chunkSize = header.getInt(Integer.BYTES);
+		int chunks = header.getInt(2 * Integer.BYTES);
+		if (n < 0 || chunkSize < 1 || chunks != (int) ((n + (long) chunkSize - 1) / chunkSize)
+				|| HEADER + (long) chunks * CHUNK_HEADER > bs.length) {
+			throw new IllegalArgumentException(String.format(
+					"corrupt header, %d values in %d chunks of %d", n, chunks, chunkSize));
+		}
+		if (destPos < 0 || destPos > dest.length - n) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), length %d", destPos, destPos + n, dest.length));
+		}
+		int start = HEADER + chunks * CHUNK_HEADER;
+		forEachChunk(chunks, c -> {
+			int base = header.getInt(HEADER + c * CHUNK_HEADER);
+			int offset = c == 0 ? 0 : header.getInt(HEADER + c * CHUNK_HEADER - Integer.BYTES);
+			int count = Math.min(chunkSize, n - c * chunkSize);
+			if (DeltaCompression.packedCount(bs, start + offset) != count) {
+				throw new IllegalArgumentException(String.format(
+						"corrupt chunk %d, expected %d values", c, count));
+			}
+			DeltaCompression.decodePacked(bs, start + offset, base, dest, destPos + c * chunkSize);
+		});
+		return n;
+	}
+
+	private static ByteBuffer header(byte [] bs) {
+		return ByteBuffer.wrap(bs).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void forEachChunk(int chunks, IntConsumer action) {
+		if (chunks == 1 || ForkJoinPool.getCommonPoolParallelism() == 1) {
+			for (int c = 0; c < chunks; ++c) {
+				action.accept(c);
+			}
+		} else {
+			IntStream.range(0, chunks).parallel().forEach(action);
+		}
+	}
+}
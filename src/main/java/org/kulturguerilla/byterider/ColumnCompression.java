@@ -0,0 +1,312 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compresses packed records column by column: the stored bits of every field
+ * become a sequence of their own, which is far more regular than the words
+ * the fields are interleaved in.
+ *
+ * <pre>
+ * byte [] snapshot = ColumnCompression.encode(segments);
+ * ByteRiderArray restored = ColumnCompression.decode(snapshot, br);
+ * </pre>
+ *
+ * Each column is stored either bit packed, at the width of the range of its
+ * values, which is never more than the width of the field, or as variable
+ * size deltas ({@link DeltaCompression.Mode#DELTAS}), whichever is smaller.
+ * Bits of a word not covered by any field are a column of their own, so
+ * records round trip exactly.
+ *
+ * Format:
+ * <pre>
+ * records       variable size integer
+ * words         variable size integer, words per record
+ * columns       variable size integer
+ * columns times:
+ *   width       byte, bits of the field (or of the uncovered bits)
+ *   kind        byte, PACKED or DELTAS
+ *   PACKED:  base as 8 bytes, bits as byte, the values - base, bit packed
+ *            into 8 byte little endian words
+ *   DELTAS:  length as variable size integer, the encoded deltas
+ * </pre>
+ */
+public final class ColumnCompression {
+
+	static final byte PACKED = 0;
+	static final byte DELTAS = 1;
+
+	private ColumnCompression() {
+	}
+
+	/** @return all records, compressed */
+	public static byte [] encode(RecordStorage records) {
+		return encode(records, 0, records.size());
+	}
+
+	/** @return the records in [from, to), compressed */
+	public static byte [] encode(RecordStorage records, int from, int to) {
+		if (from < 0 || from > to || to > records.size()) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), size %d", from, to, records.size()));
+		}
+		ByteRider layout = records.layout();
+		List<Column> columns = columns(layout);
+		int count = to - from;
+		Output out = new Output(3 * DeltaCompression.MAX_BYTES_PER_VALUE);
+		out.pos += DeltaCompression.writeVarint(count, out.bytes, out.pos);
+		out.pos += DeltaCompression.writeVarint(layout.words(), out.bytes, out.pos);
+		out.pos += DeltaCompression.writeVarint(columns.size(), out.bytes, out.pos);
+
+		long [] values = new long[count];
+		for (Column c : columns) {
+			long min = -1L;
+			long max = 0;
+			for (int i = 0; i < count; ++i) {
+				long v = c.read(records, from + i);
+				values[i] = v;
+				min = Long.compareUnsigned(v, min) < 0 ? v : min;
+				max = Long.compareUnsigned(v, max) > 0 ? v : max;
+			}
+			int bits = 64 - Long.numberOfLeadingZeros(max - min);
+			long packedLength = 9 + ((long) count * bits + 63 >>> 6) * Long.BYTES;
+			int deltasLength = DeltaCompression.encodedLength(values, 0, count, DeltaCompression.Mode.DELTAS);
+
+			out.ensure(2);
+			out.bytes[out.pos++] = (byte) c.width;
+			if (packedLength <= deltasLength) {
+				out.ensure(1 + (int) packedLength);
+				out.bytes[out.pos++] = PACKED;
+				ByteBuffer bytes = ByteBuffer.wrap(out.bytes).order(ByteOrder.LITTLE_ENDIAN);
+				bytes.putLong(out.pos, min);
+				out.bytes[out.pos + Long.BYTES] = (byte) bits;
+				out.pos += 9;
+				out.pos += pack(values, count, min, bits, bytes, out.pos);
+			} else {
+				out.ensure(1 + DeltaCompression.MAX_BYTES_PER_VALUE + deltasLength);
+				out.bytes[out.pos++] = DELTAS;
+				out.pos += DeltaCompression.writeVarint(deltasLength, out.bytes, out.pos);
+				out.pos += DeltaCompression.encode(values, 0, count, DeltaCompression.Mode.DELTAS,
+						out.bytes, out.pos);
+			}
+		}
+		return Arrays.copyOf(out.bytes, out.pos);
+	}
+
+	/**
+	 * @return the compressed records, in a new array
+	 * @throws IllegalArgumentException if the records were compressed with a
+	 *   different layout
+	 */
+	public static ByteRiderArray decode(byte [] bs, ByteRider layout) {
+		List<Column> columns = columns(layout);
+		int pos = 0;
+		int count = DeltaCompression.readVarint(bs, pos);
+		pos = DeltaCompression.skipVarint(bs, pos);
+		int words = DeltaCompression.readVarint(bs, pos);
+		pos = DeltaCompression.skipVarint(bs, pos);
+		int columnCount = DeltaCompression.readVarint(bs, pos);
+		pos = DeltaCompression.skipVarint(bs, pos);
+		if (words != layout.words() || columnCount != columns.size()) {
+			throw new IllegalArgumentException(String.format(
+					"layout mismatch, %d words and %d columns, expected %d and %d",
+					words, columnCount, layout.words(), columns.size()));
+		}
+
+		ByteBuffer in = ByteBuffer.wrap(bs).order(ByteOrder.LITTLE_ENDIAN);
+		long [] data = new long[Math.multiplyExact(count, words)];
+		long [] values = new long[count];
+		for (Column c : columns) {
+			int width = bs[pos++] & 0xFF;
+			if (width != c.width) {
+				throw new IllegalArgumentException(String.format(
+						"layout mismatch, column %s has %d bits, expected %d", c, width, c.width));
+			}
+			byte kind = bs[pos++];
+			if (kind == PACKED) {
+				long base = in.getLong(pos);
+				int bits = bs[pos + Long.BYTES];
+				pos += 9;
+				pos += unpack(in, pos, bits, base, values, count);
+			} else if (kind == DELTAS) {
+				int length = DeltaCompression.readVarint(bs, pos);
+				pos = DeltaCompression.skipVarint(bs, pos);
+				DeltaCompression.decode(bs, pos, length, DeltaCompression.Mode.DELTAS, values, 0);
+				pos += length;
+			} else {
+				throw new IllegalArgumentException("unknown column kind " + kind);
+			}
+			for (int i = 0; i < count; ++i) {
+				c.write(data, i * words, values[i]);
+			}
+		}
+		return ByteRiderArray.wrap(layout, data);
+	}
+
+	/**
+	 * the columns of a layout: one per field, then one per word for the bits
+	 * no field covers, if any.
+	 */
+	static List<Column> columns(ByteRider layout) {
+		List<Column> columns = new ArrayList<>();
+		long [] covered = new long[layout.words()];
+		for (BitField f : layout.fields()) {
+			long [] masks = new long[layout.words()];
+			for (int w = 0; w < layout.words(); ++w) {
+				masks[w] = f.mask(w);
+				covered[w] |= masks[w];
+			}
+			columns.add(new Column(f.name(), masks));
+		}
+		for (int w = 0; w < layout.words(); ++w) {
+			if (covered[w] != -1L) {
+				long [] masks = new long[layout.words()];
+				masks[w] = ~covered[w];
+				columns.add(new Column("uncovered bits of word " + w, masks));
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * packs values[0, count) - base at the given width into dest, starting at
+	 * destPos, in whole little endian longs.
+	 *
+	 * @return bytes written
+	 */
+	private static int pack(long [] values, int count, long base, int bits, ByteBuffer dest, int destPos) {
+		if (bits == 0) {
+			return 0;
+		}
+		int pos = destPos;
+		long acc = 0;
+		int fill = 0;
+		for (int i = 0; i < count; ++i) {
+			long v = values[i] - base;
+			acc |= v << fill;
+			fill += bits;
+			if (fill >= 64) {
+				dest.putLong(pos, acc);
+				pos += Long.BYTES;
+				fill -= 64;
+				acc = fill == 0 ? 0 : v >>> (bits - fill);
+			}
+		}
+		if (fill > 0) {
+			dest.putLong(pos, acc);
+			pos += Long.BYTES;
+		}
+		return pos - destPos;
+	}
+
+	/**
+	 * unpacks count values packed by {@link #pack} starting at srcPos.
+	 *
+	 * @return bytes read
+	 */
+	private static int unpack(ByteBuffer src, int srcPos, int bits, long base, long [] values, int count) {
+		if (bits == 0 || count == 0) {
+			Arrays.fill(values, 0, count, base);
+			return 0;
+		}
+		long mask = bits == 64 ? -1L : (1L << bits) - 1;
+		int pos = srcPos;
+		long w = src.getLong(pos);
+		int shift = 0;
+		for (int i = 0; i < count; ++i) {
+			long v = w >>> shift;
+			shift += bits;
+			if (shift > 64) {
+				pos += Long.BYTES;
+				w = src.getLong(pos);
+				shift -= 64;
+				v |= w << (bits - shift);
+			} else if (shift == 64 && i + 1 < count) {
+				pos += Long.BYTES;
+				w = src.getLong(pos);
+				shift = 0;
+			}
+			values[i] = (v & mask) + base;
+		}
+		return (int) (((long) count * bits + 63 >>> 6) * Long.BYTES);
+	}
+
+	/**
+	 * the bits of a field, given by its masks in the words of a record. Its
+	 * values are the masked bits of all words concatenated, those of the first
+	 * word lowest.
+	 */
+	static final class Column {
+		final String name;
+		final int width;
+		private final int [] words;
+		private final long [] masks;
+		private final int [] shifts;
+
+		Column(String name, long [] wordMasks) {
+			this.name = name;
+			int parts = 0;
+			int width = 0;
+			for (long m : wordMasks) {
+				parts += m != 0 ? 1 : 0;
+				width += Long.bitCount(m);
+			}
+			this.width = width;
+			this.words = new int[parts];
+			this.masks = new long[parts];
+			this.shifts = new int[parts];
+			for (int w = 0, p = 0; w < wordMasks.length; ++w) {
+				if (wordMasks[w] != 0) {
+					words[p] = w;
+					masks[p++] = wordMasks[w];
+				}
+			}
+			for (int p = 1; p < parts; ++p) {
+				shifts[p] = shifts[p - 1] + Long.bitCount(masks[p - 1]);
+			}
+		}
+
+		long read(RecordStorage records, int index) {
+			long v = 0;
+			for (int p = 0; p < words.length; ++p) {
+				long m = masks[p];
+				v |= (records.word(index, words[p]) & m) >>> Long.numberOfTrailingZeros(m) << shifts[p];
+			}
+			return v;
+		}
+
+		void write(long [] data, int offset, long v) {
+			for (int p = 0; p < words.length; ++p) {
+				long m = masks[p];
+				data[offset + words[p]] |= v >>> shifts[p] << Long.numberOfTrailingZeros(m) & m;
+			}
+		}
+
+		@Override public String toString() {
+			return name;
+		}
+	}
+
+	/** a growing byte []. */
+	private static final class Output {
+		byte [] bytes;
+		int pos;
+
+		Output(int capacity) {
+			this.bytes = new byte[capacity];
+		}
+
+		void ensure(int more) {
+			if (bytes.length - pos < more) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8,
+						Math.max(2L * bytes.length, (long) pos + more)));
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package org.kulturguerilla.byterider;
+
+import java.util.Arrays;
+
+/**
+ * A read only int array stored as variable size deltas, like
+ * {@link DeltaCompression.Mode#DELTAS}, with a sparse skip index for random
+ * access.
+ *
+ * Every interval values, the index holds the value itself and the offset of
+ * the deltas following it, so reading value i decodes at most interval - 1
+ * deltas, never the whole sequence:
+ *
+ * <pre>
+ * CompressedIntArray xs = CompressedIntArray.of(polyline);
+ * int x = xs.get(100_000);
+ * xs.get(500, dest, 0, 100);
+ * </pre>
+ *
+ * The index costs 8 bytes per interval values; the default interval of 64
+ * keeps that to one bit per value.
+ *
+ * Immutable, and therefore thread safe.
+ */
+public final class CompressedIntArray {
+
+	public static final int DEFAULT_INTERVAL = 64;
+
+	private final int length;
+	private final int interval;
+	/** first value of every interval. */
+	private final int [] bases;
+	/** offset into deltas of the deltas following each base. */
+	private final int [] offsets;
+	/** zigzag encoded deltas, interval - 1 per interval. */
+	private final byte [] deltas;
+
+	private CompressedIntArray(int length, int interval, int [] bases, int [] offsets, byte [] deltas) {
+		this.length = length;
+		this.interval = interval;
+		this.bases = bases;
+		this.offsets = offsets;
+		this.deltas = deltas;
+	}
+
+	/** @return all values, indexed every {@link #DEFAULT_INTERVAL} values */
+	public static CompressedIntArray of(int [] values) {
+		return of(values, 0, values.length, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * @return values[from, to), indexed every interval values
+	 * @throws IllegalArgumentException if interval &lt; 1
+	 */
+	public static CompressedIntArray of(int [] values, int from, int to, int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("interval " + interval + " < 1");
+		}
+		checkRange(from, to - from, values.length);
+		int length = to - from;
+		int intervals = (int) ((length + (long) interval - 1) / interval);
+		int [] bases = new int[intervals];
+		int [] offsets = new int[intervals];
+		byte [] deltas = new byte[DeltaCompression.maxEncodedLength(length - intervals)];
+		int pos = 0;
+		for (int b = 0; b < intervals; ++b) {
+			int start = from + b * interval;
+			int end = Math.min(to, start + interval);
+			bases[b] = values[start];
+			offsets[b] = pos;
+			for (int i = start + 1; i < end; ++i) {
+				pos += DeltaCompression.writeVarint(DeltaCompression.zigzag(values[i] - values[i - 1]),
+						deltas, pos);
+			}
+		}
+		return new CompressedIntArray(length, interval, bases, offsets, Arrays.copyOf(deltas, pos));
+	}
+
+	public int length() { return length; }
+
+	/** values between two entries of the skip index. */
+	public int interval() { return interval; }
+
+	/** bytes used by deltas and skip index. */
+	public long sizeInBytes() {
+		return deltas.length + 8L * bases.length;
+	}
+
+	/**
+	 * decodes at most {@link #interval()} - 1 deltas.
+	 *
+	 * @throws IndexOutOfBoundsException if index isn't in [0, length)
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		int b = index / interval;
+		int value = bases[b];
+		int pos = offsets[b];
+		for (int skip = index - b * interval; skip > 0; --skip) {
+			int tmp = 0;
+			byte v;
+			do {
+				v = deltas[pos++];
+				tmp = (tmp << 7) | (v & 0x7F);
+			} while ((v & 0x80) != 0);
+			value += DeltaCompression.unzigzag(tmp);
+		}
+		return value;
+	}
+
+	/**
+	 * reads count values starting at from into dest. Only the deltas in front
+	 * of from inside its interval are decoded in addition.
+	 *
+	 * @return count
+	 */
+	public int get(int from, int [] dest, int destPos, int count) {
+		checkRange(from, count, length);
+		checkRange(destPos, count, dest.length);
+		if (count == 0) {
+			return 0;
+		}
+		int to = from + count;
+		int b = from / interval;
+		int i = b * interval;
+		int pos = offsets[b];
+		int value = bases[b];
+		for (;;) {
+			if (i >= from) {
+				dest[destPos++] = value;
+			}
+			if (++i == to) {
+				break;
+			}
+			if (i % interval == 0) {
+				value = bases[i / interval];
+				pos = offsets[i / interval];
+				continue;
+			}
+			int tmp = 0;
+			byte v;
+			do {
+				v = deltas[pos++];
+				tmp = (tmp << 7) | (v & 0x7F);
+			} while ((v & 0x80) != 0);
+			value += DeltaCompression.unzigzag(tmp);
+		}
+		return count;
+	}
+
+	/** @return the values in [from, to) */
+	public int [] decodeRange(int from, int to) {
+		checkRange(from, to - from, length);
+		int [] values = new int[to - from];
+		get(from, values, 0, values.length);
+		return values;
+	}
+
+	/** @return all values */
+	public int [] toArray() {
+		return decodeRange(0, length);
+	}
+
+	private static void checkRange(int from, int count, int length) {
+		if (from < 0 || count < 0 || from > length - count) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), length %d", from, from + count, length));
+		}
+	}
+}
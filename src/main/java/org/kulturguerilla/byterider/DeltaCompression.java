@@ -1,74 +1,688 @@
 package org.kulturguerilla.byterider;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 /**
  * tooling to encode / decode sequences (arrays) of integers as a byte [].
  *
  * The encoding consists of two steps:
- * - delta compression
+ * - delta compression, depending on the {@link Mode}
  * - store individual entries as variable size integers
  *
  * This is useful and efficient for situations where long sequences of values
  * with little variation (or slowly changing) have to be stored efficiently.
+ *
+ * long [] are encoded the same way, except that values are always zigzag
+ * encoded, so {@link Mode#VALUES} supports the whole long range.
+ *
+ * The packed format ({@link #encodePacked}) takes deltas as well, but stores
+ * them in blocks of {@link #BLOCK_SIZE} values, each bit packed at the width
+ * its range of deltas requires. It is smaller for slowly changing sequences
+ * and decodes whole blocks without looking at individual bytes.
+ *
+ * Besides the allocating encode / decode, there are variants working on
+ * caller supplied arrays and buffers, and a {@link Decoder} reading one value
+ * at a time, so that streaming code doesn't allocate per call.
  */
 public class DeltaCompression {
 
+	/** most bytes a single value takes. */
+	public static final int MAX_BYTES_PER_VALUE = 5;
+
+	/** most bytes a single long value takes. */
+	public static final int MAX_BYTES_PER_LONG = 10;
+
+	/** values per block of the packed format. */
+	public static final int BLOCK_SIZE = 2 * BitPacking.BLOCK;
+
+	/** What is stored per value as a variable size integer. */
+	public enum Mode {
+		/** the values themselves, |v| has to be &lt; 2^30. */
+		VALUES,
+		/** the difference to the previous value, for slowly changing sequences. */
+		DELTAS,
+		/**
+		 * the difference to the previous delta, for sequences changing at a
+		 * nearly constant rate, like timestamps.
+		 */
+		DELTAS_OF_DELTAS
+	}
+
 	public static byte [] encode (int [] is) {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(is.length * 4);
-		for (int v : is) {
-			int normalized = v < 0 ? (-v << 1) | 0x1 : v << 1;
-			int size = Math.max(1, (38 - Integer.numberOfLeadingZeros(normalized)) / 7);
-			for(int x = 1; x <= size; ++x) {
-				if (x == size) {
-					baos.write((byte) ((normalized >> (((size - x) * 7))) & 0x7F));
-				} else {
-					baos.write((byte) (normalized >> (((size - x) * 7) & 0x7F) | 0x80));
-				}
-			}
-		}
-		return baos.toByteArray();
+		return encode(is, Mode.VALUES);
+	}
+
+	public static byte [] encode(int [] is, Mode mode) {
+		byte [] buffer = new byte[maxEncodedLength(is.length)];
+		int length = encode(is, 0, is.length, mode, buffer, 0);
+		return Arrays.copyOf(buffer, length);
 	}
 
 	public static int [] decode(byte [] bs) {
+		return decode(bs, Mode.VALUES);
+	}
+
+	public static int [] decode(byte [] bs, Mode mode) {
 		int numInts = 0;
 		for (byte b: bs) {
 			numInts += ((b & 0x80) == 0) ? 1 : 0;
 		}
-		int idx = 0;
 		int [] result = new int[numInts];
-		for(int i = 0; i < numInts; ++i) {
+		decode(bs, 0, bs.length, mode, result, 0);
+		return result;
+	}
+
+	/** @return bytes needed at most to encode count values */
+	public static int maxEncodedLength(int count) {
+		return Math.multiplyExact(count, MAX_BYTES_PER_VALUE);
+	}
+
+	/** @return bytes v is encoded in */
+	public static int encodedLength(int v) {
+		return Math.max(1, (38 - Integer.numberOfLeadingZeros(normalize(v))) / 7);
+	}
+
+	/**
+	 * encodes src[srcPos, srcPos + count) into dest, starting at destPos.
+	 *
+	 * @return bytes written
+	 * @throws IndexOutOfBoundsException if dest is too small; use
+	 *   {@link #maxEncodedLength} to size it
+	 */
+	public static int encode(int [] src, int srcPos, int count, byte [] dest, int destPos) {
+		return encode(src, srcPos, count, Mode.VALUES, dest, destPos);
+	}
+
+	/**
+	 * encodes src[srcPos, srcPos + count) in the given mode into dest,
+	 * starting at destPos. Deltas start from 0, so the sequence can be decoded
+	 * on its own.
+	 *
+	 * @return bytes written
+	 * @throws IndexOutOfBoundsException if dest is too small; use
+	 *   {@link #maxEncodedLength} to size it
+	 */
+	public static int encode(int [] src, int srcPos, int count, Mode mode, byte [] dest, int destPos) {
+		checkRange(srcPos, count, src.length);
+		int pos = destPos;
+		int prev = 0;
+		int prevDelta = 0;
+		for (int i = srcPos, end = srcPos + count; i < end; ++i) {
+			int v = src[i];
+			if (mode == Mode.VALUES) {
+				pos += writeVarint(normalize(v), dest, pos);
+				continue;
+			}
+			int delta = v - prev;
+			prev = v;
+			if (mode == Mode.DELTAS_OF_DELTAS) {
+				int deltaOfDelta = delta - prevDelta;
+				prevDelta = delta;
+				delta = deltaOfDelta;
+			}
+			pos += writeVarint(zigzag(delta), dest, pos);
+		}
+		return pos - destPos;
+	}
+
+	/**
+	 * encodes src[srcPos, srcPos + count) at the position of dest, advancing it.
+	 *
+	 * @return bytes written
+	 * @throws BufferOverflowException if dest has too little room left, dest
+	 *   is unchanged then
+	 */
+	public static int encode(int [] src, int srcPos, int count, ByteBuffer dest) {
+		checkRange(srcPos, count, src.length);
+		if (dest.remaining() < maxEncodedLength(count) && dest.remaining() < encodedLength(src, srcPos, count)) {
+			throw new BufferOverflowException();
+		}
+		int start = dest.position();
+		if (dest.hasArray()) {
+			int written = encode(src, srcPos, count, dest.array(), dest.arrayOffset() + start);
+			dest.position(start + written);
+			return written;
+		}
+		for (int i = srcPos, end = srcPos + count; i < end; ++i) {
+			int normalized = normalize(src[i]);
+			for (int shift = (encodedLength(src[i]) - 1) * 7; shift > 0; shift -= 7) {
+				dest.put((byte) (normalized >>> shift | 0x80));
+			}
+			dest.put((byte) (normalized & 0x7F));
+		}
+		return dest.position() - start;
+	}
+
+	/**
+	 * decodes all values in src[srcPos, srcPos + length) into dest, starting
+	 * at destPos.
+	 *
+	 * @return values written
+	 * @throws IndexOutOfBoundsException if dest is too small
+	 * @throws IllegalArgumentException if the last value is cut off
+	 */
+	public static int decode(byte [] src, int srcPos, int length, int [] dest, int destPos) {
+		return decode(src, srcPos, length, Mode.VALUES, dest, destPos);
+	}
+
+	/**
+	 * decodes all values in src[srcPos, srcPos + length), encoded in the given
+	 * mode, into dest, starting at destPos.
+	 *
+	 * @return values written
+	 * @throws IndexOutOfBoundsException if dest is too small
+	 * @throws IllegalArgumentException if the last value is cut off
+	 */
+	public static int decode(byte [] src, int srcPos, int length, Mode mode, int [] dest, int destPos) {
+		checkRange(srcPos, length, src.length);
+		int idx = srcPos;
+		int end = srcPos + length;
+		int i = destPos;
+		while (idx < end) {
 			int tmp = 0;
-			while (true) {
-				tmp = (tmp << 7) | (bs[idx] & 0x7F);
-				if ((bs[idx++] & 0x80) == 0) {
-					result[i] = (tmp & 0x1) == 1 ? -(tmp >> 1) : tmp >> 1;;
-					break;
+			byte b;
+			do {
+				if (idx == end) {
+					throw new IllegalArgumentException("truncated value at offset " + idx);
 				}
+				b = src[idx++];
+				tmp = (tmp << 7) | (b & 0x7F);
+			} while ((b & 0x80) != 0);
+			dest[i++] = mode == Mode.VALUES ? denormalize(tmp) : unzigzag(tmp);
+		}
+		switch (mode) {
+		case DELTAS_OF_DELTAS:
+			// the first sums are the deltas
+			prefixSum(dest, destPos, i, 0);
+			prefixSum(dest, destPos, i, 0);
+			break;
+		case DELTAS:
+			prefixSum(dest, destPos, i, 0);
+			break;
+		default:
+		}
+		return i - destPos;
+	}
+
+	/**
+	 * decodes up to count values from the remaining bytes of src into dest,
+	 * starting at destPos. src is advanced past the decoded values; a value cut
+	 * off at the limit is left in place, so src can be compacted and refilled.
+	 *
+	 * @return values written
+	 */
+	public static int decode(ByteBuffer src, int [] dest, int destPos, int count) {
+		checkRange(destPos, count, dest.length);
+		int pos = src.position();
+		int limit = src.limit();
+		int i = destPos;
+		int end = destPos + count;
+		outer:
+		while (i < end && pos < limit) {
+			int tmp = 0;
+			int p = pos;
+			byte b;
+			do {
+				if (p == limit) {
+					break outer;
+				}
+				b = src.get(p++);
+				tmp = (tmp << 7) | (b & 0x7F);
+			} while ((b & 0x80) != 0);
+			dest[i++] = denormalize(tmp);
+			pos = p;
+		}
+		src.position(pos);
+		return i - destPos;
+	}
+
+	public static byte [] encode(long [] ls, Mode mode) {
+		byte [] buffer = new byte[maxEncodedLongLength(ls.length)];
+		int length = encode(ls, 0, ls.length, mode, buffer, 0);
+		return Arrays.copyOf(buffer, length);
+	}
+
+	public static long [] decodeLongs(byte [] bs, Mode mode) {
+		int numLongs = 0;
+		for (byte b: bs) {
+			numLongs += ((b & 0x80) == 0) ? 1 : 0;
+		}
+		long [] result = new long[numLongs];
+		decode(bs, 0, bs.length, mode, result, 0);
+		return result;
+	}
+
+	/** @return bytes needed at most to encode count long values */
+	public static int maxEncodedLongLength(int count) {
+		return Math.multiplyExact(count, MAX_BYTES_PER_LONG);
+	}
+
+	/**
+	 * encodes src[srcPos, srcPos + count) in the given mode into dest,
+	 * starting at destPos.
+	 *
+	 * @return bytes written
+	 * @throws IndexOutOfBoundsException if dest is too small; use
+	 *   {@link #maxEncodedLongLength} to size it
+	 */
+	public static int encode(long [] src, int srcPos, int count, Mode mode, byte [] dest, int destPos) {
+		checkRange(srcPos, count, src.length);
+		int pos = destPos;
+		long prev = 0;
+		long prevDelta = 0;
+		for (int i = srcPos, end = srcPos + count; i < end; ++i) {
+			long v = src[i];
+			if (mode != Mode.VALUES) {
+				long delta = v - prev;
+				prev = v;
+				if (mode == Mode.DELTAS_OF_DELTAS) {
+					long deltaOfDelta = delta - prevDelta;
+					prevDelta = delta;
+					delta = deltaOfDelta;
+				}
+				v = delta;
 			}
+			pos += writeVarint(zigzag(v), dest, pos);
 		}
+		return pos - destPos;
+	}
+
+	/**
+	 * decodes all long values in src[srcPos, srcPos + length), encoded in the
+	 * given mode, into dest, starting at destPos.
+	 *
+	 * @return values written
+	 * @throws IndexOutOfBoundsException if dest is too small
+	 * @throws IllegalArgumentException if the last value is cut off
+	 */
+	public static int decode(byte [] src, int srcPos, int length, Mode mode, long [] dest, int destPos) {
+		checkRange(srcPos, length, src.length);
+		int idx = srcPos;
+		int end = srcPos + length;
+		int i = destPos;
+		long prev = 0;
+		long prevDelta = 0;
+		while (idx < end) {
+			long tmp = 0;
+			byte b;
+			do {
+				if (idx == end) {
+					throw new IllegalArgumentException("truncated value at offset " + idx);
+				}
+				b = src[idx++];
+				tmp = (tmp << 7) | (b & 0x7F);
+			} while ((b & 0x80) != 0);
+			long v = unzigzag(tmp);
+			switch (mode) {
+			case DELTAS_OF_DELTAS:
+				prevDelta += v;
+				prev += prevDelta;
+				v = prev;
+				break;
+			case DELTAS:
+				prev += v;
+				v = prev;
+				break;
+			default:
+			}
+			dest[i++] = v;
+		}
+		return i - destPos;
+	}
+
+	/** @return bytes src[srcPos, srcPos + count) are encoded in */
+	static int encodedLength(long [] src, int srcPos, int count, Mode mode) {
+		int length = 0;
+		long prev = 0;
+		long prevDelta = 0;
+		for (int i = srcPos, end = srcPos + count; i < end; ++i) {
+			long v = src[i];
+			if (mode != Mode.VALUES) {
+				long delta = v - prev;
+				prev = v;
+				if (mode == Mode.DELTAS_OF_DELTAS) {
+					long deltaOfDelta = delta - prevDelta;
+					prevDelta = delta;
+					delta = deltaOfDelta;
+				}
+				v = delta;
+			}
+			length += Math.max(1, (70 - Long.numberOfLeadingZeros(zigzag(v))) / 7);
+		}
+		return length;
+	}
+
+	/** @return bytes needed at most to encode count values in the packed format */
+	public static int maxPackedLength(int count) {
+		return Math.addExact(maxEncodedLength(count), MAX_BYTES_PER_VALUE);
+	}
+
+	public static byte [] encodePacked(int [] is) {
+		byte [] buffer = new byte[maxPackedLength(is.length)];
+		int length = encodePacked(is, 0, is.length, buffer, 0);
+		return Arrays.copyOf(buffer, length);
+	}
+
+	public static int [] decodePacked(byte [] bs) {
+		int [] result = new int[packedCount(bs, 0)];
+		decodePacked(bs, 0, result, 0);
 		return result;
 	}
 
-	public static byte [] encodeInt(int v) {
-		int normalized = v < 0? (-v << 1) | 0x1 : v << 1;
-		int size       = Math.max(1, (38 - Integer.numberOfLeadingZeros(normalized))/7);
-		byte [] result = new byte[size];
-		for(int x = 0; x < size; ++x) {
-			result[x] = (byte) (normalized >> (((size-x-1)*7) & 0x7F) | 0x80);
+	/**
+	 * encodes src[srcPos, srcPos + count) in the packed format into dest,
+	 * starting at destPos:
+	 *
+	 * - the count, as variable size integer
+	 * - per whole block of {@link #BLOCK_SIZE} values the smallest delta of the
+	 *   block, as variable size integer, the bit width w of delta - smallest
+	 *   delta as a single byte, and the block's deltas in 16 * w bytes
+	 * - the deltas of the remaining values, as variable size integers
+	 *
+	 * Deltas are taken across blocks, starting from 0.
+	 *
+	 * @return bytes written
+	 * @throws IndexOutOfBoundsException if dest is too small; use
+	 *   {@link #maxPackedLength} to size it
+	 */
+	public static int encodePacked(int [] src, int srcPos, int count, byte [] dest, int destPos) {
+		return encodePacked(src, srcPos, count, 0, dest, destPos);
+	}
+
+	/** same as {@link #encodePacked(int[], int, int, byte[], int)}, with deltas starting from base. */
+	static int encodePacked(int [] src, int srcPos, int count, int base, byte [] dest, int destPos) {
+		checkRange(srcPos, count, src.length);
+		int pos = destPos + writeVarint(count, dest, destPos);
+		int [] deltas = new int[BLOCK_SIZE];
+		long [] words = new long[BLOCK_SIZE / 2];
+		ByteBuffer out = ByteBuffer.wrap(dest).order(ByteOrder.LITTLE_ENDIAN);
+		int prev = base;
+		int i = srcPos;
+		for (int end = srcPos + count - BLOCK_SIZE; i <= end; i += BLOCK_SIZE) {
+			int min = Integer.MAX_VALUE;
+			for (int j = 0; j < BLOCK_SIZE; ++j) {
+				int v = src[i + j];
+				deltas[j] = v - prev;
+				prev = v;
+				min = Math.min(min, deltas[j]);
+			}
+			int bits = 0;
+			for (int j = 0; j < BLOCK_SIZE; ++j) {
+				bits |= deltas[j] - min;
+			}
+			bits = 32 - Integer.numberOfLeadingZeros(bits);
+			pos += writeVarint(zigzag(min), dest, pos);
+			dest[pos++] = (byte) bits;
+			BitPacking.pack(deltas, 0, min, bits, words, 0);
+			BitPacking.pack(deltas, BitPacking.BLOCK, min, bits, words, bits);
+			for (int w = 0; w < 2 * bits; ++w, pos += Long.BYTES) {
+				out.putLong(pos, words[w]);
+			}
 		}
-		result[size-1] &= 0x7F;
+		for (int end = srcPos + count; i < end; ++i) {
+			pos += writeVarint(zigzag(src[i] - prev), dest, pos);
+			prev = src[i];
+		}
+		return pos - destPos;
+	}
+
+	/** @return the number of values encoded in the packed format starting at src[srcPos] */
+	public static int packedCount(byte [] src, int srcPos) {
+		return readVarint(src, srcPos);
+	}
+
+	/**
+	 * decodes the values encoded in the packed format starting at
+	 * src[srcPos] into dest, starting at destPos.
+	 *
+	 * @return values written, see {@link #packedCount}
+	 * @throws IndexOutOfBoundsException if dest is too small, or src is cut off
+	 */
+	public static int decodePacked(byte [] src, int srcPos, int [] dest, int destPos) {
+		return decodePacked(src, srcPos, 0, dest, destPos);
+	}
+
+	/** same as {@link #decodePacked(byte[], int, int[], int)}, with deltas starting from base. */
+	static int decodePacked(byte [] src, int srcPos, int base, int [] dest, int destPos) {
+		int count = packedCount(src, srcPos);
+		checkRange(destPos, count, dest.length);
+		int pos = skipVarint(src, srcPos);
+		long [] words = new long[BLOCK_SIZE / 2];
+		ByteBuffer in = ByteBuffer.wrap(src).order(ByteOrder.LITTLE_ENDIAN);
+		int prev = base;
+		int i = destPos;
+		for (int end = destPos + count - BLOCK_SIZE; i <= end; i += BLOCK_SIZE) {
+			int min = unzigzag(readVarint(src, pos));
+			pos = skipVarint(src, pos);
+			int bits = src[pos++];
+			for (int w = 0; w < 2 * bits; ++w, pos += Long.BYTES) {
+				words[w] = in.getLong(pos);
+			}
+			BitPacking.unpack(words, 0, bits, min, dest, i);
+			BitPacking.unpack(words, bits, bits, min, dest, i + BitPacking.BLOCK);
+			prev = prefixSum(dest, i, i + BLOCK_SIZE, prev);
+		}
+		for (int end = destPos + count; i < end; ++i) {
+			prev += unzigzag(readVarint(src, pos));
+			dest[i] = prev;
+			pos = skipVarint(src, pos);
+		}
+		return count;
+	}
+
+	public static byte [] encodeInt(int v) {
+		byte [] result = new byte[encodedLength(v)];
+		encodeInt(v, result, 0);
 		return result;
 	}
 
+	/**
+	 * encodes v into dest, starting at destPos.
+	 *
+	 * @return bytes written, at most {@link #MAX_BYTES_PER_VALUE}
+	 */
+	public static int encodeInt(int v, byte [] dest, int destPos) {
+		return writeVarint(normalize(v), dest, destPos);
+	}
+
 	public static int decodeInt(byte [] bs) {
+		return decodeInt(bs, 0);
+	}
+
+	/** decodes the value starting at bs[pos]. */
+	public static int decodeInt(byte [] bs, int pos) {
+		return denormalize(readVarint(bs, pos));
+	}
+
+	/** @return the variable size integer starting at bs[pos], as is */
+	static int readVarint(byte [] bs, int pos) {
 		int result = 0;
-		for(int i = 0; i < bs.length; ++i) {
+		for(int i = pos; i < bs.length; ++i) {
 			result = (result << 7) | (bs[i] & 0x7F);
 			if((bs[i] & 0x80) == 0) break;
 		}
-		return (result & 0x1) == 1
-				? -(result >> 1)
-				: result >> 1;
+		return result;
+	}
+
+	/** @return a decoder over all of bs */
+	public static Decoder decoder(byte [] bs) {
+		return new Decoder().reset(bs, 0, bs.length);
+	}
+
+	/** @return a decoder over all of bs, encoded in the given mode */
+	public static Decoder decoder(byte [] bs, Mode mode) {
+		return new Decoder().reset(bs, 0, bs.length, mode);
+	}
+
+	/**
+	 * Lazily decodes values one at a time, without allocating. A single
+	 * instance can be {@link #reset} to new input and reused.
+	 */
+	public static final class Decoder implements PrimitiveIterator.OfInt {
+
+		private byte [] bs = new byte[0];
+		private int pos;
+		private int end;
+		private Mode mode = Mode.VALUES;
+		private int prev;
+		private int prevDelta;
+
+		/**
+		 * starts decoding bs[from, from + length).
+		 *
+		 * @return this
+		 */
+		public Decoder reset(byte [] bs, int from, int length) {
+			return reset(bs, from, length, Mode.VALUES);
+		}
+
+		/**
+		 * starts decoding bs[from, from + length), encoded in the given mode.
+		 *
+		 * @return this
+		 */
+		public Decoder reset(byte [] bs, int from, int length, Mode mode) {
+			checkRange(from, length, bs.length);
+			this.bs = bs;
+			this.pos = from;
+			this.end = from + length;
+			this.mode = mode;
+			this.prev = 0;
+			this.prevDelta = 0;
+			return this;
+		}
+
+		@Override public boolean hasNext() {
+			return pos < end;
+		}
+
+		/**
+		 * @throws NoSuchElementException if there are no values left
+		 * @throws IllegalArgumentException if the value is cut off
+		 */
+		@Override public int nextInt() {
+			if (pos >= end) {
+				throw new NoSuchElementException();
+			}
+			int tmp = 0;
+			byte b;
+			do {
+				if (pos == end) {
+					throw new IllegalArgumentException("truncated value at offset " + pos);
+				}
+				b = bs[pos++];
+				tmp = (tmp << 7) | (b & 0x7F);
+			} while ((b & 0x80) != 0);
+			switch (mode) {
+			case DELTAS:
+				prev += unzigzag(tmp);
+				return prev;
+			case DELTAS_OF_DELTAS:
+				prevDelta += unzigzag(tmp);
+				prev += prevDelta;
+				return prev;
+			default:
+				return denormalize(tmp);
+			}
+		}
+
+		/** offset of the next value's first byte. */
+		public int position() {
+			return pos;
+		}
+	}
+
+	private static int encodedLength(int [] src, int srcPos, int count) {
+		int length = 0;
+		for (int i = srcPos, end = srcPos + count; i < end; ++i) {
+			length += encodedLength(src[i]);
+		}
+		return length;
+	}
+
+	/**
+	 * writes n as variable size integer, most significant group of 7 bits
+	 * first, all but the last byte with the high bit set.
+	 *
+	 * @return bytes written
+	 */
+	static int writeVarint(int n, byte [] dest, int destPos) {
+		int size = Math.max(1, (38 - Integer.numberOfLeadingZeros(n)) / 7);
+		int last = destPos + size - 1;
+		for (int shift = (size - 1) * 7, x = destPos; x < last; ++x, shift -= 7) {
+			dest[x] = (byte) (n >>> shift | 0x80);
+		}
+		dest[last] = (byte) (n & 0x7F);
+		return size;
+	}
+
+	/** {@link #writeVarint(int, byte[], int)} for longs. */
+	private static int writeVarint(long n, byte [] dest, int destPos) {
+		int size = Math.max(1, (70 - Long.numberOfLeadingZeros(n)) / 7);
+		int last = destPos + size - 1;
+		for (int shift = (size - 1) * 7, x = destPos; x < last; ++x, shift -= 7) {
+			dest[x] = (byte) (n >>> shift | 0x80);
+		}
+		dest[last] = (byte) (n & 0x7F);
+		return size;
+	}
+
+	/** @return the position after the variable size integer starting at bs[pos] */
+	static int skipVarint(byte [] bs, int pos) {
+		while ((bs[pos] & 0x80) != 0) {
+			++pos;
+		}
+		return pos + 1;
+	}
+
+	/**
+	 * replaces a[from, to) by its running sums, starting from base.
+	 *
+	 * @return the last sum, base if the range is empty
+	 */
+	private static int prefixSum(int [] a, int from, int to, int base) {
+		int sum = base;
+		for (int i = from; i < to; ++i) {
+			sum += a[i];
+			a[i] = sum;
+		}
+		return sum;
+	}
+
+	/** maps signed deltas to unsigned ones, small magnitudes to small values. */
+	static int zigzag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	static int unzigzag(int n) {
+		return (n >>> 1) ^ -(n & 0x1);
+	}
+
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private static long unzigzag(long n) {
+		return (n >>> 1) ^ -(n & 0x1);
+	}
+
+	private static int normalize(int v) {
+		return v < 0 ? (-v << 1) | 0x1 : v << 1;
+	}
+
+	private static int denormalize(int n) {
+		return (n & 0x1) == 1 ? -(n >> 1) : n >> 1;
+	}
+
+	private static void checkRange(int from, int count, int length) {
+		if (from < 0 || count < 0 || from > length - count) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), length %d", from, from + count, length));
+		}
 	}
 }
@@ -0,0 +1,323 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Plans the packing of a set of fields, instead of placing them in
+ * declaration order like {@link ByteRider}.
+ *
+ * Fields are declared first, optionally with hints, and placed all at once by
+ * {@link #plan()}:
+ *
+ * <pre>
+ * LayoutPlanner planner = new LayoutPlanner();
+ * Declaration&lt;IntField&gt; speed = planner.addInt(250, "speed").hotness(10);
+ * Declaration&lt;BoolField&gt; oneWay = planner.addBool("one way").group("routing");
+ * ...
+ * Plan plan = planner.plan();
+ * IntField speedField = speed.field();
+ * </pre>
+ *
+ * The plan uses the smallest {@link Size} that holds all fields, or the
+ * smallest number of words when they need more than 64 bits. In the latter
+ * case no field straddles two words, fields of the same group share a word
+ * (as long as the group fits into 64 bits), and hotter fields go first, into
+ * the lowest words.
+ */
+public final class LayoutPlanner {
+
+	private final List<Declaration<?>> declarations = new ArrayList<>();
+
+	public Declaration<BoolField> addBool(String name) {
+		return declare(name, offset -> createBoolField(offset, name));
+	}
+
+	public Declaration<IntField> addInt(int maxValue, String name) {
+		return addInt(0, maxValue, name);
+	}
+
+	public Declaration<IntField> addInt(int minValue, int maxValue, String name) {
+		return declare(name, offset -> createIntField(offset, minValue, maxValue, name));
+	}
+
+	public Declaration<LongField> addLong(long maxValue, String name) {
+		return addLong(0, maxValue, name);
+	}
+
+	public Declaration<LongField> addLong(long minValue, long maxValue, String name) {
+		return declare(name, offset -> createLongField(offset, minValue, maxValue, name));
+	}
+
+	/** see {@link ByteRider#addIntMappedObj(int, ToIntFunction, IntFunction, String)}. */
+	public <T> Declaration<IntMappedObjField<T>> addIntMappedObj(int cardinality,
+			ToIntFunction<T> fromObject, IntFunction<T> toObject, String name)
+	{
+		return declare(name, offset -> createObjField(offset, cardinality, fromObject,
+				toObject, name));
+	}
+
+	/** see {@link ByteRider#addEnum(Class, String)}. */
+	public <T extends Enum<T>> Declaration<IntMappedObjField<T>> addEnum(
+			Class<T> enumClass, String name)
+	{
+		return declare(name, offset -> createEnumField(offset, enumClass, name));
+	}
+
+	/** see {@link ByteRider#addNullableInt(int, int, String)}. */
+	public Declaration<IntegerField> addNullableInt(int minValue, int maxValue, String name) {
+		return declare(name, offset -> createNullableIntField(offset, minValue, maxValue, name));
+	}
+
+	/** see {@link ByteRider#addNullableLong(long, long, String)}. */
+	public Declaration<NullableLongField> addNullableLong(long minValue, long maxValue,
+			String name)
+	{
+		return declare(name, offset -> createNullableLongField(offset, minValue, maxValue, name));
+	}
+
+	/** see {@link ByteRider#addNullableEnum(Class, String)}. */
+	public <T extends Enum<T>> Declaration<NullableEnumField<T>> addNullableEnum(
+			Class<T> enumClass, String name)
+	{
+		return declare(name, offset -> createNullableEnumField(offset, enumClass, name));
+	}
+
+	private <F extends BitField> Declaration<F> declare(String name, IntFunction<F> factory) {
+		Declaration<F> d = new Declaration<>(name, factory, declarations.size());
+		declarations.add(d);
+		return d;
+	}
+
+	/**
+	 * places all declared fields and creates the layout. Afterwards
+	 * {@link Declaration#field()} returns the fields of this plan.
+	 *
+	 * @return the plan, with the new layout and its utilization
+	 */
+	public Plan plan() {
+		List<List<Declaration<?>>> units = units();
+		int total = 0;
+		for (Declaration<?> d : declarations) {
+			total += d.bits;
+		}
+
+		for (Size size : Size.values()) {
+			if (total <= size.size) {
+				int offset = 0;
+				for (List<Declaration<?>> unit : units) {
+					for (Declaration<?> d : unit) {
+						d.offset = offset;
+						offset += d.bits;
+					}
+				}
+				return build(new ByteRider(size), size, 1, total);
+			}
+		}
+
+		for (int words = (total + 63) >>> 6; ; ++words) {
+			if (pack(units, words)) {
+				return build(new ByteRider(words), null, words, total);
+			}
+		}
+	}
+
+	/**
+	 * fields grouped by hint (ungrouped fields on their own), hottest first,
+	 * then widest first, otherwise in declaration order.
+	 */
+	private List<List<Declaration<?>>> units() {
+		Comparator<Declaration<?>> hottest = Comparator.comparingInt(d -> -d.hotness);
+		Map<Object, List<Declaration<?>>> groups = new LinkedHashMap<>();
+		for (Declaration<?> d : declarations) {
+			Object key = d.group != null ? d.group : d;
+			groups.computeIfAbsent(key, k -> new ArrayList<>()).add(d);
+		}
+		List<List<Declaration<?>>> units = new ArrayList<>(groups.values());
+		for (List<Declaration<?>> unit : units) {
+			unit.sort(hottest.thenComparingInt(d -> d.index));
+		}
+		units.sort(Comparator.<List<Declaration<?>>>comparingInt(u -> -u.get(0).hotness)
+				.thenComparingInt(u -> -width(u)));
+		return units;
+	}
+
+	/** first fit of every unit into words, whole units where they fit into a word. */
+	private static boolean pack(List<List<Declaration<?>>> units, int words) {
+		int [] used = new int[words];
+		for (List<Declaration<?>> unit : units) {
+			int width = width(unit);
+			int w = width <= 64 ? firstFit(used, width) : -1;
+			if (w >= 0) {
+				for (Declaration<?> d : unit) {
+					d.offset = w * 64 + used[w];
+					used[w] += d.bits;
+				}
+				continue;
+			}
+			for (Declaration<?> d : unit) {
+				w = firstFit(used, d.bits);
+				if (w < 0) {
+					return false;
+				}
+				d.offset = w * 64 + used[w];
+				used[w] += d.bits;
+			}
+		}
+		return true;
+	}
+
+	private static int firstFit(int [] used, int bits) {
+		for (int w = 0; w < used.length; ++w) {
+			if (used[w] + bits <= 64) {
+				return w;
+			}
+		}
+		return -1;
+	}
+
+	private static int width(List<Declaration<?>> unit) {
+		int width = 0;
+		for (Declaration<?> d : unit) {
+			width += d.bits;
+		}
+		return width;
+	}
+
+	private Plan build(ByteRider layout, Size size, int words, int usedBits) {
+		List<Declaration<?>> placed = new ArrayList<>(declarations);
+		placed.sort(Comparator.comparingInt(d -> d.offset));
+		for (Declaration<?> d : placed) {
+			d.place(layout);
+		}
+		layout.checkFields();
+		return new Plan(layout, size, words, usedBits, placed);
+	}
+
+	/**
+	 * a field declared to the planner, with its hints. The field itself exists
+	 * once the planner has placed it.
+	 */
+	public static final class Declaration<F extends BitField> {
+		private final String name;
+		private final IntFunction<F> factory;
+		private final int index;
+		private final int bits;
+
+		private int hotness;
+		private String group;
+		private int offset;
+		private F field;
+
+		Declaration(String name, IntFunction<F> factory, int index) {
+			this.name = name;
+			this.factory = factory;
+			this.index = index;
+			// validates the field's range, too
+			this.bits = factory.apply(0).highestBit() + 1;
+		}
+
+		/**
+		 * how often the field is accessed, relative to the others. Hotter fields
+		 * are placed first. Defaults to 0.
+		 */
+		public Declaration<F> hotness(int hotness) {
+			this.hotness = hotness;
+			return this;
+		}
+
+		/**
+		 * fields accessed together: all fields of a group are kept in the same
+		 * word, if they fit into 64 bits.
+		 */
+		public Declaration<F> group(String group) {
+			this.group = group;
+			return this;
+		}
+
+		public String name() { return name; }
+
+		/** number of bits the field occupies. */
+		public int bits() { return bits; }
+
+		/**
+		 * @return the field of the latest plan
+		 * @throws IllegalStateException if nothing was planned yet
+		 */
+		public F field() {
+			if (field == null) {
+				throw new IllegalStateException("field " + name + " isn't planned yet");
+			}
+			return field;
+		}
+
+		private void place(ByteRider layout) {
+			field = layout.place(factory.apply(offset));
+		}
+	}
+
+	/**
+	 * the outcome of {@link LayoutPlanner#plan()}: the layout and how well the
+	 * fields fill it.
+	 */
+	public static final class Plan {
+		private final ByteRider layout;
+		private final Size size;
+		private final int words;
+		private final int usedBits;
+		private final List<Declaration<?>> placed;
+
+		Plan(ByteRider layout, Size size, int words, int usedBits, List<Declaration<?>> placed) {
+			this.layout = layout;
+			this.size = size;
+			this.words = words;
+			this.usedBits = usedBits;
+			this.placed = placed;
+		}
+
+		public ByteRider layout() { return layout; }
+
+		/** the size of a single word layout, null if the layout spans several words. */
+		public Size size() { return size; }
+
+		public int words() { return words; }
+
+		/** bits covered by fields. */
+		public int usedBits() { return usedBits; }
+
+		/** bits available in the layout. */
+		public int availableBits() {
+			return size != null ? size.size : words * 64;
+		}
+
+		/** used bits / available bits, in [0, 1]. */
+		public double utilization() {
+			return (double) usedBits / availableBits();
+		}
+
+		/** @return a human readable description of the placement of every field */
+		public String report() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%s, %d of %d bits used (%.1f%%)%n",
+					size != null ? size : words + " words", usedBits, availableBits(),
+					utilization() * 100));
+			for (Declaration<?> d : placed) {
+				sb.append(String.format("  word %d, bits %2d..%2d  %-20s hotness %d%s%n",
+						d.offset >>> 6, d.offset & 63, (d.offset & 63) + d.bits - 1, d.name,
+						d.hotness, d.group != null ? ", group " + d.group : ""));
+			}
+			return sb.toString();
+		}
+
+		@Override public String toString() {
+			return report();
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persists packed records in a file that is used in place through a memory
+ * mapping, so opening it costs no deserialization at all.
+ *
+ * File format (little endian):
+ * <pre>
+ * magic         8 bytes, "BYTERIDR"
+ * version       int
+ * recordBytes   int, bytes per record (8 * words)
+ * records       int, number of records
+ * fieldCount    int
+ * fieldCount times:
+ *   name        unsigned short length + UTF-8 bytes
+ *   kind        byte, 'B'ool, 'I'nt, 'L'ong, 'E'num, 'O'bject, or nullable
+ *               'i'nt, 'l'ong or 'e'num
+ *   mask        long
+ *   highestBit  int
+ *   minValue    long, the stored values, 0 for bool, enum and object fields
+ *   maxValue    long, 1 for bool, the last ordinal for enums, the largest
+ *               int representation for objects
+ *   constants   int, the number of enum constants, 0 for other kinds
+ *   constants times:
+ *     name      unsigned short length + UTF-8 bytes
+ * padding       up to the next multiple of 8
+ * records       records * recordBytes, the packed words
+ * </pre>
+ *
+ * On open, the stored field descriptions are compared to the in-code
+ * {@link ByteRider}, a file written with a different layout is rejected
+ * instead of silently returning garbage.
+ */
+public class MappedRecordFile {
+
+	static final byte [] MAGIC = "BYTERIDR".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 2;
+
+	private final MappedByteBuffer mapped;
+	private final ByteBufferStorage records;
+
+	private MappedRecordFile(MappedByteBuffer mapped, ByteBufferStorage records) {
+		this.mapped = mapped;
+		this.records = records;
+	}
+
+	/** the records inside the mapping, reads and writes go to the file. */
+	public ByteBufferStorage records() { return records; }
+
+	/** writes changes to the records back to the storage device. */
+	public void force() {
+		mapped.force();
+	}
+
+	/**
+	 * creates (or truncates) a file for the given number of records, all bits
+	 * cleared, and maps it for writing.
+	 *
+	 * @param path the file to create
+	 * @param layout the layout of the stored records
+	 * @param records number of records
+	 * @return the mapped file
+	 * @throws IOException if the file can't be written
+	 * @throws IllegalArgumentException if a field name takes more than 65535
+	 *   bytes in UTF-8, or the file would exceed 2 GB, the limit of a mapping
+	 */
+	public static MappedRecordFile create(Path path, ByteRider layout, int records)
+		throws IOException
+	{
+		if (records < 0) {
+			throw new IllegalArgumentException("negative number of records: " + records);
+		}
+		ByteBuffer header = header(layout, records);
+		long length = header.remaining() + (long) records * ByteBufferStorage.recordBytes(layout);
+		if (length > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format(
+					"%d records take %d bytes, a mapping holds at most 2 GB", records, length));
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+					StandardOpenOption.WRITE))
+		{
+			int headerLength = header.remaining();
+			channel.write(header, 0);
+			MappedByteBuffer mapped = channel.map(MapMode.READ_WRITE, 0, length);
+			return new MappedRecordFile(mapped, records(mapped, layout, headerLength, records));
+		}
+	}
+
+	/**
+	 * writes all records of storage into a new file.
+	 *
+	 * @param path the file to create
+	 * @param storage the records to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(Path path, RecordStorage storage) throws IOException {
+		MappedRecordFile file = create(path, storage.layout(), storage.size());
+		ByteBufferStorage target = file.records();
+		int words = storage.layout().words();
+		for (int i = 0; i < storage.size(); ++i) {
+			for (int w = 0; w < words; ++w) {
+				target.setWord(i, w, storage.word(i, w));
+			}
+		}
+		file.force();
+	}
+
+	/**
+	 * maps an existing file for reading and writing.
+	 *
+	 * @param path the file to open
+	 * @param layout the expected layout of the records
+	 * @return the mapped file
+	 * @throws IOException if the file can't be read or is no record file
+	 * @throws IllegalArgumentException if the file was written with a different layout
+	 */
+	public static MappedRecordFile open(Path path, ByteRider layout) throws IOException {
+		return open(path, layout, MapMode.READ_WRITE);
+	}
+
+	/**
+	 * maps an existing file read-only, writes to its records fail.
+	 *
+	 * @param path the file to open
+	 * @param layout the expected layout of the records
+	 * @return the mapped file
+	 * @throws IOException if the file can't be read or is no record file
+	 * @throws IllegalArgumentException if the file was written with a different layout
+	 */
+	public static MappedRecordFile openReadOnly(Path path, ByteRider layout) throws IOException {
+		return open(path, layout, MapMode.READ_ONLY);
+	}
+
+	private static MappedRecordFile open(Path path, ByteRider layout, MapMode mode)
+		throws IOException
+	{
+		StandardOpenOption [] options = mode == MapMode.READ_ONLY
+			? new StandardOpenOption [] { StandardOpenOption.READ }
+			: new StandardOpenOption [] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+		try (FileChannel channel = FileChannel.open(path, options)) {
+			MappedByteBuffer mapped = channel.map(mode, 0, channel.size());
+			ByteBuffer in = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			int records = readHeader(in, layout, path);
+			long expected = in.position() + (long) records * ByteBufferStorage.recordBytes(layout);
+			if (expected != channel.size()) {
+				throw new IOException(String.format("%s: expected %d bytes, found %d",
+							path, expected, channel.size()));
+			}
+			return new MappedRecordFile(mapped, records(mapped, layout, in.position(), records));
+		}
+	}
+
+	private static ByteBufferStorage records(MappedByteBuffer mapped, ByteRider layout,
+			int headerLength, int records)
+	{
+		ByteBuffer data = mapped.duplicate();
+		data.position(headerLength);
+		// checked against the file size before, which fits into a mapping
+		data.limit((int) (headerLength + (long) records * ByteBufferStorage.recordBytes(layout)));
+		return ByteBufferStorage.wrap(layout, data.slice().order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	static ByteBuffer header(ByteRider layout, int records) {
+		List<FieldHeader> fields = describe(layout);
+		int length = MAGIC.length + 4 * Integer.BYTES;
+		for (FieldHeader f : fields) {
+			length += f.length();
+		}
+		length = (length + 7) & ~7;
+
+		ByteBuffer out = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		out.put(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(ByteBufferStorage.recordBytes(layout));
+		out.putInt(records);
+		out.putInt(fields.size());
+		for (FieldHeader f : fields) {
+			f.write(out);
+		}
+		out.position(0);
+		return out;
+	}
+
+	/**
+	 * reads and validates the header, leaves in positioned at the first record.
+	 *
+	 * @return the number of records
+	 */
+	static int readHeader(ByteBuffer in, ByteRider layout, Path path) throws IOException {
+		try {
+			byte [] magic = new byte[MAGIC.length];
+			in.get(magic);
+			for (int i = 0; i < MAGIC.length; ++i) {
+				if (magic[i] != MAGIC[i]) {
+					throw new IOException(path + ": not a record file");
+				}
+			}
+			int version = in.getInt();
+			if (version != VERSION) {
+				throw new IOException(path + ": unsupported version " + version);
+			}
+			int recordBytes = in.getInt();
+			if (recordBytes != ByteBufferStorage.recordBytes(layout)) {
+				throw new IOException(path + ": unsupported record size " + recordBytes);
+			}
+			int records = in.getInt();
+			int fieldCount = in.getInt();
+			if (records < 0 || fieldCount < 0 || fieldCount > in.remaining() / FieldHeader.MIN_LENGTH) {
+				throw new IOException(String.format("%s: corrupt header, %d records of %d fields",
+							path, records, fieldCount));
+			}
+			List<FieldHeader> stored = new ArrayList<>(fieldCount);
+			for (int i = 0; i < fieldCount; ++i) {
+				stored.add(FieldHeader.read(in, path));
+			}
+			in.position((in.position() + 7) & ~7);
+
+			List<FieldHeader> expected = describe(layout);
+			if (!stored.equals(expected)) {
+				throw new IllegalArgumentException(String.format(
+						"%s: layout mismatch, file has %s, expected %s", path, stored, expected));
+			}
+			return records;
+		} catch (BufferUnderflowException e) {
+			throw new IOException(path + ": truncated header", e);
+		}
+	}
+
+	static List<FieldHeader> describe(ByteRider layout) {
+		List<FieldHeader> result = new ArrayList<>();
+		for (BitField f : layout.fields()) {
+			result.add(FieldHeader.of(f));
+		}
+		return result;
+	}
+
+	/**
+	 * the stored description of a single field.
+	 */
+	static final class FieldHeader {
+		/** bytes of a field with an empty name and no constants. */
+		static final int MIN_LENGTH = 2 + 1 + Long.BYTES + Integer.BYTES + 2 * Long.BYTES
+			+ Integer.BYTES;
+
+		private static final String [] NO_CONSTANTS = {};
+
+		final String name;
+		final byte kind;
+		final long mask;
+		final int highestBit;
+		final long minValue;
+		final long maxValue;
+		/** names of the enum constants, in ordinal order. */
+		final String [] constants;
+
+		FieldHeader(String name, byte kind, long mask, int highestBit,
+				long minValue, long maxValue, String [] constants)
+		{
+			this.name = name;
+			this.kind = kind;
+			this.mask = mask;
+			this.highestBit = highestBit;
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+			this.constants = constants;
+		}
+
+		static FieldHeader of(BitField f) {
+			if (f instanceof BoolField) {
+				return of(f, 'B', 0, 1);
+			} else if (f instanceof IntField) {
+				IntField i = (IntField) f;
+				return of(f, 'I', i.minValue(), i.maxValue());
+			} else if (f instanceof LongField) {
+				LongField l = (LongField) f;
+				return of(f, 'L', l.minValue(), l.maxValue());
+			} else if (f instanceof EnumFieldImpl) {
+				return of(f, 'E', ((EnumFieldImpl<?>) f).constants());
+			} else if (f instanceof ObjFieldImpl) {
+				return of(f, 'O', 0, ((ObjFieldImpl<?>) f).intField.maxValue());
+			} else if (f instanceof IntegerField) {
+				IntegerField i = (IntegerField) f;
+				return of(f, 'i', i.minValue(), i.maxValue());
+			} else if (f instanceof NullableLongField) {
+				NullableLongField l = (NullableLongField) f;
+				return of(f, 'l', l.minValue(), l.maxValue());
+			} else if (f instanceof NullableEnumImpl) {
+				return of(f, 'e', ((NullableEnumImpl<?>) f).constants());
+			} else {
+				long range = f.mask() >>> Long.numberOfTrailingZeros(f.mask());
+				return of(f, 'O', 0, range);
+			}
+		}
+
+		private static FieldHeader of(BitField f, char kind, long minValue, long maxValue) {
+			return new FieldHeader(f.name(), (byte) kind, f.mask(), f.highestBit(),
+					minValue, maxValue, NO_CONSTANTS);
+		}
+
+		private static FieldHeader of(BitField f, char kind, Enum<?> [] values) {
+			String [] constants = new String[values.length];
+			for (int i = 0; i < values.length; ++i) {
+				constants[i] = values[i].name();
+			}
+			return new FieldHeader(f.name(), (byte) kind, f.mask(), f.highestBit(),
+					0, values.length - 1, constants);
+		}
+
+		int length() {
+			int length = MIN_LENGTH + utf8(name).length;
+			for (String c : constants) {
+				length += 2 + utf8(c).length;
+			}
+			return length;
+		}
+
+		void write(ByteBuffer out) {
+			writeName(out, name);
+			out.put(kind);
+			out.putLong(mask);
+			out.putInt(highestBit);
+			out.putLong(minValue);
+			out.putLong(maxValue);
+			out.putInt(constants.length);
+			for (String c : constants) {
+				writeName(out, c);
+			}
+		}
+
+		static FieldHeader read(ByteBuffer in, Path path) throws IOException {
+			String name = readName(in);
+			byte kind = in.get();
+			long mask = in.getLong();
+			int highestBit = in.getInt();
+			long minValue = in.getLong();
+			long maxValue = in.getLong();
+			int count = in.getInt();
+			if (count < 0 || count > in.remaining() / 2) {
+				throw new IOException(String.format("%s: corrupt header, %d constants of %s",
+							path, count, name));
+			}
+			String [] constants = new String[count];
+			for (int i = 0; i < count; ++i) {
+				constants[i] = readName(in);
+			}
+			return new FieldHeader(name, kind, mask, highestBit, minValue, maxValue, constants);
+		}
+
+		private static void writeName(ByteBuffer out, String name) {
+			byte [] nameBytes = utf8(name);
+			if (nameBytes.length > 0xFFFF) {
+				throw new IllegalArgumentException(String.format(
+						"name %.20s... takes %d bytes, at most 65535 are supported",
+						name, nameBytes.length));
+			}
+			out.putShort((short) nameBytes.length);
+			out.put(nameBytes);
+		}
+
+		private static String readName(ByteBuffer in) {
+			byte [] nameBytes = new byte[in.getShort() & 0xFFFF];
+			in.get(nameBytes);
+			return new String(nameBytes, StandardCharsets.UTF_8);
+		}
+
+		private static byte [] utf8(String s) {
+			return s.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override public boolean equals(Object o) {
+			if (!(o instanceof FieldHeader)) {
+				return false;
+			}
+			FieldHeader other = (FieldHeader) o;
+			return name.equals(other.name) && kind == other.kind && mask == other.mask
+				&& highestBit == other.highestBit && minValue == other.minValue
+				&& maxValue == other.maxValue && Arrays.equals(constants, other.constants);
+		}
+
+		@Override public int hashCode() {
+			return name.hashCode() * 31 + Long.hashCode(mask);
+		}
+
+		@Override public String toString() {
+			return String.format("%s(%c, mask %x, [%d, %d]%s)", name, (char) kind, mask,
+					minValue, maxValue, constants.length == 0 ? "" : " " + Arrays.toString(constants));
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+/**
+ * A fixed length array of ints in [minValue, maxValue], each stored in just as
+ * many bits as the range requires, packed across a long [].
+ *
+ * Meant for columns holding a single small field, which waste most of a long
+ * per record otherwise:
+ *
+ * <pre>
+ * PackedIntArray classes = PackedIntArray.of(net2Class, segments.size()); // 3 bits each
+ * classes.set(i, 4);
+ * int [] block = new int[1024];
+ * classes.get(0, block, 0, block.length);
+ * </pre>
+ *
+ * Values are stored as value - minValue, so they may straddle two words.
+ * Bulk reads and writes work on blocks of 64 values, which fill a whole
+ * number of words, with a decode kernel per bit width (see {@link BitPacking}).
+ *
+ * Not thread safe, like a plain array written from several threads.
+ */
+public final class PackedIntArray {
+
+	private final int length;
+	private final int minValue;
+	private final int maxValue;
+	private final int bits;
+	private final long mask;
+	/** whole blocks of 64 values, so bulk access never needs to check the end. */
+	private final long [] words;
+
+	/**
+	 * creates an array of length values, all minValue.
+	 *
+	 * @throws IllegalArgumentException if minValue &gt; maxValue or length &lt; 0
+	 */
+	public PackedIntArray(int minValue, int maxValue, int length) {
+		if (minValue > maxValue) {
+			throw new IllegalArgumentException(String.format("min value %d > max value %d",
+					minValue, maxValue));
+		}
+		if (length < 0) {
+			throw new IllegalArgumentException("negative length " + length);
+		}
+		this.length = length;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		this.bits = bitsRequired(maxValue + 1L - minValue);
+		this.mask = (1L << bits) - 1;
+		this.words = new long[(int) (((length + 63L) >>> 6) * bits)];
+	}
+
+	/** @return an array for the values of the field, at the field's width */
+	public static PackedIntArray of(IntField f, int length) {
+		return new PackedIntArray(f.minValue(), f.maxValue(), length);
+	}
+
+	/**
+	 * @return an array for the int representation of the field's values, the
+	 *   ordinal for enums, at the field's width
+	 */
+	public static PackedIntArray of(IntMappedObjField<?> f, int length) {
+		if (!(f instanceof ObjFieldImpl)) {
+			throw new IllegalArgumentException("unsupported field " + f.name());
+		}
+		return of(((ObjFieldImpl<?>) f).intField, length);
+	}
+
+	public int length() { return length; }
+
+	public int minValue() { return minValue; }
+
+	public int maxValue() { return maxValue; }
+
+	/** bits per value. */
+	public int bitsPerValue() { return bits; }
+
+	/** bytes used by the packed values. */
+	public long sizeInBytes() { return words.length * 8L; }
+
+	/** @throws IndexOutOfBoundsException if index isn't in [0, length) */
+	public int get(int index) {
+		checkIndex(index);
+		if (bits == 0) {
+			return minValue;
+		}
+		long bitPos = (long) index * bits;
+		int w = (int) (bitPos >>> 6);
+		int shift = (int) bitPos & 63;
+		long v = words[w] >>> shift;
+		if (shift + bits > 64) {
+			v |= words[w + 1] << (64 - shift);
+		}
+		return (int) (v & mask) + minValue;
+	}
+
+	/**
+	 * @throws IndexOutOfBoundsException if index isn't in [0, length)
+	 * @throws IllegalArgumentException if value isn't in [minValue, maxValue]
+	 */
+	public void set(int index, int value) {
+		checkIndex(index);
+		check(value);
+		if (bits == 0) {
+			return;
+		}
+		long v = (value - minValue) & mask;
+		long bitPos = (long) index * bits;
+		int w = (int) (bitPos >>> 6);
+		int shift = (int) bitPos & 63;
+		words[w] = words[w] & ~(mask << shift) | v << shift;
+		if (shift + bits > 64) {
+			int spill = 64 - shift;
+			words[w + 1] = words[w + 1] & ~(mask >>> spill) | v >>> spill;
+		}
+	}
+
+	/**
+	 * reads count values starting at from into dest. Whole blocks of 64 aligned
+	 * values are decoded at once.
+	 *
+	 * @return count
+	 */
+	public int get(int from, int [] dest, int destPos, int count) {
+		checkRange(from, count, length);
+		checkRange(destPos, count, dest.length);
+		int end = from + count;
+		int i = from;
+		for (; i < end && (i & 63) != 0; ++i) {
+			dest[destPos++] = get(i);
+		}
+		for (; i + BitPacking.BLOCK <= end; i += BitPacking.BLOCK) {
+			BitPacking.unpack(words, (i >>> 6) * bits, bits, minValue, dest, destPos);
+			destPos += BitPacking.BLOCK;
+		}
+		for (; i < end; ++i) {
+			dest[destPos++] = get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * writes count values from src, starting at from. Whole blocks of 64
+	 * aligned values are packed at once.
+	 *
+	 * @throws IllegalArgumentException if a value isn't in [minValue, maxValue],
+	 *   nothing is written then
+	 */
+	public void set(int from, int [] src, int srcPos, int count) {
+		checkRange(from, count, length);
+		checkRange(srcPos, count, src.length);
+		for (int i = srcPos; i < srcPos + count; ++i) {
+			check(src[i]);
+		}
+		int end = from + count;
+		int i = from;
+		for (; i < end && (i & 63) != 0; ++i) {
+			set(i, src[srcPos++]);
+		}
+		for (; i + BitPacking.BLOCK <= end; i += BitPacking.BLOCK) {
+			BitPacking.pack(src, srcPos, minValue, bits, words, (i >>> 6) * bits);
+			srcPos += BitPacking.BLOCK;
+		}
+		for (; i < end; ++i) {
+			set(i, src[srcPos++]);
+		}
+	}
+
+	/** @return all values */
+	public int [] toArray() {
+		int [] values = new int[length];
+		get(0, values, 0, length);
+		return values;
+	}
+
+	private void check(int value) {
+		if (value < minValue || value > maxValue) {
+			throw new IllegalArgumentException(String.format("value %d out of range [%d, %d]",
+					value, minValue, maxValue));
+		}
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+	}
+
+	private static void checkRange(int from, int count, int length) {
+		if (from < 0 || count < 0 || from > length - count) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), length %d", from, from + count, length));
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Arrays;
+
+/**
+ * A precomputed update of several fields of a record.
+ *
+ * All field values are merged into one mask of bits to keep and one value to
+ * OR in per word, so applying a patch is a single AND and OR per word, no
+ * matter how many fields it sets:
+ *
+ * <pre>
+ * Patch reset = br.update().set(net2Class, 3).set(freeway, true).build();
+ * data = reset.apply(data);
+ * reset.apply(segments, 0, segments.size());
+ * </pre>
+ *
+ * Patches are immutable and can be shared between threads. Values are range
+ * checked once, when added to the {@link Builder}.
+ */
+public final class Patch {
+
+	final ByteRider layout;
+	final long [] keep;
+	final long [] bits;
+
+	private Patch(ByteRider layout, long [] keep, long [] bits) {
+		this.layout = layout;
+		this.keep = keep;
+		this.bits = bits;
+	}
+
+	/** the layout of the records this patch applies to. */
+	public ByteRider layout() { return layout; }
+
+	/**
+	 * applies the patch to a record of a single word layout.
+	 *
+	 * @param data the packed record
+	 * @return data with all fields of the patch set
+	 * @throws IllegalStateException if the layout spans several words
+	 */
+	public long apply(long data) {
+		if (keep.length != 1) {
+			throw new IllegalStateException("layout spans " + keep.length + " words, pass a long []");
+		}
+		return data & keep[0] | bits[0];
+	}
+
+	/**
+	 * applies the patch to the records in [from, to) of a raw array holding
+	 * {@link ByteRider#words()} longs per record.
+	 *
+	 * @param records the packed records
+	 * @param from first record index, inclusive
+	 * @param to last record index, exclusive
+	 */
+	public void apply(long [] records, int from, int to) {
+		int words = keep.length;
+		if (from < 0 || from > to || (long) to * words > records.length) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), %d records", from, to, records.length / words));
+		}
+		if (words == 1) {
+			long k = keep[0];
+			long b = bits[0];
+			for (int i = from; i < to; ++i) {
+				records[i] = records[i] & k | b;
+			}
+		} else {
+			for (int i = from * words, end = to * words; i < end; i += words) {
+				for (int w = 0; w < words; ++w) {
+					records[i + w] = records[i + w] & keep[w] | bits[w];
+				}
+			}
+		}
+	}
+
+	/**
+	 * applies the patch to a single record of a storage.
+	 *
+	 * @param storage storage of records of this patch's layout
+	 * @param index record index
+	 */
+	public void apply(RecordStorage storage, int index) {
+		checkLayout(storage);
+		applyRecord(storage, index);
+	}
+
+	/**
+	 * applies the patch to the records in [from, to) of a storage.
+	 *
+	 * @param storage storage of records of this patch's layout
+	 * @param from first record index, inclusive
+	 * @param to last record index, exclusive
+	 */
+	public void apply(RecordStorage storage, int from, int to) {
+		checkLayout(storage);
+		if (storage instanceof ByteRiderArray) {
+			((ByteRiderArray) storage).apply(this, from, to);
+		} else {
+			for (int i = from; i < to; ++i) {
+				applyRecord(storage, i);
+			}
+		}
+	}
+
+	/** skips words the patch doesn't touch. */
+	private void applyRecord(RecordStorage storage, int index) {
+		for (int w = 0; w < keep.length; ++w) {
+			if (keep[w] != -1L) {
+				storage.setWord(index, w, storage.word(index, w) & keep[w] | bits[w]);
+			}
+		}
+	}
+
+	/**
+	 * the positions of the fields are only known to the layout the patch was
+	 * built for, frozen or not; an equally long layout may place them elsewhere.
+	 */
+	void checkLayout(RecordStorage storage) {
+		if (storage.layout() != layout) {
+			throw new IllegalArgumentException("patch for records of another layout");
+		}
+	}
+
+	/**
+	 * collects field values for a {@link Patch}, see {@link ByteRider#update()}.
+	 *
+	 * Setting the same field twice keeps the last value. Not thread safe.
+	 */
+	public static final class Builder {
+		private final ByteRider layout;
+		private final long [] keep;
+		private final long [] bits;
+		private final ByteRiderArray scratch;
+
+		Builder(ByteRider layout) {
+			this.layout = layout;
+			this.keep = new long[layout.words()];
+			this.bits = new long[layout.words()];
+			this.scratch = new ByteRiderArray(layout, 1);
+			Arrays.fill(keep, -1L);
+			scratch.append();
+		}
+
+		public Builder set(BoolField f, boolean value) {
+			f.set(scratch, 0, value);
+			return merge(f);
+		}
+
+		/** @throws IllegalArgumentException if value is out of the field's range */
+		public Builder set(IntField f, int value) {
+			f.set(scratch, 0, value);
+			return merge(f);
+		}
+
+		/** @throws IllegalArgumentException if value is out of the field's range */
+		public Builder set(LongField f, long value) {
+			f.set(scratch, 0, value);
+			return merge(f);
+		}
+
+		public <T> Builder set(IntMappedObjField<T> f, T value) {
+			f.set(scratch, 0, value);
+			return merge(f);
+		}
+
+		/** @throws IllegalArgumentException if value is out of the field's range */
+		public Builder set(IntegerField f, Integer value) {
+			if (value == null) {
+				f.setNull(scratch, 0);
+			} else {
+				f.set(scratch, 0, value.intValue());
+			}
+			return merge(f);
+		}
+
+		/** @throws IllegalArgumentException if value is out of the field's range */
+		public Builder set(NullableLongField f, Long value) {
+			if (value == null) {
+				f.setNull(scratch, 0);
+			} else {
+				f.set(scratch, 0, value.longValue());
+			}
+			return merge(f);
+		}
+
+		public <T extends Enum<T>> Builder set(NullableEnumField<T> f, T value) {
+			f.set(scratch, 0, value);
+			return merge(f);
+		}
+
+		/**
+		 * sets all bits of the field to zero: null for nullable fields, the
+		 * minimum value for int and long fields.
+		 */
+		public Builder clear(BitField f) {
+			for (int w = 0; w < keep.length; ++w) {
+				scratch.setWord(0, w, scratch.word(0, w) & ~f.mask(w));
+			}
+			return merge(f);
+		}
+
+		/** @return the patch setting all fields added so far */
+		public Patch build() {
+			return new Patch(layout, keep.clone(), bits.clone());
+		}
+
+		/** shortcut for {@code build().apply(data)}, without creating the patch. */
+		public long apply(long data) {
+			if (keep.length != 1) {
+				throw new IllegalStateException("layout spans " + keep.length + " words, pass a long []");
+			}
+			return data & keep[0] | bits[0];
+		}
+
+		/** shortcut for {@code build().apply(storage, index)}. */
+		public void apply(RecordStorage storage, int index) {
+			build().apply(storage, index);
+		}
+
+		/** @throws IllegalArgumentException if f isn't a field of the layout */
+		private Builder merge(BitField f) {
+			if (layout.indexOf(f) < 0) {
+				throw new IllegalArgumentException("not a field of this layout: " + f.name());
+			}
+			for (int w = 0; w < keep.length; ++w) {
+				long mask = f.mask(w);
+				keep[w] &= ~mask;
+				bits[w] = bits[w] & ~mask | scratch.word(0, w) & mask;
+			}
+			return this;
+		}
+	}
+}
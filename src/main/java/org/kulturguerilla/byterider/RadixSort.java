@@ -0,0 +1,294 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Stable LSD radix sort of packed records by one or more fields.
+ *
+ * Fields store value - minValue, so the unsigned order of a field's bits is the
+ * order of its values and records can be sorted without unpacking anything.
+ * Only the bits covered by the key fields are looked at, 8 of them per pass;
+ * passes in which all records share the same digit are skipped.
+ *
+ * <pre>
+ * RadixSort.sort(segments, net2Class, length);     // by net2Class, then length
+ * int [] order = RadixSort.order(segments, length); // segments stay where they are
+ * </pre>
+ *
+ * The parallel variants split every pass into chunks, counted and scattered
+ * on the common fork join pool.
+ */
+public final class RadixSort {
+
+	private static final int DIGIT_BITS = 8;
+
+	/** below this many records per chunk, parallel passes aren't worth it. */
+	static final int MIN_CHUNK = 1 << 14;
+
+	private RadixSort() {
+	}
+
+	/**
+	 * sorts the records of the array by the given fields, the first field
+	 * being the most significant. Records with equal keys keep their order.
+	 *
+	 * @param array the records to sort
+	 * @param keys fields of the array's layout
+	 */
+	public static void sort(ByteRiderArray array, BitField... keys) {
+		sort(array, false, keys);
+	}
+
+	/** see {@link #sort(ByteRiderArray, BitField...)}, parallel for large arrays. */
+	public static void parallelSort(ByteRiderArray array, BitField... keys) {
+		sort(array, true, keys);
+	}
+
+	/**
+	 * sorts the records in [from, to) of a raw array of single word records,
+	 * see {@link #sort(ByteRiderArray, BitField...)}.
+	 *
+	 * @throws IllegalArgumentException if a key field isn't in the first word
+	 */
+	public static void sort(long [] records, int from, int to, BitField... keys) {
+		if (from < 0 || from > to || to > records.length) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), length %d", from, to, records.length));
+		}
+		List<Part> parts = parts(1, keys);
+		long [] words = new long[to - from];
+		System.arraycopy(records, from, words, 0, words.length);
+		words = lsd(words, null, passes(parts), false).keys;
+		System.arraycopy(words, 0, records, from, words.length);
+	}
+
+	/**
+	 * @param storage the records
+	 * @param keys fields of the storage's layout, most significant first
+	 * @return the record indices in sorted order, without moving any record;
+	 *   records with equal keys keep their order
+	 */
+	public static int [] order(RecordStorage storage, BitField... keys) {
+		return order(storage, false, keys);
+	}
+
+	/** see {@link #order(RecordStorage, BitField...)}, parallel for large storages. */
+	public static int [] parallelOrder(RecordStorage storage, BitField... keys) {
+		return order(storage, true, keys);
+	}
+
+	private static void sort(ByteRiderArray array, boolean parallel, BitField... keys) {
+		int stride = array.layout().words();
+		List<Part> parts = parts(stride, keys);
+		int n = array.size();
+		long [] data = array.data();
+		if (stride == 1) {
+			long [] words = new long[n];
+			System.arraycopy(data, 0, words, 0, n);
+			words = lsd(words, null, passes(parts), parallel).keys;
+			System.arraycopy(words, 0, data, 0, n);
+			return;
+		}
+		int [] order = order(array, parallel, keys);
+		long [] sorted = new long[n * stride];
+		for (int i = 0; i < n; ++i) {
+			System.arraycopy(data, order[i] * stride, sorted, i * stride, stride);
+		}
+		System.arraycopy(sorted, 0, data, 0, sorted.length);
+	}
+
+	private static int [] order(RecordStorage storage, boolean parallel, BitField... keys) {
+		int stride = storage.layout().words();
+		List<Part> parts = parts(stride, keys);
+		int n = storage.size();
+		int [] order = new int[n];
+		for (int i = 0; i < n; ++i) {
+			order[i] = i;
+		}
+		// LSD over chunks of parts, each composed into a single long key
+		int end = parts.size();
+		while (end > 0) {
+			int start = end;
+			int bits = 0;
+			while (start > 0 && bits + parts.get(start - 1).bits <= 64) {
+				bits += parts.get(--start).bits;
+			}
+			List<Part> chunk = parts.subList(start, end);
+			long [] composed = compose(storage, order, chunk);
+			order = lsd(composed, order, passes(bits), parallel).order;
+			end = start;
+		}
+		return order;
+	}
+
+	/** the bits of the parts, concatenated, for the records in the given order. */
+	private static long [] compose(RecordStorage storage, int [] order, List<Part> parts) {
+		int n = order.length;
+		int stride = storage.layout().words();
+		long [] data = storage instanceof ByteRiderArray ? ((ByteRiderArray) storage).data() : null;
+		long [] keys = new long[n];
+		for (int i = 0; i < n; ++i) {
+			int record = order[i];
+			long key = 0;
+			for (Part p : parts) {
+				long word = data != null ? data[record * stride + p.word] : storage.word(record, p.word);
+				key = key << p.bits | (word & p.mask) >>> p.shift;
+			}
+			keys[i] = key;
+		}
+		return keys;
+	}
+
+	/**
+	 * the key bits of a field, a contiguous run inside one word.
+	 */
+	private static final class Part {
+		final int word;
+		final long mask;
+		final int shift;
+		final int bits;
+
+		Part(int word, long mask) {
+			this.word = word;
+			this.mask = mask;
+			this.shift = Long.numberOfTrailingZeros(mask);
+			this.bits = Long.bitCount(mask);
+		}
+	}
+
+	/** the parts of all keys, most significant first. */
+	private static List<Part> parts(int words, BitField... keys) {
+		if (keys.length == 0) {
+			throw new IllegalArgumentException("no key fields");
+		}
+		List<Part> parts = new ArrayList<>();
+		for (BitField f : keys) {
+			if (f.word() >= words) {
+				throw new IllegalArgumentException("field " + f.name() + " outside of a "
+						+ words + " word record");
+			}
+			parts.add(new Part(f.word(), f.mask()));
+		}
+		return parts;
+	}
+
+	/** digit passes over the parts inside a single word, least significant first. */
+	private static int [][] passes(List<Part> parts) {
+		List<int []> passes = new ArrayList<>();
+		for (int p = parts.size() - 1; p >= 0; --p) {
+			Part part = parts.get(p);
+			for (int b = 0; b < part.bits; b += DIGIT_BITS) {
+				passes.add(new int[] {part.shift + b, Math.min(DIGIT_BITS, part.bits - b)});
+			}
+		}
+		return passes.toArray(new int[0][]);
+	}
+
+	/** digit passes over the lowest bits of a key. */
+	private static int [][] passes(int bits) {
+		int [][] passes = new int[(bits + DIGIT_BITS - 1) / DIGIT_BITS][];
+		for (int i = 0; i < passes.length; ++i) {
+			passes[i] = new int[] {i * DIGIT_BITS, Math.min(DIGIT_BITS, bits - i * DIGIT_BITS)};
+		}
+		return passes;
+	}
+
+	/** keys and the record order they were moved along with. */
+	private static final class Sorted {
+		final long [] keys;
+		final int [] order;
+
+		Sorted(long [] keys, int [] order) {
+			this.keys = keys;
+			this.order = order;
+		}
+	}
+
+	/**
+	 * stable LSD radix sort of keys (and order, if not null) by the digits
+	 * {shift, width} of the passes, applied in order.
+	 */
+	private static Sorted lsd(long [] keys, int [] order, int [][] passes, boolean parallel) {
+		int n = keys.length;
+		int chunks = parallel
+			? Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, n / MIN_CHUNK))
+			: 1;
+		long [] keyBuffer = new long[n];
+		int [] orderBuffer = order != null ? new int[n] : null;
+		for (int [] pass : passes) {
+			if (pass(keys, order, keyBuffer, orderBuffer, pass[0], pass[1], chunks)) {
+				long [] k = keys;
+				keys = keyBuffer;
+				keyBuffer = k;
+				int [] o = order;
+				order = orderBuffer;
+				orderBuffer = o;
+			}
+		}
+		return new Sorted(keys, order);
+	}
+
+	/**
+	 * moves keys (and order) into the buffers, stably sorted by one digit.
+	 *
+	 * @return false if all keys share the digit and nothing was moved
+	 */
+	private static boolean pass(long [] keys, int [] order, long [] keyBuffer, int [] orderBuffer,
+			int shift, int width, int chunks)
+	{
+		int n = keys.length;
+		int radix = 1 << width;
+		long digitMask = radix - 1;
+		int [][] counts = new int[chunks][radix];
+		forEachChunk(chunks, c -> {
+			int [] count = counts[c];
+			for (int i = chunkStart(c, chunks, n), end = chunkStart(c + 1, chunks, n); i < end; ++i) {
+				count[(int) (keys[i] >>> shift & digitMask)]++;
+			}
+		});
+
+		int position = 0;
+		for (int d = 0; d < radix; ++d) {
+			int total = 0;
+			for (int c = 0; c < chunks; ++c) {
+				int count = counts[c][d];
+				counts[c][d] = position + total;
+				total += count;
+			}
+			if (total == n) {
+				return false;
+			}
+			position += total;
+		}
+
+		forEachChunk(chunks, c -> {
+			int [] offsets = counts[c];
+			for (int i = chunkStart(c, chunks, n), end = chunkStart(c + 1, chunks, n); i < end; ++i) {
+				int target = offsets[(int) (keys[i] >>> shift & digitMask)]++;
+				keyBuffer[target] = keys[i];
+				if (order != null) {
+					orderBuffer[target] = order[i];
+				}
+			}
+		});
+		return true;
+	}
+
+	private static int chunkStart(int chunk, int chunks, int n) {
+		return (int) ((long) n * chunk / chunks);
+	}
+
+	private static void forEachChunk(int chunks, IntConsumer action) {
+		if (chunks == 1) {
+			action.accept(0);
+		} else {
+			IntStream.range(0, chunks).parallel().forEach(action);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.kulturguerilla.byterider;
+
+/**
+ * Indexed storage of packed records sharing a single {@link ByteRider} layout.
+ *
+ * Implementations only move raw words around, all the bit fiddling is done by
+ * the fields, e.g. {@link ByteRider.IntField#get(RecordStorage, int)}. A record
+ * consists of {@link ByteRider#words()} longs.
+ */
+public interface RecordStorage {
+
+	/** the layout of the stored records. */
+	ByteRider layout();
+
+	/** number of records currently stored. */
+	int size();
+
+	/**
+	 * reads a single raw (packed) word of the record at the given index.
+	 *
+	 * @param index record index
+	 * @param word word within the record, in [0, layout().words())
+	 * @return the packed word
+	 * @throws IndexOutOfBoundsException if index is not in [0, size) or word is
+	 *   outside of the record
+	 */
+	long word(int index, int word);
+
+	/**
+	 * replaces a single raw (packed) word of the record at the given index.
+	 *
+	 * @param index record index
+	 * @param word word within the record, in [0, layout().words())
+	 * @param value the new packed word
+	 * @throws IndexOutOfBoundsException if index is not in [0, size) or word is
+	 *   outside of the record
+	 */
+	void setWord(int index, int word, long value);
+
+	/**
+	 * reads the first word of the record at the given index, which is the
+	 * whole record for single word layouts.
+	 *
+	 * @param index record index
+	 * @return the packed word
+	 * @throws IndexOutOfBoundsException if index is not in [0, size)
+	 */
+	default long word(int index) {
+		return word(index, 0);
+	}
+
+	/**
+	 * replaces the first word of the record at the given index, which is the
+	 * whole record for single word layouts.
+	 *
+	 * @param index record index
+	 * @param value the new packed word
+	 * @throws IndexOutOfBoundsException if index is not in [0, size)
+	 */
+	default void setWord(int index, long value) {
+		setWord(index, 0, value);
+	}
+}
@@ -0,0 +1,412 @@
+package org.kulturguerilla.byterider;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams over the records of a {@link RecordStorage}, for processing packed
+ * records with (parallel) streams.
+ *
+ * All spliterators cover a range of record indices and split it in halves,
+ * they are SIZED and SUBSIZED, so parallel streams divide the work evenly.
+ * Values are read straight from the packed words, nothing is boxed or copied:
+ *
+ * <pre>
+ * long total = RecordStreams.sum(length, segments);
+ * int maxClass = net2Class.stream(segments).parallel().max().getAsInt();
+ * long [] perType = RecordStreams.histogram(roadType, segments);
+ * </pre>
+ *
+ * Like iterating a plain array, the streams don't guard against the storage
+ * being modified while they run.
+ */
+public final class RecordStreams {
+
+	/** values a field may have at most for {@link #histogram}, 8 MB of counts. */
+	public static final int MAX_HISTOGRAM_BUCKETS = 1 << 20;
+
+	private static final int CHARACTERISTICS = Spliterator.SIZED | Spliterator.SUBSIZED
+		| Spliterator.ORDERED | Spliterator.NONNULL;
+
+	private RecordStreams() {
+	}
+
+	/** @return a spliterator over the indices of all records of storage */
+	public static Spliterator.OfInt indexSpliterator(RecordStorage storage) {
+		return new IndexSpliterator(0, storage.size());
+	}
+
+	/**
+	 * @param word word within a record, 0 for single word layouts
+	 * @return a spliterator over the given raw word of every record
+	 */
+	public static Spliterator.OfLong wordSpliterator(RecordStorage storage, int word) {
+		if (word < 0 || word >= storage.layout().words()) {
+			throw new IndexOutOfBoundsException("word " + word + " of " + storage.layout().words());
+		}
+		return new WordSpliterator(storage, word, 0, storage.size());
+	}
+
+	/** @return the indices of all records of storage */
+	public static IntStream indices(RecordStorage storage) {
+		return StreamSupport.intStream(indexSpliterator(storage), false);
+	}
+
+	/** @return the packed records of a single word layout, i.e. word 0 of every record */
+	public static LongStream words(RecordStorage storage) {
+		return words(storage, 0);
+	}
+
+	/** @return the given raw word of every record */
+	public static LongStream words(RecordStorage storage, int word) {
+		return StreamSupport.longStream(wordSpliterator(storage, word), false);
+	}
+
+	/** see {@link IntField#stream(RecordStorage)}. */
+	static IntStream stream(IntField f, RecordStorage storage) {
+		return StreamSupport.intStream(new IntFieldSpliterator(f, storage, 0, storage.size()), false);
+	}
+
+	/** see {@link LongField#stream(RecordStorage)}. */
+	static LongStream stream(LongField f, RecordStorage storage) {
+		return StreamSupport.longStream(new LongFieldSpliterator(f, storage, 0, storage.size()), false);
+	}
+
+	/** see {@link IntMappedObjField#stream(RecordStorage)}. */
+	static <T> Stream<T> stream(IntMappedObjField<T> f, RecordStorage storage) {
+		return StreamSupport.stream(new ObjFieldSpliterator<>(f, storage, 0, storage.size()), false);
+	}
+
+	// reductions, all running in parallel
+
+	/** @return the number of records with the field set */
+	public static long count(BoolField f, RecordStorage storage) {
+		return words(storage, f.word()).parallel().filter(w -> f.get(w)).count();
+	}
+
+	/** @return the sum of the field over all records */
+	public static long sum(IntField f, RecordStorage storage) {
+		return f.stream(storage).parallel().asLongStream().sum();
+	}
+
+	/** @return the sum of the field over all records, overflowing silently like {@link LongStream#sum()} */
+	public static long sum(LongField f, RecordStorage storage) {
+		return f.stream(storage).parallel().sum();
+	}
+
+	/** @return the smallest value of the field, empty if there are no records */
+	public static OptionalInt min(IntField f, RecordStorage storage) {
+		return f.stream(storage).parallel().min();
+	}
+
+	/** @return the largest value of the field, empty if there are no records */
+	public static OptionalInt max(IntField f, RecordStorage storage) {
+		return f.stream(storage).parallel().max();
+	}
+
+	/** @return the smallest value of the field, empty if there are no records */
+	public static OptionalLong min(LongField f, RecordStorage storage) {
+		return f.stream(storage).parallel().min();
+	}
+
+	/** @return the largest value of the field, empty if there are no records */
+	public static OptionalLong max(LongField f, RecordStorage storage) {
+		return f.stream(storage).parallel().max();
+	}
+
+	/**
+	 * counts the records per value of the field. Every parallel task fills a
+	 * counts array of its own, so the field's range is limited to
+	 * {@link #MAX_HISTOGRAM_BUCKETS} values.
+	 *
+	 * @return counts indexed by value - minValue()
+	 * @throws IllegalArgumentException if the field has more than
+	 *   {@link #MAX_HISTOGRAM_BUCKETS} values
+	 */
+	public static long [] histogram(IntField f, RecordStorage storage) {
+		int min = f.minValue();
+		long range = (long) f.maxValue() - min + 1;
+		if (range > MAX_HISTOGRAM_BUCKETS) {
+			throw new IllegalArgumentException(String.format(
+					"%s has %d values, histograms support at most %d", f.name(), range,
+					MAX_HISTOGRAM_BUCKETS));
+		}
+		int buckets = (int) range;
+		return f.stream(storage).parallel().collect(() -> new long[buckets],
+				(h, v) -> h[v - min]++, RecordStreams::add);
+	}
+
+	/**
+	 * counts the records per value of an object or enum field.
+	 *
+	 * @return counts indexed by the int representation of the values, the
+	 *   ordinal for enums; one per value of the field's cardinality
+	 */
+	public static long [] histogram(IntMappedObjField<?> f, RecordStorage storage) {
+		if (!(f instanceof ObjFieldImpl)) {
+			throw new IllegalArgumentException("unsupported field " + f.name());
+		}
+		ObjFieldImpl<?> o = (ObjFieldImpl<?>) f;
+		// the int field has room for codes beyond the cardinality, no object maps to them
+		return Arrays.copyOf(histogram(o.intField, storage), o.cardinality());
+	}
+
+	private static void add(long [] to, long [] from) {
+		for (int i = 0; i < to.length; ++i) {
+			to[i] += from[i];
+		}
+	}
+
+	/**
+	 * base of the spliterators, a range [index, to) of record indices split
+	 * in halves.
+	 */
+	static abstract class RecordSpliterator<S extends RecordSpliterator<S>> {
+		protected int index;
+		protected final int to;
+
+		RecordSpliterator(int from, int to) {
+			this.index = from;
+			this.to = to;
+		}
+
+		/** a spliterator of the same kind covering [from, to). */
+		abstract S create(int from, int to);
+
+		public S trySplit() {
+			int mid = (index + to) >>> 1;
+			if (mid <= index) {
+				return null;
+			}
+			S prefix = create(index, mid);
+			index = mid;
+			return prefix;
+		}
+
+		public long estimateSize() {
+			return to - index;
+		}
+
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+
+	/**
+	 * the backing array of a {@link ByteRiderArray} to read the field from
+	 * directly, null if the storage is something else.
+	 */
+	private static long [] directData(RecordStorage storage) {
+		if (storage instanceof ByteRiderArray) {
+			return ((ByteRiderArray) storage).data();
+		}
+		return null;
+	}
+
+	static final class IndexSpliterator extends RecordSpliterator<IndexSpliterator>
+		implements Spliterator.OfInt
+	{
+		IndexSpliterator(int from, int to) {
+			super(from, to);
+		}
+
+		@Override IndexSpliterator create(int from, int to) {
+			return new IndexSpliterator(from, to);
+		}
+
+		@Override public int characteristics() {
+			return CHARACTERISTICS | Spliterator.DISTINCT | Spliterator.SORTED
+				| Spliterator.IMMUTABLE;
+		}
+
+		@Override public Comparator<? super Integer> getComparator() {
+			return null;
+		}
+
+		@Override public boolean tryAdvance(IntConsumer action) {
+			if (index < to) {
+				action.accept(index++);
+				return true;
+			}
+			return false;
+		}
+
+		@Override public void forEachRemaining(IntConsumer action) {
+			for (int i = index, end = to; i < end; ++i) {
+				action.accept(i);
+			}
+			index = to;
+		}
+	}
+
+	static final class WordSpliterator extends RecordSpliterator<WordSpliterator>
+		implements Spliterator.OfLong
+	{
+		private final RecordStorage storage;
+		private final int word;
+
+		WordSpliterator(RecordStorage storage, int word, int from, int to) {
+			super(from, to);
+			this.storage = storage;
+			this.word = word;
+		}
+
+		@Override WordSpliterator create(int from, int to) {
+			return new WordSpliterator(storage, word, from, to);
+		}
+
+		@Override public boolean tryAdvance(LongConsumer action) {
+			if (index < to) {
+				action.accept(storage.word(index++, word));
+				return true;
+			}
+			return false;
+		}
+
+		@Override public void forEachRemaining(LongConsumer action) {
+			if (storage instanceof ByteRiderArray) {
+				long [] data = ((ByteRiderArray) storage).data();
+				int stride = storage.layout().words();
+				for (int i = index, end = to; i < end; ++i) {
+					action.accept(data[i * stride + word]);
+				}
+			} else {
+				for (int i = index, end = to; i < end; ++i) {
+					action.accept(storage.word(i, word));
+				}
+			}
+			index = to;
+		}
+	}
+
+	static final class IntFieldSpliterator extends RecordSpliterator<IntFieldSpliterator>
+		implements Spliterator.OfInt
+	{
+		private final IntField field;
+		private final RecordStorage storage;
+
+		IntFieldSpliterator(IntField field, RecordStorage storage, int from, int to) {
+			super(from, to);
+			this.field = field;
+			this.storage = storage;
+		}
+
+		@Override IntFieldSpliterator create(int from, int to) {
+			return new IntFieldSpliterator(field, storage, from, to);
+		}
+
+		@Override public boolean tryAdvance(IntConsumer action) {
+			if (index < to) {
+				action.accept(field.get(storage, index++));
+				return true;
+			}
+			return false;
+		}
+
+		@Override public void forEachRemaining(IntConsumer action) {
+			long [] data = directData(storage);
+			if (data != null) {
+				int stride = storage.layout().words();
+				int word = field.word();
+				for (int i = index, end = to; i < end; ++i) {
+					action.accept(field.get(data[i * stride + word]));
+				}
+			} else {
+				for (int i = index, end = to; i < end; ++i) {
+					action.accept(field.get(storage, i));
+				}
+			}
+			index = to;
+		}
+	}
+
+	static final class LongFieldSpliterator extends RecordSpliterator<LongFieldSpliterator>
+		implements Spliterator.OfLong
+	{
+		private final LongField field;
+		private final RecordStorage storage;
+
+		LongFieldSpliterator(LongField field, RecordStorage storage, int from, int to) {
+			super(from, to);
+			this.field = field;
+			this.storage = storage;
+		}
+
+		@Override LongFieldSpliterator create(int from, int to) {
+			return new LongFieldSpliterator(field, storage, from, to);
+		}
+
+		@Override public boolean tryAdvance(LongConsumer action) {
+			if (index < to) {
+				action.accept(field.get(storage, index++));
+				return true;
+			}
+			return false;
+		}
+
+		@Override public void forEachRemaining(LongConsumer action) {
+			long [] data = directData(storage);
+			if (data != null) {
+				int stride = storage.layout().words();
+				int word = field.word();
+				for (int i = index, end = to; i < end; ++i) {
+					action.accept(field.get(data[i * stride + word]));
+				}
+			} else {
+				for (int i = index, end = to; i < end; ++i) {
+					action.accept(field.get(storage, i));
+				}
+			}
+			index = to;
+		}
+	}
+
+	static final class ObjFieldSpliterator<T> extends RecordSpliterator<ObjFieldSpliterator<T>>
+		implements Spliterator<T>
+	{
+		private final IntMappedObjField<T> field;
+		private final RecordStorage storage;
+
+		ObjFieldSpliterator(IntMappedObjField<T> field, RecordStorage storage, int from, int to) {
+			super(from, to);
+			this.field = field;
+			this.storage = storage;
+		}
+
+		@Override ObjFieldSpliterator<T> create(int from, int to) {
+			return new ObjFieldSpliterator<>(field, storage, from, to);
+		}
+
+		@Override public int characteristics() {
+			// the conversion function may well return null
+			return CHARACTERISTICS & ~Spliterator.NONNULL;
+		}
+
+		@Override public boolean tryAdvance(Consumer<? super T> action) {
+			if (index < to) {
+				action.accept(field.get(storage, index++));
+				return true;
+			}
+			return false;
+		}
+
+		@Override public void forEachRemaining(Consumer<? super T> action) {
+			for (int i = index, end = to; i < end; ++i) {
+				action.accept(field.get(storage, i));
+			}
+			index = to;
+		}
+	}
+}
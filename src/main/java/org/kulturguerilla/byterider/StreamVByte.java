@@ -0,0 +1,160 @@
+package org.kulturguerilla.byterider;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Integer sequences in the Stream VByte layout: the lengths of the values are
+ * kept apart from their bytes, so decoding doesn't branch on every byte.
+ *
+ * The encoding consists of
+ * - the count, as 4 byte little endian int
+ * - one control byte per group of 4 values, 2 bits per value holding its
+ *   length - 1, the first value in the lowest bits
+ * - the values, zigzag encoded, in 1 to 4 little endian bytes each
+ *
+ * <pre>
+ * byte [] encoded = StreamVByte.encode(values);
+ * int [] decoded = StreamVByte.decode(encoded);
+ * </pre>
+ *
+ * A group is decoded with four masked int reads, at offsets and with masks
+ * looked up by its control byte, which is what a shuffle does in the SIMD
+ * variants of the layout. Unlike {@link DeltaCompression}, values take up to 4
+ * bytes, so the whole int range is supported.
+ */
+public final class StreamVByte {
+
+	/** bytes of the count in front of the control bytes. */
+	private static final int HEADER = Integer.BYTES;
+
+	/** bytes taken by the values of a group, per control byte. */
+	private static final byte [] LENGTHS = new byte[256];
+	/** offset of each of the 4 values in a group, per control byte. */
+	private static final byte [] OFFSETS = new byte[256 * 4];
+	/** mask of each of the 4 values in a group, per control byte. */
+	private static final int [] MASKS = new int[256 * 4];
+
+	static {
+		for (int c = 0; c < 256; ++c) {
+			int offset = 0;
+			for (int lane = 0; lane < 4; ++lane) {
+				int length = (c >>> (lane << 1) & 0x3) + 1;
+				OFFSETS[c << 2 | lane] = (byte) offset;
+				MASKS[c << 2 | lane] = length == 4 ? -1 : (1 << (length << 3)) - 1;
+				offset += length;
+			}
+			LENGTHS[c] = (byte) offset;
+		}
+	}
+
+	private StreamVByte() {
+	}
+
+	/** @return bytes needed at most to encode count values */
+	public static int maxEncodedLength(int count) {
+		return Math.addExact(HEADER + (count + 3) / 4, Math.multiplyExact(count, Integer.BYTES));
+	}
+
+	public static byte [] encode(int [] is) {
+		byte [] buffer = new byte[maxEncodedLength(is.length)];
+		int length = encode(is, 0, is.length, buffer, 0);
+		return Arrays.copyOf(buffer, length);
+	}
+
+	public static int [] decode(byte [] bs) {
+		int [] result = new int[count(bs, 0)];
+		decode(bs, 0, result, 0);
+		return result;
+	}
+
+	/**
+	 * encodes src[srcPos, srcPos + count) into dest, starting at destPos.
+	 *
+	 * @return bytes written
+	 * @throws IndexOutOfBoundsException if dest is too small; use
+	 *   {@link #maxEncodedLength} to size it
+	 */
+	public static int encode(int [] src, int srcPos, int count, byte [] dest, int destPos) {
+		checkRange(srcPos, count, src.length);
+		int control = destPos + HEADER;
+		int data = control + (count + 3) / 4;
+		checkRange(destPos, data - destPos, dest.length);
+		ByteBuffer.wrap(dest).order(ByteOrder.LITTLE_ENDIAN).putInt(destPos, count);
+		for (int i = srcPos, end = srcPos + count; i < end; i += 4) {
+			int c = 0;
+			for (int lane = 0, lanes = Math.min(4, end - i); lane < lanes; ++lane) {
+				int n = zigzag(src[i + lane]);
+				int length = Math.max(1, (39 - Integer.numberOfLeadingZeros(n)) >>> 3);
+				for (int b = 0; b < length; ++b) {
+					dest[data++] = (byte) (n >>> (b << 3));
+				}
+				c |= (length - 1) << (lane << 1);
+			}
+			dest[control++] = (byte) c;
+		}
+		return data - destPos;
+	}
+
+	/** @return the number of values encoded starting at src[srcPos] */
+	public static int count(byte [] src, int srcPos) {
+		checkRange(srcPos, HEADER, src.length);
+		return ByteBuffer.wrap(src).order(ByteOrder.LITTLE_ENDIAN).getInt(srcPos);
+	}
+
+	/**
+	 * decodes the values encoded starting at src[srcPos] into dest, starting
+	 * at destPos.
+	 *
+	 * @return values written, see {@link #count}
+	 * @throws IndexOutOfBoundsException if dest is too small, or src is cut off
+	 */
+	public static int decode(byte [] src, int srcPos, int [] dest, int destPos) {
+		int count = count(src, srcPos);
+		checkRange(destPos, count, dest.length);
+		int control = srcPos + HEADER;
+		int data = control + (count + 3) / 4;
+		ByteBuffer in = ByteBuffer.wrap(src).order(ByteOrder.LITTLE_ENDIAN);
+		int i = destPos;
+		int end = destPos + count;
+		// whole groups, as long as the 4 byte reads of all lanes stay in src
+		for (int last = src.length - 4 * Integer.BYTES; i + 4 <= end && data <= last; i += 4) {
+			int c = src[control++] & 0xFF;
+			int o = c << 2;
+			dest[i]     = unzigzag(in.getInt(data) & MASKS[o]);
+			dest[i + 1] = unzigzag(in.getInt(data + OFFSETS[o + 1]) & MASKS[o + 1]);
+			dest[i + 2] = unzigzag(in.getInt(data + OFFSETS[o + 2]) & MASKS[o + 2]);
+			dest[i + 3] = unzigzag(in.getInt(data + OFFSETS[o + 3]) & MASKS[o + 3]);
+			data += LENGTHS[c];
+		}
+		for (; i < end; ++i) {
+			int lane = (i - destPos) & 3;
+			int length = (src[control] >>> (lane << 1) & 0x3) + 1;
+			int n = 0;
+			for (int b = 0; b < length; ++b) {
+				n |= (src[data++] & 0xFF) << (b << 3);
+			}
+			dest[i] = unzigzag(n);
+			if (lane == 3) {
+				++control;
+			}
+		}
+		return count;
+	}
+
+	private static int zigzag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	private static int unzigzag(int n) {
+		return (n >>> 1) ^ -(n & 0x1);
+	}
+
+	private static void checkRange(int from, int count, int length) {
+		if (from < 0 || count < 0 || from > length - count) {
+			throw new IndexOutOfBoundsException(String.format(
+					"range [%d, %d), length %d", from, from + count, length));
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.AtomicFields.*;
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class AtomicFieldsTests {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private final static BoolField flag = br.addBool("flag");
+	private final static IntField counter0 = br.addInt(1 << 16, "counter0");
+	private final static IntField counter1 = br.addInt(1 << 17, "counter1");
+	private final static LongField total = br.addLong(-1, 1L << 20, "total");
+	private final static IntMappedObjField<MyEnum> eField = br.addObj(3, MyEnum::toInt, MyEnum::fromInt, "my enum");
+
+	static final int THREADS = 4;
+	static final int RUNS = 10000;
+
+	@Test public void getAndSet() {
+		AtomicLong word = new AtomicLong();
+		assertThat(AtomicFields.getAndSet(flag, word, true)).isFalse();
+		assertThat(AtomicFields.getAndSet(flag, word, true)).isTrue();
+		assertThat(AtomicFields.getAndSet(counter0, word, 5)).isEqualTo(0);
+		assertThat(AtomicFields.getAndSet(counter0, word, 6)).isEqualTo(5);
+		assertThat(AtomicFields.getAndSet(total, word, -1)).isEqualTo(-1);
+		assertThat(AtomicFields.getAndSet(eField, word, MyEnum.V2)).isEqualTo(MyEnum.NONE);
+		assertThat(flag.get(word.get())).isTrue();
+		assertThat(counter0.get(word.get())).isEqualTo(6);
+		assertThat(eField.get(word.get())).isEqualTo(MyEnum.V2);
+	}
+
+	@Test public void compareAndSetOnlyLooksAtTheField() {
+		AtomicLong word = new AtomicLong(counter1.set(0L, 17));
+		assertThat(compareAndSet(counter0, word, 1, 2)).isFalse();
+		assertThat(compareAndSet(counter0, word, 0, 2)).isTrue();
+		assertThat(compareAndSet(flag, word, true, false)).isFalse();
+		assertThat(compareAndSet(flag, word, false, true)).isTrue();
+		assertThat(compareAndSet(eField, word, MyEnum.V1, MyEnum.V2)).isFalse();
+		assertThat(compareAndSet(eField, word, MyEnum.NONE, MyEnum.V1)).isTrue();
+		assertThat(compareAndSet(total, word, -1, 3)).isTrue();
+		assertThat(counter0.get(word.get())).isEqualTo(2);
+		assertThat(counter1.get(word.get())).isEqualTo(17);
+		assertThat(total.get(word.get())).isEqualTo(3);
+		assertThat(eField.get(word.get())).isEqualTo(MyEnum.V1);
+	}
+
+	@Test public void getAndAddOutOfRangeLeavesWordAlone() {
+		AtomicLong word = new AtomicLong(counter0.set(0L, 1 << 16));
+		assertThatThrownBy(() -> getAndAdd(counter0, word, 1))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(counter0.get(word.get())).isEqualTo(1 << 16);
+	}
+
+	@Test public void getAndAddOverflowIsOutOfRange() {
+		ByteRider full = new ByteRider();
+		IntField i = full.addInt(Integer.MIN_VALUE, Integer.MAX_VALUE, "i");
+		AtomicLong word = new AtomicLong(i.set(0L, Integer.MAX_VALUE));
+		assertThatThrownBy(() -> getAndAdd(i, word, 1))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(i.get(word.get())).isEqualTo(Integer.MAX_VALUE);
+
+		ByteRider fullLong = new ByteRider();
+		LongField l = fullLong.addLong(Long.MIN_VALUE, Long.MAX_VALUE, "l");
+		AtomicLongArray words = new AtomicLongArray(new long [] { l.set(0L, Long.MIN_VALUE) });
+		assertThatThrownBy(() -> getAndAdd(l, words, 0, -1))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(l.get(words.get(0))).isEqualTo(Long.MIN_VALUE);
+	}
+
+	@Test public void fieldsOfTheSecondWord() {
+		ByteRider wide = new ByteRider(2);
+		wide.addInt((1 << 30) - 1, "padding");
+		wide.addInt((1 << 30) - 1, "padding");
+		IntField next = wide.addInt(255, "next");
+		AtomicLongArray words = new AtomicLongArray(2);
+		assertThat(next.word()).isEqualTo(1);
+		getAndAdd(next, words, next.word(), 7);
+		assertThat(next.get(words.get(1))).isEqualTo(7);
+		assertThat(words.get(0)).isZero();
+	}
+
+	@Test public void concurrentUpdatesOfOneWord() throws InterruptedException {
+		AtomicLong word = new AtomicLong(total.set(0L, 0));
+		run(() -> {
+			for (int i = 0; i < RUNS; ++i) {
+				getAndAdd(counter0, word, 1);
+				getAndAdd(counter1, word, 2);
+				getAndAdd(total, word, 3);
+				AtomicFields.getAndSet(flag, word, i % 2 == 0);
+			}
+		});
+		assertThat(counter0.get(word.get())).isEqualTo(THREADS * RUNS);
+		assertThat(counter1.get(word.get())).isEqualTo(2 * THREADS * RUNS);
+		assertThat(total.get(word.get())).isEqualTo(3L * THREADS * RUNS);
+	}
+
+	@Test public void concurrentUpdatesOfArrayElements() throws InterruptedException {
+		AtomicLongArray words = new AtomicLongArray(3);
+		words.set(1, total.set(0L, 0));
+		run(() -> {
+			for (int i = 0; i < RUNS; ++i) {
+				getAndAdd(counter0, words, i % 3, 1);
+				getAndAdd(total, words, 1, 1);
+				while (!compareAndSet(flag, words, 2, false, true)) {
+					// spin until the flag is free
+				}
+				getAndAdd(counter1, words, 2, 1);
+				AtomicFields.getAndSet(flag, words, 2, false);
+			}
+		});
+		int sum = 0;
+		for (int i = 0; i < 3; ++i) {
+			sum += counter0.get(words.get(i));
+		}
+		assertThat(sum).isEqualTo(THREADS * RUNS);
+		assertThat(total.get(words.get(1))).isEqualTo(THREADS * RUNS);
+		assertThat(counter1.get(words.get(2))).isEqualTo(THREADS * RUNS);
+	}
+
+	private void run(Runnable r) throws InterruptedException {
+		ExecutorService es = Executors.newFixedThreadPool(THREADS);
+		for (int i = 0; i < THREADS; ++i) {
+			es.execute(r);
+		}
+		es.shutdown();
+		assertThat(es.awaitTermination(100, TimeUnit.SECONDS)).isTrue();
+	}
+}
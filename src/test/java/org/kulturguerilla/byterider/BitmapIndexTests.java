@@ -0,0 +1,143 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class BitmapIndexTests {
+
+	static ByteRider br = new ByteRider();
+
+	private final static BoolField flag = br.addBool("flag");
+	private final static IntField small = br.addInt(-3, 12, "small");
+	private final static IntMappedObjField<MyEnum> type = br.addEnum(MyEnum.class, "type");
+	private final static IntegerField maybe = br.addNullableInt(0, 100, "maybe");
+	private final static LongField big = br.addLong(1L << 40, "big");
+
+	private static ByteRiderArray random(int n, long seed) {
+		Random random = new Random(seed);
+		ByteRiderArray array = new ByteRiderArray(br, n);
+		array.append(0L, n);
+		for (int i = 0; i < n; ++i) {
+			flag.set(array, i, random.nextBoolean());
+			small.set(array, i, random.nextInt(16) - 3);
+			type.set(array, i, MyEnum.values()[random.nextInt(3)]);
+			if (random.nextInt(4) == 0) {
+				maybe.setNull(array, i);
+			} else {
+				maybe.set(array, i, random.nextInt(101));
+			}
+		}
+		return array;
+	}
+
+	/** the indices of the records matching, the slow way. */
+	private static int [] matching(RecordStorage storage, IntPredicate p) {
+		return IntStream.range(0, storage.size()).filter(p).toArray();
+	}
+
+	@Test public void lookupsMatchRecords() {
+		ByteRiderArray array = random(100_000, 1);
+		BitmapIndex index = new BitmapIndex(array, flag, small, type, maybe);
+
+		assertThat(index.get(flag, true).toArray())
+			.containsExactly(matching(array, i -> flag.get(array, i)));
+		assertThat(index.get(small, 7).toArray())
+			.containsExactly(matching(array, i -> small.get(array, i) == 7));
+		assertThat(index.get(type, MyEnum.V1).toArray())
+			.containsExactly(matching(array, i -> type.get(array, i) == MyEnum.V1));
+		assertThat(index.get(maybe, null).toArray())
+			.containsExactly(matching(array, i -> maybe.isNull(array, i)));
+		assertThat(index.between(small, -1, 2).toArray())
+			.containsExactly(matching(array, i -> small.get(array, i) >= -1 && small.get(array, i) <= 2));
+		assertThat(index.get(small, 100).isEmpty()).isTrue();
+	}
+
+	@Test public void combinedPredicates() {
+		ByteRiderArray array = random(50_000, 2);
+		BitmapIndex index = new BitmapIndex(array, flag, small, type);
+		Bitmap result = index.get(flag, true).and(index.between(small, 0, 5))
+			.andNot(index.get(type, MyEnum.NONE)).or(index.get(small, -3));
+		assertThat(result.toArray()).containsExactly(matching(array,
+				i -> flag.get(array, i) && small.get(array, i) >= 0 && small.get(array, i) <= 5
+					&& type.get(array, i) != MyEnum.NONE || small.get(array, i) == -3));
+	}
+
+	@Test public void setThroughIndexMovesRecord() {
+		ByteRiderArray array = random(1_000, 3);
+		BitmapIndex index = new BitmapIndex(array, small, type);
+		Bitmap sevens = index.get(small, 7);
+		small.set(index, 10, 7);
+		type.set(index, 10, MyEnum.V2);
+		small.set(index, 11, 6);
+		// unindexed fields don't disturb the bitmaps
+		big.set(index, 10, 12345L);
+
+		assertThat(sevens.contains(10)).isTrue();
+		assertThat(sevens.contains(11)).isFalse();
+		assertThat(index.get(small, 6).contains(11)).isTrue();
+		assertThat(index.get(type, MyEnum.V2).contains(10)).isTrue();
+		assertThat(small.get(array, 10)).isEqualTo(7);
+		assertThat(big.get(array, 10)).isEqualTo(12345L);
+		for (int v = -3; v <= 12; ++v) {
+			int value = v;
+			assertThat(index.get(small, v).toArray())
+				.containsExactly(matching(array, i -> small.get(array, i) == value));
+		}
+	}
+
+	@Test public void appendedRecordsAndRebuild() {
+		ByteRiderArray array = random(100, 4);
+		BitmapIndex index = new BitmapIndex(array, small);
+		array.append(small.set(0L, 12));
+		assertThat(index.get(small, 12).contains(100)).isTrue();
+
+		small.set(array, 0, 11);
+		index.rebuild();
+		assertThat(index.get(small, 11).contains(0)).isTrue();
+
+		array.clear();
+		assertThat(index.get(small, 12).isEmpty()).isTrue();
+	}
+
+	@Test public void originalAndFrozenFields() {
+		ByteRider layout = new ByteRider();
+		IntField code = layout.addInt(0, 9, "code");
+		BoolField on = layout.addBool("on");
+		ByteRiderArray array = new ByteRiderArray(layout);
+		for (int i = 0; i < 100; ++i) {
+			array.append();
+			code.set(array, i, i % 10);
+			on.set(array, i, i % 3 == 0);
+		}
+		layout.freeze();
+		IntField frozenCode = layout.frozen(code);
+
+		// indexed by the original field, looked up by the frozen one, and the other way round
+		BitmapIndex index = new BitmapIndex(array, code, layout.frozen(on));
+		assertThat(index.get(frozenCode, 4).toArray())
+			.containsExactly(matching(array, i -> i % 10 == 4));
+		assertThat(index.get(code, 4).toArray())
+			.containsExactly(matching(array, i -> i % 10 == 4));
+		assertThat(index.get(on, true).toArray())
+			.containsExactly(matching(array, i -> i % 3 == 0));
+	}
+
+	@Test public void invalidFields() {
+		ByteRiderArray array = random(1, 5);
+		assertThatThrownBy(() -> new BitmapIndex(array, big))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new BitmapIndex(array, new ByteRider().addBool("other")))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new BitmapIndex(array, small).get(flag, true))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,117 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BitmapTests {
+
+	/** a bitmap and the same indices in a BitSet, sparse and dense chunks mixed. */
+	private static Bitmap random(Random random, BitSet expected) {
+		Bitmap b = new Bitmap();
+		for (int chunk = 0; chunk < 6; ++chunk) {
+			int count = random.nextBoolean() ? 100 : 20_000;
+			for (int i = 0; i < count; ++i) {
+				int index = chunk << 16 | random.nextInt(1 << 16);
+				b.add(index);
+				expected.set(index);
+			}
+		}
+		return b;
+	}
+
+	private static int [] toArray(BitSet bits) {
+		return bits.stream().toArray();
+	}
+
+	@Test public void addRemoveContains() {
+		Bitmap b = Bitmap.of(5, 70_000, 3, 5);
+		assertThat(b.toArray()).containsExactly(3, 5, 70_000);
+		assertThat(b.contains(70_000)).isTrue();
+		assertThat(b.contains(4)).isFalse();
+		assertThat(b.remove(5)).isTrue();
+		assertThat(b.remove(5)).isFalse();
+		assertThat(b.remove(70_000)).isTrue();
+		assertThat(b.toArray()).containsExactly(3);
+		assertThat(b.remove(3)).isTrue();
+		assertThat(b.isEmpty()).isTrue();
+		assertThatThrownBy(() -> Bitmap.of(-1)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void containersConvertBothWays() {
+		Bitmap b = new Bitmap();
+		BitSet expected = new BitSet();
+		for (int i = 0; i < 3 * Bitmap.ARRAY_MAX; i += 2) {
+			b.add(i);
+			expected.set(i);
+		}
+		assertThat(b.cardinality()).isEqualTo(expected.cardinality());
+		for (int i = 0; i < 3 * Bitmap.ARRAY_MAX; i += 4) {
+			b.remove(i);
+			expected.clear(i);
+		}
+		assertThat(b.toArray()).containsExactly(toArray(expected));
+		for (int i = 0; i < 3 * Bitmap.ARRAY_MAX; ++i) {
+			assertThat(b.contains(i)).isEqualTo(expected.get(i));
+		}
+	}
+
+	@Test public void setOperationsMatchBitSet() {
+		Random random = new Random(42);
+		for (int round = 0; round < 5; ++round) {
+			BitSet x = new BitSet();
+			BitSet y = new BitSet();
+			Bitmap a = random(random, x);
+			Bitmap b = random(random, y);
+			int [] before = a.toArray();
+
+			BitSet and = (BitSet) x.clone();
+			and.and(y);
+			BitSet or = (BitSet) x.clone();
+			or.or(y);
+			BitSet andNot = (BitSet) x.clone();
+			andNot.andNot(y);
+
+			assertThat(a.and(b).toArray()).containsExactly(toArray(and));
+			assertThat(a.or(b).toArray()).containsExactly(toArray(or));
+			assertThat(a.andNot(b).toArray()).containsExactly(toArray(andNot));
+			assertThat(a.and(b).cardinality()).isEqualTo(and.cardinality());
+			// operands are left alone
+			assertThat(a.toArray()).containsExactly(before);
+		}
+	}
+
+	@Test public void orAllMatchesBitSet() {
+		Random random = new Random(42);
+		BitSet expected = new BitSet();
+		Bitmap [] bitmaps = new Bitmap[6];
+		for (int i = 0; i < 4; ++i) {
+			bitmaps[i] = random(random, expected);
+		}
+		bitmaps[4] = new Bitmap();
+		bitmaps[5] = Bitmap.of(1 << 20, 3 << 20);
+		expected.set(1 << 20);
+		expected.set(3 << 20);
+		Bitmap all = Bitmap.orAll(bitmaps);
+		assertThat(all.toArray()).containsExactly(toArray(expected));
+		assertThat(Bitmap.orAll().isEmpty()).isTrue();
+
+		// chunks held by a single operand are copied, not shared
+		all.add((3 << 20) + 1);
+		assertThat(bitmaps[5].toArray()).containsExactly(1 << 20, 3 << 20);
+	}
+
+	@Test public void copyIsIndependent() {
+		Bitmap a = Bitmap.of(1, 2, 3);
+		Bitmap copy = a.copy();
+		a.add(4);
+		assertThat(copy).isEqualTo(Bitmap.of(1, 2, 3));
+		StringBuilder sb = new StringBuilder();
+		a.forEach(i -> sb.append(i));
+		assertThat(sb.toString()).isEqualTo("1234");
+	}
+}
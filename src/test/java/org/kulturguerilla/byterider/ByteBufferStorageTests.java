@@ -0,0 +1,81 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class ByteBufferStorageTests {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private final static BoolField drivable = br.addBool("isDrivable");
+	private final static IntField net2Class = br.addInt(6, "net2Class");
+	private final static LongField id = br.addLong(1L << 50, "id");
+
+	@Test public void directStorageStartsCleared() {
+		ByteBufferStorage storage = ByteBufferStorage.allocateDirect(br, 100);
+		assertThat(storage.size()).isEqualTo(100);
+		assertThat(storage.buffer().isDirect()).isTrue();
+		for (int i = 0; i < storage.size(); ++i) {
+			assertThat(storage.word(i)).isZero();
+		}
+	}
+
+	@Test public void fieldsReadAndWriteRecords() {
+		ByteBufferStorage storage = ByteBufferStorage.allocateDirect(br, 100);
+		for (int i = 0; i < storage.size(); ++i) {
+			drivable.set(storage, i, i % 3 == 0);
+			net2Class.set(storage, i, i % 7);
+			id.set(storage, i, (1L << 40) + i);
+		}
+		for (int i = 0; i < storage.size(); ++i) {
+			assertThat(drivable.get(storage, i)).isEqualTo(i % 3 == 0);
+			assertThat(net2Class.get(storage, i)).isEqualTo(i % 7);
+			assertThat(id.get(storage, i)).isEqualTo((1L << 40) + i);
+		}
+	}
+
+	@Test public void wrapStartsAtPositionAndKeepsByteOrder() {
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 16).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(4, 0x0102030405060708L);
+		buffer.position(4);
+
+		ByteBufferStorage storage = ByteBufferStorage.wrap(br, buffer);
+		assertThat(storage.size()).isEqualTo(2);
+		assertThat(storage.word(0)).isEqualTo(0x0102030405060708L);
+
+		storage.setWord(1, 42L);
+		assertThat(buffer.get(12)).isEqualTo((byte) 42);
+		assertThat(buffer.position()).isEqualTo(4);
+	}
+
+	@Test public void wrapRejectsPartialRecords() {
+		assertThatThrownBy(() -> ByteBufferStorage.wrap(br, ByteBuffer.allocate(12)))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void accessOutsideFails() {
+		ByteBufferStorage storage = ByteBufferStorage.allocateDirect(br, 2);
+		assertThatThrownBy(() -> storage.word(2))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> storage.setWord(-1, 0L))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> storage.word(1 << 29))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void toArrayCopiesToHeap() {
+		ByteBufferStorage storage = ByteBufferStorage.allocateDirect(br, 3);
+		net2Class.set(storage, 1, 5);
+		ByteRiderArray array = storage.toArray();
+		assertThat(array.size()).isEqualTo(3);
+		assertThat(net2Class.get(array, 1)).isEqualTo(5);
+		assertThat(array.word(0)).isZero();
+	}
+}
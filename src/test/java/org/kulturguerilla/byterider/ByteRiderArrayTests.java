@@ -0,0 +1,155 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class ByteRiderArrayTests {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private final static BoolField drivable = br.addBool("isDrivable");
+	private final static IntField net2Class = br.addInt(6, "net2Class");
+	private final static LongField length = br.addLong(-1000, 1L << 33, "length");
+	private final static IntMappedObjField<MyEnum> eField = br.addObj(3, MyEnum::toInt, MyEnum::fromInt, "my enum");
+
+	@Test public void appendGrows() {
+		ByteRiderArray array = new ByteRiderArray(br, 1);
+		for (int i = 0; i < 100; ++i) {
+			assertThat(array.append()).isEqualTo(i);
+		}
+		assertThat(array.size()).isEqualTo(100);
+		assertThat(array.capacity()).isGreaterThanOrEqualTo(100);
+	}
+
+	@Test public void fieldsReadAndWriteRecords() {
+		ByteRiderArray array = new ByteRiderArray(br);
+		for (int i = 0; i < 50; ++i) {
+			array.append();
+			drivable.set(array, i, i % 2 == 0);
+			net2Class.set(array, i, i % 7);
+			length.set(array, i, i * 1000L - 1000);
+			eField.set(array, i, MyEnum.fromInt(i % 3));
+		}
+		for (int i = 0; i < 50; ++i) {
+			assertThat(drivable.get(array, i)).isEqualTo(i % 2 == 0);
+			assertThat(net2Class.get(array, i)).isEqualTo(i % 7);
+			assertThat(length.get(array, i)).isEqualTo(i * 1000L - 1000);
+			assertThat(eField.get(array, i)).isEqualTo(MyEnum.fromInt(i % 3));
+		}
+	}
+
+	@Test public void settingOneRecordLeavesNeighboursAlone() {
+		ByteRiderArray array = new ByteRiderArray(br);
+		array.append(0L, 3);
+		net2Class.set(array, 1, 5);
+		assertThat(array.word(0)).isZero();
+		assertThat(array.word(2)).isZero();
+		assertThat(net2Class.get(array, 1)).isEqualTo(5);
+	}
+
+	@Test public void accessBeyondSizeFails() {
+		ByteRiderArray array = new ByteRiderArray(br, 10);
+		array.append();
+		assertThatThrownBy(() -> drivable.get(array, 1))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> array.setWord(-1, 0L))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void fill() {
+		ByteRiderArray array = new ByteRiderArray(br);
+		array.append(0L, 10);
+		array.fill(2, 5, net2Class.set(drivable.set(0L), 3));
+		for (int i = 0; i < 10; ++i) {
+			boolean filled = i >= 2 && i < 5;
+			assertThat(drivable.get(array, i)).isEqualTo(filled);
+			assertThat(net2Class.get(array, i)).isEqualTo(filled ? 3 : 0);
+		}
+	}
+
+	@Test public void copy() {
+		ByteRiderArray src = ByteRiderArray.wrap(br, new long[] {1, 2, 3, 4});
+		ByteRiderArray dest = new ByteRiderArray(br);
+		dest.append(0L, 4);
+		src.copy(1, dest, 0, 3);
+		assertThat(dest.toArray()).containsExactly(2, 3, 4, 0);
+
+		src.copy(0, src, 1, 3);
+		assertThat(src.toArray()).containsExactly(1, 1, 2, 3);
+
+		assertThatThrownBy(() -> src.copy(2, dest, 0, 3))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void copyOfIsIndependent() {
+		ByteRiderArray array = ByteRiderArray.wrap(br, new long[] {1, 2});
+		ByteRiderArray copy = array.copyOf();
+		copy.setWord(0, 42);
+		copy.append(7);
+		assertThat(array.toArray()).containsExactly(1, 2);
+		assertThat(copy.toArray()).containsExactly(42, 2, 7);
+	}
+
+	@Test public void multiWordRecords() {
+		ByteRider wide = new ByteRider(2);
+		LongField a = wide.addLong(1L << 60, "a");
+		LongField b = wide.addLong(1L << 60, "b");
+		ByteRiderArray array = new ByteRiderArray(wide, 1);
+		array.append(new long[] {1, 2}, 3);
+		array.append();
+		assertThat(array.size()).isEqualTo(4);
+		assertThat(array.toArray()).containsExactly(1, 2, 1, 2, 1, 2, 0, 0);
+
+		a.set(array, 3, 1L << 60);
+		b.set(array, 3, (1L << 60) - 1);
+		assertThat(a.get(array, 3)).isEqualTo(1L << 60);
+		assertThat(b.get(array, 3)).isEqualTo((1L << 60) - 1);
+		assertThat(a.get(array, 2)).isEqualTo(a.get(array.word(2)));
+
+		array.copy(3, array, 0, 1);
+		assertThat(b.get(array, 0)).isEqualTo((1L << 60) - 1);
+		assertThat(ByteRiderArray.wrap(wide, array.toArray()).size()).isEqualTo(4);
+	}
+
+	@Test public void multiWordRecordsNeedArrays() {
+		ByteRider wide = new ByteRider(2);
+		ByteRiderArray array = new ByteRiderArray(wide);
+		assertThatThrownBy(() -> array.append(1L))
+			.isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> array.append(new long[] {1}))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> ByteRiderArray.wrap(wide, new long[3]))
+			.isInstanceOf(IllegalArgumentException.class);
+		array.append();
+		assertThatThrownBy(() -> array.word(0, 2))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void negativeCountsAreRejected() {
+		ByteRiderArray array = new ByteRiderArray(br);
+		array.append(0L, 3);
+		assertThatThrownBy(() -> array.append(1L, -1))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> array.append(new long[] {1L}, -2))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(array.size()).isEqualTo(3);
+	}
+
+	@Test public void capacityBeyondAnArrayIsRejected() {
+		ByteRider wide = new ByteRider(2);
+		assertThatThrownBy(() -> new ByteRiderArray(wide, Integer.MAX_VALUE))
+			.isInstanceOf(ArithmeticException.class);
+		ByteRiderArray array = new ByteRiderArray(wide);
+		assertThatThrownBy(() -> array.ensureCapacity(Integer.MAX_VALUE / 2 + 1))
+			.isInstanceOf(ArithmeticException.class);
+		array.append(new long[2], 1);
+		assertThatThrownBy(() -> array.append(new long[2], Integer.MAX_VALUE))
+			.isInstanceOf(ArithmeticException.class);
+		assertThat(array.size()).isEqualTo(1);
+	}
+}
@@ -55,6 +55,43 @@ public class ByteRiderTests {
 		V1, V2, V3;
 	}
 
+	@Test public void enumRoundTrip() {
+		ByteRider br = new ByteRider();
+		br.addBool("before");
+		IntMappedObjField<TestEnum> e = br.addEnum(TestEnum.class, "test enum");
+		for (TestEnum v : TestEnum.values()) {
+			long data = e.set(-1L, v);
+			assertThat(e.get(data)).isEqualTo(v);
+			assertThat(e.clear(data) | e.mask()).isEqualTo(-1L);
+		}
+		assertThat(e.get(0L)).isEqualTo(TestEnum.V1);
+	}
+
+	@Test public void enumOnStorage() {
+		ByteRider br = new ByteRider(2);
+		br.addLong((1L << 62) - 1, "filler");
+		br.addInt(3, "filler");
+		IntMappedObjField<TestEnum> e = br.addEnum(TestEnum.class, "test enum");
+		ByteRiderArray array = new ByteRiderArray(br);
+		array.append();
+		e.set(array, 0, TestEnum.V3);
+		assertThat(e.get(array, 0)).isEqualTo(TestEnum.V3);
+		assertThat(e.word()).isEqualTo(1);
+	}
+
+	@Test public void intMappedObjRoundTrip() {
+		String [] names = {"zero", "one", "two"};
+		List<String> lookup = asList(names);
+		ByteRider br = new ByteRider();
+		IntMappedObjField<String> s = br.addIntMappedObj(names.length,
+				lookup::indexOf, i -> names[i], "names");
+		for (String name : names) {
+			assertThat(s.get(s.set(0L, name))).isEqualTo(name);
+		}
+		assertThatThrownBy(() -> s.set(0L, "unknown"))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
 	// tests for Int fields...
 	@Test public void mask() {
 		assertThat(createIntField(0, 0, 3, "test").mask()).isEqualTo(0b11);
@@ -177,6 +214,97 @@ public class ByteRiderTests {
 		assertThat(lowestUnusedOffset(asList(createBoolField(63, "bit0")))).isEqualTo(64);
 	}
 
+	// multi word layouts
+	@Test public void multiWordStorageOverflow() {
+		ByteRider br = new ByteRider(2);
+		br.addLong((1L << 62) - 1, "00 to 61");
+		br.addLong((1L << 62) - 1, "62 to 123");
+		assertThatThrownBy(() -> br.addInt(16, "124 to 128"))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void fieldsBeyondFirstWord() {
+		ByteRider br = new ByteRider(3);
+		br.addLong((1L << 62) - 1, "00 to 61");
+		br.addInt(3, "62 to 63");
+		BoolField b64 = br.addBool("64");
+		IntField i65 = br.addInt(-5, 10, "65 to 68");
+		assertThat(b64.word()).isEqualTo(1);
+		assertThat(b64.mask()).isEqualTo(1L);
+		assertThat(i65.word()).isEqualTo(1);
+		assertThat(i65.mask()).isEqualTo(0b11110L);
+		assertThat(i65.highestBit()).isEqualTo(68);
+		assertThat(i65.get(i65.set(0L, -3))).isEqualTo(-3);
+		br.checkFields();
+	}
+
+	@Test public void fieldsDontStraddleWords() {
+		ByteRider br = new ByteRider(2);
+		BoolField first = br.addBool("first");
+		IntField low = br.addInt((1 << 30) - 1, "1 to 30");
+		LongField next = br.addLong(-(1L << 40), 1L << 40, "64 to 105");
+		assertThat(first.mask()).isEqualTo(1L);
+		assertThat(low.mask()).isEqualTo(0x7FFFFFFEL);
+		assertThat(next.word()).isEqualTo(1);
+		assertThat(next.mask()).isEqualTo((1L << 42) - 1);
+		assertThat(next.mask(0)).isZero();
+		assertThat(next.get(next.set(0L, -17))).isEqualTo(-17);
+		IntField rest = br.addInt(1 << 21, "106 to 127");
+		assertThat(rest.highestBit()).isEqualTo(127);
+		assertThatThrownBy(() -> br.addBool("128"))
+			.isInstanceOf(IllegalArgumentException.class);
+		br.checkFields();
+	}
+
+	@Test public void fieldsMovedToTheNextWordRoundTrip() {
+		ByteRider br = new ByteRider(2);
+		BoolField first = br.addBool("first");
+		LongField split = br.addLong(-(1L << 40), 1L << 40, "1 to 42");
+		IntField padding = br.addInt((1 << 20) - 1, "43 to 62");
+		IntField splitInt = br.addInt(-1000, 1000, "64 to 74");
+		BoolField last = br.addBool("75");
+		br.checkFields();
+		assertThat(splitInt.word()).isEqualTo(1);
+		assertThat(splitInt.mask()).isEqualTo(0x7FFL);
+		assertThat(last.highestBit()).isEqualTo(75);
+
+		ByteRiderArray array = new ByteRiderArray(br);
+		long [] values = { -(1L << 40), -1, 0, 1, 1L << 40, 123456789012L };
+		for (long v : values) {
+			int i = array.append();
+			split.set(array, i, v);
+			splitInt.set(array, i, (int) (v % 1000));
+			last.set(array, i, true);
+		}
+		for (int i = 0; i < values.length; ++i) {
+			assertThat(split.get(array, i)).isEqualTo(values[i]);
+			assertThat(splitInt.get(array, i)).isEqualTo((int) (values[i] % 1000));
+			assertThat(first.get(array, i)).isFalse();
+			assertThat(padding.get(array, i)).isZero();
+			assertThat(last.get(array, i)).isTrue();
+		}
+		assertThatThrownBy(() -> splitInt.set(array, 0, 1001))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void offsetsCrossingWordsAreRejected() {
+		assertThatThrownBy(() -> createIntField(60, 0, 255, "60 to 67"))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> createLongField(100, 0, 1L << 40, "100 to 140"))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(createIntField(56, 0, 255, "56 to 63").highestBit()).isEqualTo(63);
+	}
+
+	@Test public void overlapInSecondWord() {
+		BitField b65 = createBoolField(65, "bit65");
+		BitField second = createIntField(64, 0, 255, "64 to 71");
+		BitField b1 = createBoolField(1, "bit1");
+		checkFields(b1, b65);
+		assertThatThrownBy(() -> checkFields(b1, second, b65))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("bit65");
+	}
+
 	// test mask computation for Size enum
 	@Test public void sizeMasks() {
 		assertThat(Size.BYTE_SET.mask()).isEqualTo(0xFF);
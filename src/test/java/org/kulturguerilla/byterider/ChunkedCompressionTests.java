@@ -0,0 +1,67 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChunkedCompressionTests {
+
+	private static int [] randomWalk(int length) {
+		Random random = new Random(42);
+		int [] values = new int[length];
+		int current = 0;
+		for (int i = 0; i < length; ++i) {
+			current += random.nextInt(2001) - 1000;
+			values[i] = current;
+		}
+		return values;
+	}
+
+	@Test public void roundTrips() {
+		for (int length : new int[] {0, 1, 999, 1000, 1001, 25_000}) {
+			int [] values = randomWalk(length);
+			byte [] encoded = ChunkedCompression.encode(values, 1000);
+			assertThat(ChunkedCompression.count(encoded)).isEqualTo(length);
+			assertThat(ChunkedCompression.decode(encoded)).as("%d values", length).containsExactly(values);
+		}
+	}
+
+	@Test public void largeInputs() {
+		int [] values = randomWalk(1_000_000);
+		byte [] encoded = ChunkedCompression.encode(values);
+		assertThat(encoded.length).isLessThan(DeltaCompression.encode(values, DeltaCompression.Mode.DELTAS).length);
+		int [] dest = new int[values.length + 3];
+		assertThat(ChunkedCompression.decode(encoded, dest, 3)).isEqualTo(values.length);
+		assertThat(Arrays.copyOfRange(dest, 3, dest.length)).containsExactly(values);
+	}
+
+	@Test public void chunksAreIndependent() {
+		int [] values = randomWalk(3000);
+		byte [] encoded = ChunkedCompression.encode(values, 1000);
+		ByteBuffer header = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+		// the second chunk starts after the header and the bases and end offsets
+		int start = 3 * 4 + 3 * 8;
+		int base = header.getInt(12 + 8);
+		int firstEnd = header.getInt(12 + 4);
+		assertThat(base).isEqualTo(values[1000]);
+		int [] second = new int[1000];
+		DeltaCompression.decodePacked(encoded, start + firstEnd, base, second, 0);
+		assertThat(second).containsExactly(Arrays.copyOfRange(values, 1000, 2000));
+	}
+
+	@Test public void checks() {
+		byte [] encoded = ChunkedCompression.encode(randomWalk(100), 10);
+		assertThatThrownBy(() -> ChunkedCompression.decode(encoded, new int[99], 0))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> ChunkedCompression.encode(new int[10], 0))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> ChunkedCompression.decode(new byte[5]))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,83 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class ColumnCompressionTests {
+
+	static ByteRider br = new ByteRider(2);
+
+	private final static BoolField drivable = br.addBool("isDrivable");
+	private final static IntField net2Class = br.addInt(6, "net2Class");
+	private final static IntField speed = br.addInt(-100, 300, "speed");
+	private final static IntMappedObjField<MyEnum> type = br.addEnum(MyEnum.class, "type");
+	private final static LongField length = br.addLong(-1000, 1L << 60, "length");  // the second word
+
+	private static ByteRiderArray segments(int count) {
+		Random random = new Random(42);
+		ByteRiderArray array = new ByteRiderArray(br, count);
+		long position = 0;
+		for (int i = 0; i < count; ++i) {
+			array.append();
+			position += random.nextInt(500);
+			drivable.set(array, i, random.nextBoolean());
+			net2Class.set(array, i, random.nextInt(7));
+			length.set(array, i, position);
+			speed.set(array, i, 50);
+			type.set(array, i, MyEnum.values()[random.nextInt(MyEnum.values().length)]);
+		}
+		return array;
+	}
+
+	@Test public void roundTrips() {
+		for (int count : new int[] {0, 1, 63, 64, 65, 1000}) {
+			ByteRiderArray array = segments(count);
+			ByteRiderArray restored = ColumnCompression.decode(ColumnCompression.encode(array), br);
+			assertThat(restored.size()).isEqualTo(count);
+			assertThat(restored.toArray()).as("%d records", count).containsExactly(array.toArray());
+		}
+	}
+
+	@Test public void keepsBitsOutsideOfFields() {
+		ByteRiderArray array = segments(100);
+		for (int i = 0; i < 100; i += 3) {
+			array.setWord(i, 1, array.word(i, 1) | 1L << 63);
+		}
+		assertThat(ColumnCompression.decode(ColumnCompression.encode(array), br).toArray())
+			.containsExactly(array.toArray());
+	}
+
+	@Test public void range() {
+		ByteRiderArray array = segments(200);
+		ByteRiderArray restored = ColumnCompression.decode(ColumnCompression.encode(array, 50, 150), br);
+		assertThat(restored.size()).isEqualTo(100);
+		for (int i = 0; i < 100; ++i) {
+			assertThat(length.get(restored, i)).isEqualTo(length.get(array, 50 + i));
+			assertThat(speed.get(restored, i)).isEqualTo(50);
+		}
+	}
+
+	@Test public void smallerThanWords() {
+		ByteRiderArray array = segments(100_000);
+		// bools, classes and enums take their few bits, speed next to nothing,
+		// length two bytes as delta
+		assertThat(ColumnCompression.encode(array).length).isLessThan(100_000 * 16 / 4);
+	}
+
+	@Test public void rejectsOtherLayouts() {
+		byte [] encoded = ColumnCompression.encode(segments(10));
+		ByteRider other = new ByteRider(2);
+		other.addInt(6, "net2Class");
+		assertThatThrownBy(() -> ColumnCompression.decode(encoded, other))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> ColumnCompression.decode(encoded, new ByteRider()))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
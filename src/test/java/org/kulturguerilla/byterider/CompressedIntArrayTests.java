@@ -0,0 +1,76 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompressedIntArrayTests {
+
+	private static int [] randomWalk(Random random, int length, int step) {
+		int [] values = new int[length];
+		int current = random.nextInt();
+		for (int i = 0; i < length; ++i) {
+			current += random.nextInt(2 * step + 1) - step;
+			values[i] = current;
+		}
+		return values;
+	}
+
+	@Test public void getEveryIndex() {
+		Random random = new Random(42);
+		for (int interval : new int[] {1, 2, 7, 64, 1000}) {
+			int [] values = randomWalk(random, 500, 1000);
+			CompressedIntArray a = CompressedIntArray.of(values, 0, values.length, interval);
+			assertThat(a.length()).isEqualTo(500);
+			assertThat(a.interval()).isEqualTo(interval);
+			for (int i = 0; i < values.length; ++i) {
+				assertThat(a.get(i)).as("interval %d, index %d", interval, i).isEqualTo(values[i]);
+			}
+			assertThat(a.toArray()).containsExactly(values);
+		}
+	}
+
+	@Test public void ranges() {
+		Random random = new Random(1);
+		int [] values = new int[1000];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = random.nextInt();  // deltas wrap around
+		}
+		CompressedIntArray a = CompressedIntArray.of(values, 0, values.length, 16);
+		for (int n = 0; n < 200; ++n) {
+			int from = random.nextInt(values.length + 1);
+			int to = from + random.nextInt(values.length + 1 - from);
+			assertThat(a.decodeRange(from, to)).containsExactly(Arrays.copyOfRange(values, from, to));
+		}
+		int [] dest = new int[12];
+		assertThat(a.get(63, dest, 2, 10)).isEqualTo(10);
+		assertThat(Arrays.copyOfRange(dest, 2, 12)).containsExactly(Arrays.copyOfRange(values, 63, 73));
+	}
+
+	@Test public void subrange() {
+		int [] values = randomWalk(new Random(2), 300, 50);
+		CompressedIntArray a = CompressedIntArray.of(values, 100, 250, 10);
+		assertThat(a.toArray()).containsExactly(Arrays.copyOfRange(values, 100, 250));
+		assertThat(CompressedIntArray.of(new int[0]).toArray()).isEmpty();
+	}
+
+	@Test public void smallForSlowlyChangingValues() {
+		int [] values = randomWalk(new Random(3), 100_000, 60);
+		CompressedIntArray a = CompressedIntArray.of(values);
+		// one byte per delta, one bit per value for the index
+		assertThat(a.sizeInBytes()).isLessThanOrEqualTo(100_000 + 100_000 / 8 + 8);
+	}
+
+	@Test public void checks() {
+		CompressedIntArray a = CompressedIntArray.of(new int[] {1, 2, 3});
+		assertThatThrownBy(() -> a.get(3)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> a.decodeRange(2, 4)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> a.get(0, new int[2], 0, 3)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> CompressedIntArray.of(new int[3], 0, 3, 0))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,143 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.lang.reflect.Method;
+import java.util.Random;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class FrozenFieldsTests {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private final static BoolField drivable = br.addBool("isDrivable");
+	private final static IntField net2Class = br.addInt(-3, 60, "net2Class");
+	private final static LongField length = br.addLong(-1000, 1L << 33, "length");
+	private final static IntMappedObjField<MyEnum> eField = br.addObj(3, MyEnum::toInt, MyEnum::fromInt, "my enum");
+	private final static BoolField topBit;
+	static {
+		br.addInt(1 << 12, "filler");
+		topBit = br.addBool("top bit");
+		br.freeze();
+	}
+
+	@Test public void frozenFieldsBehaveLikeTheOriginals() {
+		BoolField fDrivable = br.frozen(drivable);
+		IntField fNet2Class = br.frozen(net2Class);
+		LongField fLength = br.frozen(length);
+		IntMappedObjField<MyEnum> fEField = br.frozen(eField);
+		BoolField fTopBit = br.frozen(topBit);
+
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; ++i) {
+			long data = random.nextLong();
+			assertThat(fDrivable.get(data)).isEqualTo(drivable.get(data));
+			assertThat(fNet2Class.get(data)).isEqualTo(net2Class.get(data));
+			assertThat(fLength.get(data)).isEqualTo(length.get(data));
+			assertThat(fTopBit.get(data)).isEqualTo(topBit.get(data));
+			assertThat(fDrivable.clear(data)).isEqualTo(drivable.clear(data));
+			assertThat(fLength.clear(data)).isEqualTo(length.clear(data));
+
+			boolean b = random.nextBoolean();
+			int n = random.nextInt(64) - 3;
+			long l = random.nextInt(1 << 20) - 1000L;
+			MyEnum e = MyEnum.fromInt(random.nextInt(3));
+			assertThat(fDrivable.set(data, b)).isEqualTo(drivable.set(data, b));
+			assertThat(fTopBit.set(data, b)).isEqualTo(topBit.set(data, b));
+			assertThat(fTopBit.set(data)).isEqualTo(topBit.set(data));
+			assertThat(fNet2Class.set(data, n)).isEqualTo(net2Class.set(data, n));
+			assertThat(fLength.set(data, l)).isEqualTo(length.set(data, l));
+			assertThat(fEField.set(data, e)).isEqualTo(eField.set(data, e));
+			assertThat(fEField.get(fEField.set(data, e))).isEqualTo(e);
+		}
+	}
+
+	@Test public void frozenFieldsKeepTheirMetadata() {
+		IntField fNet2Class = br.frozen(net2Class);
+		assertThat(fNet2Class.name()).isEqualTo(net2Class.name());
+		assertThat(fNet2Class.mask()).isEqualTo(net2Class.mask());
+		assertThat(fNet2Class.highestBit()).isEqualTo(net2Class.highestBit());
+		assertThat(fNet2Class.minValue()).isEqualTo(-3);
+		assertThat(fNet2Class.maxValue()).isEqualTo(60);
+		assertThat(br.frozen(topBit).highestBit()).isEqualTo(topBit.highestBit());
+		assertThat(br.fields()).contains(fNet2Class);
+	}
+
+	@Test public void frozenFieldsCheckRanges() {
+		IntField fNet2Class = br.frozen(net2Class);
+		LongField fLength = br.frozen(length);
+		assertThatThrownBy(() -> fNet2Class.set(0L, 61))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> fLength.set(0L, -1001))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void frozenFieldsWorkOnStorage() {
+		ByteRiderArray array = new ByteRiderArray(br);
+		array.append(0L, 2);
+		br.frozen(net2Class).set(array, 1, 17);
+		assertThat(net2Class.get(array, 1)).isEqualTo(17);
+		assertThat(br.frozen(net2Class).get(array, 0)).isEqualTo(-3);
+	}
+
+	@Test public void frozenLayoutRefusesNewFields() {
+		assertThat(br.isFrozen()).isTrue();
+		assertThat(br.freeze()).isSameAs(br);
+		assertThatThrownBy(() -> br.addBool("late"))
+			.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void foreignFieldsAreRejected() {
+		ByteRider other = new ByteRider(Size.LONG_SET);
+		BoolField foreign = other.addBool("foreign");
+		assertThatThrownBy(() -> br.frozen(foreign))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void fieldsOfTheSecondWord() {
+		ByteRider wide = new ByteRider(2);
+		wide.addLong(1L << 40, "a");
+		IntField b = wide.addInt(Integer.MAX_VALUE, "b");
+		IntField frozen = wide.frozen(b);
+		assertThat(frozen.word()).isEqualTo(1);
+		assertThat(frozen.mask()).isEqualTo(b.mask());
+		assertThat(frozen.get(b.set(0L, 12345))).isEqualTo(12345);
+	}
+
+	@Test public void frozenFieldsAreSpecialized() throws Exception {
+		// hidden classes from java 15, anonymous classes before
+		IntField fNet2Class = br.frozen(net2Class);
+		assertThat(fNet2Class.getClass()).isNotEqualTo(IntImpl.class);
+		assertThat(fNet2Class).isInstanceOf(IntImpl.class);
+		assertThat(br.frozen(length).getClass()).isNotEqualTo(fNet2Class.getClass());
+		assertThat(br.frozen(drivable).getClass()).isNotEqualTo(BoolImpl.class);
+		try {
+			Method isHidden = Class.class.getMethod("isHidden");
+			assertThat(isHidden.invoke(fNet2Class.getClass())).isEqualTo(true);
+		} catch (NoSuchMethodException e) {
+			// java 8 to 14
+		}
+	}
+
+	@Test public void spunMethodsDeclareTheirStack() {
+		AccessorSpinner.ClassFile cf = new AccessorSpinner.ClassFile("Test", IntImpl.class);
+		AccessorSpinner.Code get = cf.method("get", "(J)I", 3);
+		get.lload(1).ldc(0xF0L).land().ldc(4).lushr().ldc(-3L).ladd().l2i().ireturn();
+		assertThat(get.maxStack()).isEqualTo(4);
+
+		AccessorSpinner.Code set = cf.method("set", "(JI)J", 4);
+		set.iload(3).i2l().ldc(-3L).ldc(12L).checkRange()
+			.lload(1).ldc(~0xF0L).land()
+			.iload(3).i2l().ldc(-3L).lsub().ldc(4).lshl().lor().lreturn();
+		assertThat(set.maxStack()).isEqualTo(6);
+
+		assertThat(AccessorSpinner.Code.slots("JIJJLjava/lang/String;I")).isEqualTo(9);
+		assertThat(AccessorSpinner.Code.slots("[J[[Ljava/lang/Object;Z")).isEqualTo(3);
+		assertThat(AccessorSpinner.Code.slots("V")).isZero();
+	}
+}
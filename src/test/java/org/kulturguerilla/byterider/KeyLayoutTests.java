@@ -0,0 +1,104 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class KeyLayoutTests {
+
+	static ByteRider key = ByteRider.keyLayout(Size.LONG_SET);
+
+	private final static IntField tile = key.addInt(-1000, 1000, "tile");
+	private final static IntMappedObjField<MyEnum> type = key.addEnum(MyEnum.class, "type");
+	private final static BoolField flag = key.addBool("flag");
+	private final static LongField id = key.addLong(-5, 1L << 40, "id");
+
+	private static int compareFields(long a, long b) {
+		int c = Integer.compare(tile.get(a), tile.get(b));
+		if (c == 0) {
+			c = Integer.compare(type.get(a).ordinal(), type.get(b).ordinal());
+		}
+		if (c == 0) {
+			c = Boolean.compare(flag.get(a), flag.get(b));
+		}
+		if (c == 0) {
+			c = Long.compare(id.get(a), id.get(b));
+		}
+		return c;
+	}
+
+	private static long randomKey(Random random) {
+		long k = tile.set(0L, random.nextInt(21) * 100 - 1000);
+		k = type.set(k, MyEnum.values()[random.nextInt(3)]);
+		k = flag.set(k, random.nextBoolean());
+		return id.set(k, random.nextInt(20) - 5);
+	}
+
+	@Test public void unsignedComparisonIsFieldOrder() {
+		Random random = new Random(42);
+		for (int i = 0; i < 10_000; ++i) {
+			long a = randomKey(random);
+			long b = randomKey(random);
+			assertThat(Integer.signum(Long.compareUnsigned(a, b)))
+				.isEqualTo(Integer.signum(compareFields(a, b)));
+		}
+	}
+
+	@Test public void firstFieldIsMostSignificant() {
+		assertThat(tile.highestBit()).isEqualTo(63);
+		assertThat(Long.numberOfLeadingZeros(tile.mask())).isZero();
+		assertThat(id.highestBit()).isLessThan(flag.highestBit());
+		assertThat(key.isKeyLayout()).isTrue();
+		assertThat(new ByteRider().isKeyLayout()).isFalse();
+	}
+
+	@Test public void smallerSizesUseTheirTopBits() {
+		ByteRider small = ByteRider.keyLayout(Size.SHORT_SET);
+		IntField a = small.addInt(-3, 3, "a");
+		IntField b = small.addInt(255, "b");
+		assertThat(a.highestBit()).isEqualTo(15);
+		assertThat(Long.compareUnsigned(b.set(a.set(0L, -3), 255), a.set(0L, -2))).isNegative();
+		assertThatThrownBy(() -> small.addInt(255, "c"))
+			.isInstanceOf(IllegalArgumentException.class);
+		// the failed field didn't take any bits
+		assertThat(small.addBool("d").highestBit()).isEqualTo(4);
+	}
+
+	@Test public void multiWordKeys() {
+		ByteRider wide = ByteRider.keyLayout(2);
+		LongField a = wide.addLong((1L << 40) - 1, "a");
+		LongField b = wide.addLong((1L << 40) - 1, "b");
+		IntField c = wide.addInt(1000, "c");
+		assertThat(a.word()).isZero();
+		assertThat(b.word()).isEqualTo(1);
+		assertThat(b.highestBit()).isEqualTo(127);
+		// c has to come after b, even though it would fit into the first word
+		assertThat(c.word()).isEqualTo(1);
+		assertThat(c.highestBit()).isLessThan(b.highestBit() - 39);
+
+		Random random = new Random(42);
+		ByteRiderArray keys = new ByteRiderArray(wide);
+		for (int i = 0; i < 1000; ++i) {
+			keys.append();
+			a.set(keys, i, random.nextInt(10));
+			b.set(keys, i, random.nextInt(10));
+			c.set(keys, i, random.nextInt(10));
+		}
+		for (int i = 1; i < keys.size(); ++i) {
+			int expected = Long.compare(a.get(keys, i - 1), a.get(keys, i));
+			if (expected == 0) {
+				expected = Long.compare(b.get(keys, i - 1), b.get(keys, i));
+			}
+			if (expected == 0) {
+				expected = Integer.compare(c.get(keys, i - 1), c.get(keys, i));
+			}
+			assertThat(Integer.signum(wide.compareKeys(keys, i - 1, i))).isEqualTo(Integer.signum(expected));
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+import org.kulturguerilla.byterider.LayoutPlanner.Declaration;
+import org.kulturguerilla.byterider.LayoutPlanner.Plan;
+
+public class LayoutPlannerTests {
+
+	@Test public void picksTheSmallestSize() {
+		LayoutPlanner planner = new LayoutPlanner();
+		planner.addBool("a");
+		planner.addInt(6, "b");
+		assertThat(planner.plan().size()).isEqualTo(Size.BYTE_SET);
+
+		planner.addInt(255, "c");
+		Plan plan = planner.plan();
+		assertThat(plan.size()).isEqualTo(Size.SHORT_SET);
+		assertThat(plan.usedBits()).isEqualTo(12);
+		assertThat(plan.utilization()).isEqualTo(12 / 16.0);
+
+		planner.addLong(1L << 40, "d");
+		assertThat(planner.plan().size()).isEqualTo(Size.LONG_SET);
+	}
+
+	@Test public void fieldsWorkInThePlannedLayout() {
+		LayoutPlanner planner = new LayoutPlanner();
+		Declaration<BoolField> a = planner.addBool("a");
+		Declaration<IntField> b = planner.addInt(-3, 60, "b").hotness(5);
+		Declaration<IntMappedObjField<MyEnum>> c = planner.addEnum(MyEnum.class, "c");
+		Declaration<IntegerField> d = planner.addNullableInt(0, 1000, "d");
+		Plan plan = planner.plan();
+
+		long data = d.field().set(c.field().set(b.field().set(a.field().set(0L), -3), MyEnum.V2), 999);
+		assertThat(a.field().get(data)).isTrue();
+		assertThat(b.field().get(data)).isEqualTo(-3);
+		assertThat(c.field().get(data)).isEqualTo(MyEnum.V2);
+		assertThat(d.field().getOrDefault(data, 0)).isEqualTo(999);
+		assertThat(plan.layout().fields()).hasSize(4);
+		// hottest field first
+		assertThat(b.field().mask() & 1).isEqualTo(1);
+	}
+
+	@Test public void packsWordsWithoutStraddling() {
+		LayoutPlanner planner = new LayoutPlanner();
+		Declaration<LongField> x = planner.addLong((1L << 40) - 1, "x");
+		Declaration<LongField> y = planner.addLong((1L << 40) - 1, "y");
+		Declaration<IntField> z = planner.addInt((1 << 20) - 1, "z");
+		Declaration<IntField> w = planner.addInt((1 << 20) - 1, "w");
+		Plan plan = planner.plan();
+
+		// 120 bits: declaration order would split y, the plan needs two words
+		assertThat(plan.words()).isEqualTo(2);
+		assertThat(plan.size()).isNull();
+		assertThat(plan.usedBits()).isEqualTo(120);
+		assertThat(plan.availableBits()).isEqualTo(128);
+		for (Declaration<?> d : new Declaration<?>[] {x, y, z, w}) {
+			int lowest = d.field().highestBit() - d.bits() + 1;
+			assertThat(lowest >>> 6).as(d.name()).isEqualTo(d.field().highestBit() >>> 6);
+		}
+
+		ByteRiderArray array = new ByteRiderArray(plan.layout());
+		array.append();
+		y.field().set(array, 0, (1L << 40) - 1);
+		w.field().set(array, 0, 12345);
+		assertThat(y.field().get(array, 0)).isEqualTo((1L << 40) - 1);
+		assertThat(w.field().get(array, 0)).isEqualTo(12345);
+		assertThat(x.field().get(array, 0)).isZero();
+	}
+
+	@Test public void groupsShareAWord() {
+		LayoutPlanner planner = new LayoutPlanner();
+		Declaration<LongField> big = planner.addLong((1L << 50) - 1, "big");
+		Declaration<IntField> a = planner.addInt((1 << 20) - 1, "a").group("g");
+		planner.addLong((1L << 40) - 1, "other");
+		Declaration<IntField> b = planner.addInt((1 << 20) - 1, "b").group("g");
+		planner.plan();
+
+		assertThat(a.field().word()).isEqualTo(b.field().word());
+		assertThat(big.field().word()).isNotEqualTo(a.field().word());
+	}
+
+	@Test public void hotFieldsGoIntoTheFirstWord() {
+		LayoutPlanner planner = new LayoutPlanner();
+		planner.addLong((1L << 60) - 1, "cold");
+		Declaration<LongField> hot = planner.addLong((1L << 60) - 1, "hot").hotness(1);
+		planner.plan();
+		assertThat(hot.field().word()).isZero();
+	}
+
+	@Test public void reportListsAllFields() {
+		LayoutPlanner planner = new LayoutPlanner();
+		planner.addBool("flag").group("g");
+		planner.addInt(6, "level").hotness(2);
+		String report = planner.plan().report();
+		assertThat(report).contains("BYTE_SET", "4 of 8 bits", "50.0%", "flag", "level", "group g");
+	}
+
+	@Test public void fieldsExistOnlyAfterPlanning() {
+		LayoutPlanner planner = new LayoutPlanner();
+		Declaration<BoolField> a = planner.addBool("a");
+		assertThatThrownBy(() -> a.field())
+			.isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> planner.addNullableInt(3, 2, "invalid"))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
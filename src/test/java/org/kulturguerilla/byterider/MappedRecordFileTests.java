@@ -0,0 +1,189 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.io.IOException;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class MappedRecordFileTests {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private final static BoolField drivable = br.addBool("isDrivable");
+	private final static IntField net2Class = br.addInt(6, "net2Class");
+	private final static LongField length = br.addLong(-(1L << 40), 1L << 40, "length");
+	private final static IntMappedObjField<MyEnum> eField = br.addObj(3, MyEnum::toInt, MyEnum::fromInt, "my enum");
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private ByteRiderArray sample(int n) {
+		ByteRiderArray array = new ByteRiderArray(br, n);
+		for (int i = 0; i < n; ++i) {
+			array.append();
+			drivable.set(array, i, i % 2 == 1);
+			net2Class.set(array, i, i % 7);
+			length.set(array, i, -i * 1000000L);
+			eField.set(array, i, MyEnum.fromInt(i % 3));
+		}
+		return array;
+	}
+
+	@Test public void writeAndOpen() throws IOException {
+		Path path = folder.newFile().toPath();
+		ByteRiderArray array = sample(1000);
+		MappedRecordFile.write(path, array);
+
+		RecordStorage records = MappedRecordFile.openReadOnly(path, br).records();
+		assertThat(records.size()).isEqualTo(1000);
+		for (int i = 0; i < 1000; ++i) {
+			assertThat(records.word(i)).isEqualTo(array.word(i));
+			assertThat(length.get(records, i)).isEqualTo(-i * 1000000L);
+		}
+	}
+
+	@Test public void dataStartsAligned() throws IOException {
+		Path path = folder.newFile().toPath();
+		MappedRecordFile.write(path, sample(3));
+		assertThat((Files.size(path) - 3 * 8) % 8).isZero();
+	}
+
+	@Test public void changesGoToTheFile() throws IOException {
+		Path path = folder.newFile().toPath();
+		MappedRecordFile created = MappedRecordFile.create(path, br, 10);
+		net2Class.set(created.records(), 9, 6);
+		created.force();
+
+		MappedRecordFile opened = MappedRecordFile.open(path, br);
+		assertThat(net2Class.get(opened.records(), 9)).isEqualTo(6);
+		drivable.set(opened.records(), 0, true);
+		assertThat(drivable.get(MappedRecordFile.open(path, br).records(), 0)).isTrue();
+	}
+
+	@Test public void readOnlyRejectsWrites() throws IOException {
+		Path path = folder.newFile().toPath();
+		MappedRecordFile.write(path, sample(2));
+		RecordStorage records = MappedRecordFile.openReadOnly(path, br).records();
+		assertThatThrownBy(() -> drivable.set(records, 0, true))
+			.isInstanceOf(ReadOnlyBufferException.class);
+	}
+
+	@Test public void differentLayoutIsRejected() throws IOException {
+		Path path = folder.newFile().toPath();
+		MappedRecordFile.write(path, sample(2));
+
+		ByteRider other = new ByteRider();
+		other.addBool("isDrivable");
+		other.addInt(7, "net2Class");
+		other.addLong(-(1L << 40), 1L << 40, "length");
+		other.addObj(3, MyEnum::toInt, MyEnum::fromInt, "my enum");
+		assertThatThrownBy(() -> MappedRecordFile.open(path, other))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("net2Class");
+	}
+
+	enum Colour { RED, GREEN, BLUE }
+	enum Shape { ROUND, SQUARE, FLAT }
+
+	@Test public void differentRangesAndConstantsAreRejected() throws IOException {
+		ByteRider written = new ByteRider();
+		written.addNullableInt(0, 10, "width");
+		written.addEnum(Colour.class, "kind");
+		Path path = folder.newFile().toPath();
+		MappedRecordFile.write(path, new ByteRiderArray(written));
+		assertThat(MappedRecordFile.open(path, written).records().size()).isZero();
+
+		// same bits, but shifted values
+		ByteRider shifted = new ByteRider();
+		shifted.addNullableInt(5, 15, "width");
+		shifted.addEnum(Colour.class, "kind");
+		assertThatThrownBy(() -> MappedRecordFile.open(path, shifted))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("width");
+
+		// same number of constants, but different ones
+		ByteRider renamed = new ByteRider();
+		renamed.addNullableInt(0, 10, "width");
+		renamed.addEnum(Shape.class, "kind");
+		assertThatThrownBy(() -> MappedRecordFile.open(path, renamed))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("ROUND");
+
+		// same range, but not nullable
+		ByteRider plain = new ByteRider();
+		plain.addInt(0, 11, "width");
+		plain.addEnum(Colour.class, "kind");
+		assertThatThrownBy(() -> MappedRecordFile.open(path, plain))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void negativeCountsAreRejected() throws IOException {
+		Path path = folder.newFile().toPath();
+		MappedRecordFile.write(path, sample(2));
+		byte [] content = Files.readAllBytes(path);
+		// fieldCount follows magic, version, recordBytes and records
+		Arrays.fill(content, 20, 24, (byte) 0xFF);
+		Files.write(path, content);
+		assertThatThrownBy(() -> MappedRecordFile.open(path, br))
+			.isInstanceOf(IOException.class)
+			.hasMessageContaining("corrupt");
+	}
+
+	@Test public void longNamesAreRejected() throws IOException {
+		// fewer than 65536 chars, but more than 65535 bytes in UTF-8
+		char [] name = new char[40_000];
+		Arrays.fill(name, '\u00e4');
+		ByteRider layout = new ByteRider();
+		layout.addBool(new String(name));
+		Path path = folder.getRoot().toPath().resolve("long names");
+		assertThatThrownBy(() -> MappedRecordFile.create(path, layout, 1))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(Files.exists(path)).isFalse();
+	}
+
+	@Test public void garbageIsRejected() throws IOException {
+		Path path = folder.newFile().toPath();
+		Files.write(path, "definitely not a record file".getBytes());
+		assertThatThrownBy(() -> MappedRecordFile.open(path, br))
+			.isInstanceOf(IOException.class);
+	}
+
+	@Test public void truncatedFileIsRejected() throws IOException {
+		Path path = folder.newFile().toPath();
+		MappedRecordFile.write(path, sample(10));
+		byte [] content = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(content, content.length - 8));
+		assertThatThrownBy(() -> MappedRecordFile.open(path, br))
+			.isInstanceOf(IOException.class);
+	}
+
+	@Test public void multiWordRecords() throws IOException {
+		ByteRider wide = new ByteRider(2);
+		LongField a = wide.addLong(1L << 40, "a");
+		LongField b = wide.addLong(1L << 40, "b");
+		ByteRiderArray array = new ByteRiderArray(wide);
+		for (int i = 0; i < 100; ++i) {
+			array.append();
+			a.set(array, i, i);
+			b.set(array, i, (1L << 40) - i);
+		}
+		Path path = folder.newFile().toPath();
+		MappedRecordFile.write(path, array);
+		RecordStorage records = MappedRecordFile.openReadOnly(path, wide).records();
+		assertThat(records.size()).isEqualTo(100);
+		for (int i = 0; i < 100; ++i) {
+			assertThat(a.get(records, i)).isEqualTo(i);
+			assertThat(b.get(records, i)).isEqualTo((1L << 40) - i);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class NullableFieldsTests {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private final static BoolField drivable = br.addBool("isDrivable");
+	private final static IntegerField speed = br.addNullableInt(-5, 250, "speed");
+	private final static NullableLongField length = br.addNullableLong(-1000, 1L << 33, "length");
+	private final static NullableEnumField<MyEnum> eField = br.addNullableEnum(MyEnum.class, "my enum");
+
+	@Test public void zeroIsNull() {
+		assertThat(speed.isNull(0L)).isTrue();
+		assertThat(speed.get(0L)).isNull();
+		assertThat(speed.getOrDefault(0L, 42)).isEqualTo(42);
+		assertThat(length.isNull(0L)).isTrue();
+		assertThat(length.get(0L)).isNull();
+		assertThat(length.getOrDefault(0L, -1L)).isEqualTo(-1L);
+		assertThat(eField.isNull(0L)).isTrue();
+		assertThat(eField.get(0L)).isNull();
+		assertThat(eField.getOrDefault(0L, MyEnum.V2)).isEqualTo(MyEnum.V2);
+	}
+
+	@Test public void valuesRoundTrip() {
+		for (int v = -5; v <= 250; ++v) {
+			long data = speed.set(drivable.set(0L), v);
+			assertThat(speed.isNull(data)).isFalse();
+			assertThat(speed.getOrDefault(data, 1000)).isEqualTo(v);
+			assertThat(speed.get(data)).isEqualTo(v);
+			assertThat(drivable.get(data)).isTrue();
+		}
+		for (long v : new long[] {-1000, -1, 0, 1L << 33}) {
+			long data = length.set(-1L, v);
+			assertThat(length.getOrDefault(data, 7)).isEqualTo(v);
+			assertThat(length.get(data)).isEqualTo(v);
+		}
+		for (MyEnum e : MyEnum.values()) {
+			long data = eField.set(0L, e);
+			assertThat(eField.isNull(data)).isFalse();
+			assertThat(eField.get(data)).isEqualTo(e);
+		}
+	}
+
+	@Test public void settingNullClearsOnlyTheField() {
+		long data = speed.set(length.set(eField.set(drivable.set(0L), MyEnum.V1), 17L), 3);
+		long cleared = speed.setNull(data);
+		assertThat(speed.isNull(cleared)).isTrue();
+		assertThat(length.getOrDefault(cleared, 0L)).isEqualTo(17L);
+		assertThat(eField.get(cleared)).isEqualTo(MyEnum.V1);
+		assertThat(drivable.get(cleared)).isTrue();
+
+		assertThat(speed.set(data, (Integer) null)).isEqualTo(cleared);
+		assertThat(length.isNull(length.set(data, (Long) null))).isTrue();
+		assertThat(eField.isNull(eField.setNull(data))).isTrue();
+		assertThat(eField.isNull(eField.set(data, null))).isTrue();
+	}
+
+	@Test public void valuesOutOfRangeFail() {
+		assertThatThrownBy(() -> speed.set(0L, -6))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> speed.set(0L, 251))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> length.set(0L, -1001L))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void invalidRangesFail() {
+		ByteRider other = new ByteRider();
+		assertThatThrownBy(() -> other.addNullableInt(3, 2, "empty"))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> other.addNullableLong(Long.MIN_VALUE, Long.MAX_VALUE, "all"))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(other.addNullableInt(Integer.MIN_VALUE, Integer.MAX_VALUE, "all").mask())
+			.isEqualTo((1L << 33) - 1);
+	}
+
+	@Test public void nullableFieldsOnStorage() {
+		ByteRider wide = new ByteRider(2);
+		wide.addLong(1L << 60, "filler");
+		IntegerField secondWord = wide.addNullableInt(1000, "secondWord");
+		NullableEnumField<MyEnum> e = wide.addNullableEnum(MyEnum.class, "e");
+		ByteRiderArray array = new ByteRiderArray(wide);
+		array.append(new long[2], 2);
+		assertThat(secondWord.isNull(array, 0)).isTrue();
+		secondWord.set(array, 1, 999);
+		e.set(array, 1, MyEnum.V2);
+		assertThat(secondWord.getOrDefault(array, 1, -1)).isEqualTo(999);
+		assertThat(e.get(array, 1)).isEqualTo(MyEnum.V2);
+		assertThat(e.isNull(array, 0)).isTrue();
+		secondWord.setNull(array, 1);
+		assertThat(secondWord.isNull(array, 1)).isTrue();
+		assertThat(e.getOrDefault(array, 1, MyEnum.NONE)).isEqualTo(MyEnum.V2);
+	}
+
+	@Test public void frozenNullableFields() {
+		ByteRider frozen = new ByteRider();
+		IntegerField i = frozen.addNullableInt(-5, 250, "speed");
+		NullableEnumField<MyEnum> e = frozen.addNullableEnum(MyEnum.class, "my enum");
+		frozen.freeze();
+		IntegerField fi = frozen.frozen(i);
+		NullableEnumField<MyEnum> fe = frozen.frozen(e);
+		long data = fe.set(fi.set(0L, -5), MyEnum.NONE);
+		assertThat(i.get(data)).isEqualTo(-5);
+		assertThat(e.get(data)).isEqualTo(MyEnum.NONE);
+		assertThat(fi.isNull(fi.setNull(data))).isTrue();
+	}
+}
@@ -0,0 +1,102 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class PackedIntArrayTests {
+
+	private static int [] random(Random random, int minValue, int maxValue, int length) {
+		int [] values = new int[length];
+		long range = maxValue + 1L - minValue;
+		for (int i = 0; i < length; ++i) {
+			values[i] = (int) (minValue + (long) (random.nextDouble() * range));
+		}
+		return values;
+	}
+
+	@Test public void everyWidthRoundTrips() {
+		Random random = new Random(42);
+		for (int bits = 0; bits <= 32; ++bits) {
+			int minValue = bits == 32 ? Integer.MIN_VALUE : -7;
+			int maxValue = (int) (minValue + (1L << bits) - 1);
+			int [] values = random(random, minValue, maxValue, 1000);
+			values[0] = minValue;
+			values[1] = maxValue;
+
+			PackedIntArray bulk = new PackedIntArray(minValue, maxValue, values.length);
+			assertThat(bulk.bitsPerValue()).isEqualTo(bits);
+			bulk.set(0, values, 0, values.length);
+			PackedIntArray single = new PackedIntArray(minValue, maxValue, values.length);
+			for (int i = 0; i < values.length; ++i) {
+				single.set(i, values[i]);
+			}
+			assertThat(bulk.toArray()).as("%d bits", bits).containsExactly(values);
+			assertThat(single.toArray()).as("%d bits", bits).containsExactly(values);
+			for (int i = 0; i < values.length; ++i) {
+				assertThat(single.get(i)).isEqualTo(values[i]);
+			}
+		}
+	}
+
+	@Test public void fullIntRange() {
+		PackedIntArray a = new PackedIntArray(Integer.MIN_VALUE, Integer.MAX_VALUE, 200);
+		int [] values = random(new Random(1), Integer.MIN_VALUE, Integer.MAX_VALUE, 200);
+		a.set(0, values, 0, values.length);
+		assertThat(a.bitsPerValue()).isEqualTo(32);
+		assertThat(a.toArray()).containsExactly(values);
+	}
+
+	@Test public void unalignedRanges() {
+		int [] values = random(new Random(2), 0, 8191, 500);
+		PackedIntArray a = new PackedIntArray(0, 8191, 500);
+		a.set(3, values, 3, 400);
+		int [] dest = new int[500];
+		a.get(10, dest, 5, 300);
+		for (int i = 0; i < 300; ++i) {
+			assertThat(dest[5 + i]).isEqualTo(values[10 + i]);
+		}
+		assertThat(a.get(2)).isZero();
+		assertThat(a.get(403)).isZero();
+	}
+
+	@Test public void setKeepsNeighbours() {
+		PackedIntArray a = new PackedIntArray(0, (1 << 13) - 1, 100);
+		for (int i = 0; i < 100; ++i) {
+			a.set(i, (1 << 13) - 1);
+		}
+		a.set(4, 0);  // bits 52..64, straddles
+		assertThat(a.get(3)).isEqualTo((1 << 13) - 1);
+		assertThat(a.get(4)).isZero();
+		assertThat(a.get(5)).isEqualTo((1 << 13) - 1);
+	}
+
+	@Test public void fromFields() {
+		ByteRider br = new ByteRider();
+		IntField small = br.addInt(-3, 4, "small");
+		IntMappedObjField<MyEnum> type = br.addEnum(MyEnum.class, "type");
+		PackedIntArray a = PackedIntArray.of(small, 1_000_000);
+		assertThat(a.bitsPerValue()).isEqualTo(3);
+		assertThat(a.sizeInBytes()).isLessThan(1_000_000L * 8 / 20);
+		assertThat(a.get(999_999)).isEqualTo(-3);
+		assertThat(PackedIntArray.of(type, 10).bitsPerValue()).isEqualTo(
+				64 - Long.numberOfLeadingZeros(type.mask()) - Long.numberOfTrailingZeros(type.mask()));
+	}
+
+	@Test public void checks() {
+		PackedIntArray a = new PackedIntArray(0, 10, 5);
+		assertThatThrownBy(() -> a.set(0, 11)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> a.get(5)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> a.get(3, new int[5], 0, 3)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> a.set(0, new int[] {1, 2, 30}, 0, 3))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(a.toArray()).containsExactly(0, 0, 0, 0, 0);
+		assertThatThrownBy(() -> new PackedIntArray(1, 0, 5)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
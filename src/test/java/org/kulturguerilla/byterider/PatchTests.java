@@ -0,0 +1,142 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class PatchTests {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private final static BoolField drivable = br.addBool("isDrivable");
+	private final static IntField net2Class = br.addInt(6, "net2Class");
+	private final static LongField length = br.addLong(-1000, 1L << 33, "length");
+	private final static IntMappedObjField<MyEnum> eField = br.addObj(3, MyEnum::toInt, MyEnum::fromInt, "my enum");
+	private final static IntegerField speed = br.addNullableInt(250, "speed");
+
+	@Test public void patchEqualsChainedSets() {
+		Patch patch = br.update()
+			.set(drivable, true)
+			.set(net2Class, 3)
+			.set(length, -17)
+			.set(eField, MyEnum.V2)
+			.set(speed, (Integer) null)
+			.build();
+		Random random = new Random(42);
+		for (int i = 0; i < 100; ++i) {
+			long data = random.nextLong();
+			long expected = speed.setNull(eField.set(length.set(net2Class.set(
+					drivable.set(data, true), 3), -17), MyEnum.V2));
+			assertThat(patch.apply(data)).isEqualTo(expected);
+		}
+	}
+
+	@Test public void lastValueWins() {
+		long data = br.update().set(net2Class, 3).set(net2Class, 5).set(speed, 7).apply(-1L);
+		assertThat(net2Class.get(data)).isEqualTo(5);
+		assertThat(speed.getOrDefault(data, 0)).isEqualTo(7);
+		assertThat(length.clear(net2Class.clear(speed.clear(data))))
+			.isEqualTo(length.clear(net2Class.clear(speed.clear(-1L))));
+	}
+
+	@Test public void clearZeroesTheField() {
+		long data = net2Class.set(drivable.set(0L), 4);
+		assertThat(br.update().clear(net2Class).apply(data)).isEqualTo(drivable.set(0L));
+	}
+
+	@Test public void valuesAreCheckedWhenAdded() {
+		assertThatThrownBy(() -> br.update().set(net2Class, 7))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void builderCanBeReused() {
+		Patch.Builder builder = br.update().set(net2Class, 1);
+		Patch first = builder.build();
+		Patch second = builder.set(drivable, true).build();
+		assertThat(first.apply(0L)).isEqualTo(net2Class.set(0L, 1));
+		assertThat(second.apply(0L)).isEqualTo(drivable.set(net2Class.set(0L, 1)));
+	}
+
+	@Test public void applyToArrayRange() {
+		ByteRiderArray array = new ByteRiderArray(br);
+		array.append(length.set(0L, 42), 10);
+		Patch patch = br.update().set(net2Class, 6).set(drivable, true).build();
+		patch.apply(array, 2, 5);
+		for (int i = 0; i < 10; ++i) {
+			boolean patched = i >= 2 && i < 5;
+			assertThat(drivable.get(array, i)).isEqualTo(patched);
+			assertThat(net2Class.get(array, i)).isEqualTo(patched ? 6 : 0);
+			assertThat(length.get(array, i)).isEqualTo(42);
+		}
+		assertThatThrownBy(() -> patch.apply(array, 5, 11))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void applyToRawArray() {
+		long [] records = new long[4];
+		br.update().set(speed, 250).build().apply(records, 1, 4);
+		assertThat(speed.isNull(records[0])).isTrue();
+		assertThat(speed.getOrDefault(records[3], 0)).isEqualTo(250);
+	}
+
+	@Test public void multiWordPatches() {
+		ByteRider wide = new ByteRider(2);
+		LongField a = wide.addLong(1L << 60, "a");
+		IntField secondWord = wide.addInt(1000, "secondWord");
+		BoolField last = wide.addBool("last");
+		Patch patch = wide.update().set(secondWord, 999).set(last, true).build();
+
+		ByteRiderArray array = new ByteRiderArray(wide);
+		array.append(new long[2], 3);
+		a.set(array, 1, 12345L);
+		patch.apply(array, 1, 3);
+		assertThat(secondWord.get(array, 0)).isZero();
+		assertThat(secondWord.get(array, 1)).isEqualTo(999);
+		assertThat(last.get(array, 2)).isTrue();
+		assertThat(a.get(array, 1)).isEqualTo(12345L);
+
+		ByteBufferStorage buffer = ByteBufferStorage.allocateDirect(wide, 2);
+		patch.apply(buffer, 1);
+		assertThat(secondWord.get(buffer, 1)).isEqualTo(999);
+		assertThat(last.get(buffer, 0)).isFalse();
+
+		assertThatThrownBy(() -> patch.apply(0L))
+			.isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> patch.apply(new ByteRiderArray(br), 0, 0))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new ByteRiderArray(br).apply(patch, 0, 0))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void otherLayoutsAreRejected() {
+		ByteRider layout = new ByteRider();
+		IntField a = layout.addInt(15, "a");
+		IntField b = layout.addInt(15, "b");
+		// same number of words, different fields
+		ByteRider other = new ByteRider();
+		other.addInt(255, "c");
+		Patch patch = layout.update().set(b, 7).build();
+
+		assertThatThrownBy(() -> patch.apply(new ByteRiderArray(other), 0, 0))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new ByteRiderArray(other).apply(patch, 0, 0))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> other.update().set(a, 1))
+			.isInstanceOf(IllegalArgumentException.class);
+
+		// freezing keeps the layout, both the original and the frozen fields work
+		layout.freeze();
+		ByteRiderArray array = new ByteRiderArray(layout);
+		array.append();
+		patch.apply(array, 0, 1);
+		layout.update().set(layout.frozen(a), 3).set(a, 4).build().apply(array, 0);
+		assertThat(layout.frozen(b).get(array, 0)).isEqualTo(7);
+		assertThat(a.get(array, 0)).isEqualTo(4);
+	}
+}
@@ -0,0 +1,165 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class RadixSortTests {
+
+	static ByteRider br = new ByteRider();
+
+	private final static BoolField flag = br.addBool("flag");
+	private final static IntField small = br.addInt(-3, 12, "small");
+	private final static IntMappedObjField<MyEnum> type = br.addEnum(MyEnum.class, "type");
+	private final static LongField big = br.addLong(-(1L << 30), 1L << 30, "big");
+
+	static ByteRider wide = new ByteRider(2);
+
+	private final static IntField tag = wide.addInt(1 << 20, "tag");
+	private final static IntField low = wide.addInt(-100, 100, "low");
+	/** all of the second word */
+	private final static LongField span = wide.addLong(-5, 1L << 60, "span");
+
+	private static ByteRiderArray random(int n, long seed) {
+		Random random = new Random(seed);
+		ByteRiderArray array = new ByteRiderArray(br, n);
+		array.append(0L, n);
+		for (int i = 0; i < n; ++i) {
+			flag.set(array, i, random.nextBoolean());
+			small.set(array, i, random.nextInt(16) - 3);
+			type.set(array, i, MyEnum.values()[random.nextInt(3)]);
+			big.set(array, i, random.nextInt(2000) - 1000);
+		}
+		return array;
+	}
+
+	private static ByteRiderArray randomWide(int n, long seed) {
+		Random random = new Random(seed);
+		ByteRiderArray array = new ByteRiderArray(wide, n);
+		array.append(new long[2], n);
+		for (int i = 0; i < n; ++i) {
+			tag.set(array, i, random.nextInt(10));
+			span.set(array, i, random.nextBoolean() ? random.nextInt(100) - 5 : random.nextLong() >>> 4);
+			low.set(array, i, random.nextInt(201) - 100);
+		}
+		return array;
+	}
+
+	/** stable reference order of a comparator over record indices. */
+	private static int [] expectedOrder(int n, Comparator<Integer> comparator) {
+		List<Integer> indices = new ArrayList<>();
+		for (int i = 0; i < n; ++i) {
+			indices.add(i);
+		}
+		indices.sort(comparator);
+		return indices.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static Comparator<Integer> byFields(ByteRiderArray array) {
+		return Comparator.<Integer>comparingInt(i -> small.get(array, i))
+			.thenComparingLong(i -> big.get(array, i));
+	}
+
+	@Test public void orderIsStableAndByFieldsFirstMostSignificant() {
+		ByteRiderArray array = random(5_000, 1);
+		int [] order = RadixSort.order(array, small, big);
+		assertThat(order).containsExactly(expectedOrder(array.size(), byFields(array)));
+		// nothing moved
+		assertThat(array.word(0)).isEqualTo(random(5_000, 1).word(0));
+	}
+
+	@Test public void sortMovesRecords() {
+		ByteRiderArray array = random(5_000, 2);
+		ByteRiderArray original = random(5_000, 2);
+		int [] expected = expectedOrder(array.size(), byFields(original));
+		RadixSort.sort(array, small, big);
+		for (int i = 0; i < expected.length; ++i) {
+			assertThat(array.word(i)).isEqualTo(original.word(expected[i]));
+		}
+	}
+
+	@Test public void sortsByEnumAndBoolFields() {
+		ByteRiderArray array = random(1_000, 3);
+		ByteRiderArray original = random(1_000, 3);
+		int [] expected = expectedOrder(array.size(),
+				Comparator.<Integer>comparingInt(i -> type.get(original, i).ordinal())
+					.thenComparing(i -> flag.get(original, i)));
+		RadixSort.sort(array, type, flag);
+		for (int i = 0; i < expected.length; ++i) {
+			assertThat(array.word(i)).isEqualTo(original.word(expected[i]));
+		}
+	}
+
+	@Test public void sortsRangeOfRawArray() {
+		long [] records = new long[100];
+		Random random = new Random(4);
+		for (int i = 0; i < records.length; ++i) {
+			records[i] = small.set(0L, random.nextInt(16) - 3);
+		}
+		long [] copy = records.clone();
+		RadixSort.sort(records, 10, 90, small);
+		for (int i = 0; i < 10; ++i) {
+			assertThat(records[i]).isEqualTo(copy[i]);
+			assertThat(records[90 + i]).isEqualTo(copy[90 + i]);
+		}
+		for (int i = 11; i < 90; ++i) {
+			assertThat(small.get(records[i])).isGreaterThanOrEqualTo(small.get(records[i - 1]));
+		}
+	}
+
+	@Test public void multiWordRecords() {
+		assertThat(span.word()).isEqualTo(1);
+		ByteRiderArray array = randomWide(3_000, 5);
+		ByteRiderArray original = randomWide(3_000, 5);
+		// 21 + 61 + 8 bits of key, more than a long
+		Comparator<Integer> comparator = Comparator.<Integer>comparingInt(i -> tag.get(original, i))
+			.thenComparingLong(i -> span.get(original, i))
+			.thenComparingInt(i -> low.get(original, i));
+		int [] expected = expectedOrder(array.size(), comparator);
+		assertThat(RadixSort.order(array, tag, span, low)).containsExactly(expected);
+
+		RadixSort.sort(array, tag, span, low);
+		for (int i = 0; i < expected.length; ++i) {
+			assertThat(array.word(i, 0)).isEqualTo(original.word(expected[i], 0));
+			assertThat(array.word(i, 1)).isEqualTo(original.word(expected[i], 1));
+		}
+	}
+
+	@Test public void parallelMatchesSequential() {
+		int n = RadixSort.MIN_CHUNK * 5 + 17;
+		ByteRiderArray array = random(n, 6);
+		int [] order = RadixSort.order(array, type, big);
+		assertThat(RadixSort.parallelOrder(array, type, big)).containsExactly(order);
+
+		RadixSort.parallelSort(array, type, big);
+		ByteRiderArray original = random(n, 6);
+		for (int i = 0; i < n; ++i) {
+			assertThat(array.word(i)).isEqualTo(original.word(order[i]));
+		}
+	}
+
+	@Test public void emptyAndEqualKeys() {
+		assertThat(RadixSort.order(new ByteRiderArray(br, 0), small)).isEmpty();
+		ByteRiderArray array = new ByteRiderArray(br, 10);
+		array.append(small.set(0L, 5), 10);
+		assertThat(RadixSort.order(array, small, big)).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+	}
+
+	@Test public void invalidKeys() {
+		assertThatThrownBy(() -> RadixSort.order(random(1, 7)))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> RadixSort.sort(new long[4], 0, 4, span))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> RadixSort.sort(new long[4], 2, 5, small))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+}
@@ -0,0 +1,225 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class RecordScanTests {
+
+	static ByteRider br = new ByteRider(Size.LONG_SET);
+
+	private final static BoolField freeway = br.addBool("freeway");
+	private final static IntField net2Class = br.addInt(-2, 6, "net2Class");
+	private final static LongField length = br.addLong(-1000, 1L << 33, "length");
+	private final static IntMappedObjField<MyEnum> eField = br.addEnum(MyEnum.class, "my enum");
+	private final static IntegerField speed = br.addNullableInt(250, "speed");
+	private final static IntField top = br.addInt(15, "top");
+
+	private static ByteRiderArray randomRecords(int n) {
+		Random random = new Random(42);
+		ByteRiderArray array = new ByteRiderArray(br, n);
+		for (int i = 0; i < n; ++i) {
+			long data = freeway.set(0L, random.nextBoolean());
+			data = net2Class.set(data, random.nextInt(9) - 2);
+			data = length.set(data, random.nextInt(100_000) - 1000);
+			data = eField.set(data, MyEnum.values()[random.nextInt(3)]);
+			data = speed.set(data, random.nextInt(4) == 0 ? null : random.nextInt(251));
+			data = top.set(data, random.nextInt(16));
+			array.append(data);
+		}
+		return array;
+	}
+
+	private static void assertScan(ByteRiderArray array, RecordScan scan, IntPredicate expected) {
+		List<Integer> indices = new ArrayList<>();
+		for (int i = 0; i < array.size(); ++i) {
+			if (expected.test(i)) {
+				indices.add(i);
+			}
+			assertThat(scan.test(array.word(i))).isEqualTo(expected.test(i));
+		}
+		assertThat(scan.count(array)).isEqualTo(indices.size());
+		assertThat(scan.indices(array)).containsExactly(indices.stream().mapToInt(i -> i).toArray());
+		long [] bitmap = scan.bitmap(array);
+		assertThat(bitmap).hasSize((array.size() + 63) / 64);
+		for (int i = 0; i < array.size(); ++i) {
+			assertThat((bitmap[i >>> 6] >>> i & 1) != 0).isEqualTo(expected.test(i));
+		}
+	}
+
+	@Test public void boolAndIntRange() {
+		ByteRiderArray array = randomRecords(1000);
+		RecordScan scan = br.scan().is(freeway, true).between(net2Class, 2, 4).build();
+		assertScan(array, scan, i -> freeway.get(array, i)
+				&& net2Class.get(array, i) >= 2 && net2Class.get(array, i) <= 4);
+	}
+
+	@Test public void negativeRangesAndLongs() {
+		ByteRiderArray array = randomRecords(1000);
+		RecordScan scan = br.scan().between(net2Class, -5, 0).between(length, -1000, 20_000).build();
+		assertScan(array, scan, i -> net2Class.get(array, i) <= 0 && length.get(array, i) <= 20_000);
+	}
+
+	@Test public void enumsAndNulls() {
+		ByteRiderArray array = randomRecords(1000);
+		assertScan(array, br.scan().is(eField, MyEnum.V1).isNull(speed).build(),
+				i -> eField.get(array, i) == MyEnum.V1 && speed.isNull(array, i));
+		assertScan(array, br.scan().isNot(eField, MyEnum.V1).notNull(speed).is(freeway, false).build(),
+				i -> eField.get(array, i) != MyEnum.V1 && !speed.isNull(array, i) && !freeway.get(array, i));
+	}
+
+	@Test public void fieldsInTheTopBits() {
+		ByteRiderArray array = randomRecords(500);
+		assertScan(array, br.scan().between(top, 8, 15).build(), i -> top.get(array, i) >= 8);
+		assertScan(array, br.scan().is(top, 15).build(), i -> top.get(array, i) == 15);
+	}
+
+	@Test public void emptyRangesAndEmptyScans() {
+		ByteRiderArray array = randomRecords(100);
+		assertScan(array, br.scan().between(net2Class, 4, 2).build(), i -> false);
+		assertScan(array, br.scan().between(net2Class, 7, 100).build(), i -> false);
+		assertScan(array, br.scan().build(), i -> true);
+	}
+
+	@Test public void subRangesAndOtherStorage() {
+		ByteRiderArray array = randomRecords(300);
+		RecordScan scan = br.scan().is(freeway, true).build();
+		ByteBufferStorage buffer = ByteBufferStorage.allocateDirect(br, array.size());
+		for (int i = 0; i < array.size(); ++i) {
+			buffer.setWord(i, array.word(i));
+		}
+		assertThat(scan.indices(buffer, 70, 200)).containsExactly(scan.indices(array, 70, 200));
+		assertThat(scan.count(buffer)).isEqualTo(scan.count(array));
+		assertThat(scan.bitmap(buffer, 3, 300)).containsExactly(scan.bitmap(array.toArray(), 3, 300));
+		int [] indices = scan.indices(array, 70, 200);
+		for (int i : indices) {
+			assertThat(i >= 70 && i < 200 && freeway.get(array, i)).isTrue();
+		}
+		assertThatThrownBy(() -> scan.count(array, 0, 301))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void multiWordRecords() {
+		ByteRider wide = new ByteRider(2);
+		IntField a = wide.addInt(1000, "a");
+		wide.addLong(1L << 52, "filler");
+		IntField next = wide.addInt(1000, "next");
+		BoolField b = wide.addBool("b");
+		ByteRiderArray array = new ByteRiderArray(wide);
+		for (int i = 0; i < 200; ++i) {
+			array.append();
+			a.set(array, i, i);
+			b.set(array, i, i % 3 == 0);
+			next.set(array, i, i % 7);
+		}
+		assertScan2(array, wide.scan().between(a, 10, 99).is(b, true).build(),
+				i -> i >= 10 && i < 100 && i % 3 == 0);
+		assertScan2(array, wide.scan().is(next, 3).build(), i -> i % 7 == 3);
+	}
+
+	private static void assertScan2(ByteRiderArray array, RecordScan scan, IntPredicate expected) {
+		int count = 0;
+		for (int i = 0; i < array.size(); ++i) {
+			count += expected.test(i) ? 1 : 0;
+		}
+		assertThat(scan.count(array)).isEqualTo(count);
+		int [] indices = scan.indices(array);
+		assertThat(indices).hasSize(count);
+		for (int i : indices) {
+			assertThat(expected.test(i)).isTrue();
+		}
+	}
+
+	@Test public void updateMatchingRecords() {
+		ByteRiderArray array = randomRecords(1000);
+		ByteRiderArray before = array.copyOf();
+		RecordScan scan = br.scan().is(net2Class, 6).build();
+		Patch patch = br.update().set(freeway, false).set(top, 0).build();
+		int expected = scan.count(array);
+
+		assertThat(scan.update(array, patch)).isEqualTo(expected);
+		for (int i = 0; i < array.size(); ++i) {
+			long old = before.word(i);
+			long expectedWord = net2Class.get(old) == 6 ? patch.apply(old) : old;
+			assertThat(array.word(i)).isEqualTo(expectedWord);
+		}
+		assertThat(scan.update(array, 10, 20, patch))
+			.isEqualTo(scan.count(array, 10, 20));
+	}
+
+	@Test public void updateOtherStorageAndRawArrays() {
+		ByteRiderArray array = randomRecords(500);
+		ByteBufferStorage buffer = ByteBufferStorage.allocateDirect(br, array.size());
+		for (int i = 0; i < array.size(); ++i) {
+			buffer.setWord(i, array.word(i));
+		}
+		long [] raw = array.toArray();
+		RecordScan scan = br.scan().isNull(speed).build();
+		Patch patch = br.update().set(speed, 0).build();
+
+		int n = scan.update(array, patch);
+		assertThat(scan.update(buffer, patch)).isEqualTo(n);
+		assertThat(scan.update(raw, 0, raw.length, patch)).isEqualTo(n);
+		assertThat(buffer.toArray().toArray()).containsExactly(array.toArray());
+		assertThat(raw).containsExactly(array.toArray());
+		assertThat(scan.count(array)).isZero();
+	}
+
+	@Test public void parallelUpdate() {
+		int n = 5 * RecordScan.CHUNK + 17;
+		ByteRiderArray array = randomRecords(n);
+		ByteRiderArray sequential = array.copyOf();
+		ByteBufferStorage buffer = ByteBufferStorage.allocateDirect(br, n);
+		for (int i = 0; i < n; ++i) {
+			buffer.setWord(i, array.word(i));
+		}
+		RecordScan scan = br.scan().is(freeway, true).between(net2Class, 2, 4).build();
+		Patch patch = br.update().set(eField, MyEnum.V2).clear(speed).build();
+
+		int expected = scan.update(sequential, patch);
+		assertThat(scan.parallelUpdate(array, patch)).isEqualTo(expected);
+		assertThat(scan.parallelUpdate(buffer, patch)).isEqualTo(expected);
+		assertThat(array.toArray()).containsExactly(sequential.toArray());
+		assertThat(buffer.toArray().toArray()).containsExactly(sequential.toArray());
+	}
+
+	@Test public void multiWordUpdate() {
+		ByteRider wide = new ByteRider(2);
+		IntField a = wide.addInt(1000, "a");
+		wide.addLong(1L << 52, "filler");
+		IntField secondWord = wide.addInt(1000, "secondWord");
+		ByteRiderArray array = new ByteRiderArray(wide);
+		for (int i = 0; i < 100; ++i) {
+			array.append();
+			a.set(array, i, i);
+		}
+		int updated = wide.scan().between(a, 50, 1000).build()
+			.update(array, wide.update().set(secondWord, 999).build());
+		assertThat(updated).isEqualTo(50);
+		for (int i = 0; i < 100; ++i) {
+			assertThat(secondWord.get(array, i)).isEqualTo(i >= 50 ? 999 : 0);
+			assertThat(a.get(array, i)).isEqualTo(i);
+		}
+		assertThatThrownBy(() -> wide.scan().build().update(array, br.update().build()))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void lessUnsigned() {
+		long [] values = {0, 1, 2, Long.MAX_VALUE, Long.MIN_VALUE, -2, -1};
+		for (long x : values) {
+			for (long y : values) {
+				assertThat(RecordScan.lessUnsigned(x, y))
+					.isEqualTo(Long.compareUnsigned(x, y) < 0 ? 1 : 0);
+			}
+		}
+	}
+}
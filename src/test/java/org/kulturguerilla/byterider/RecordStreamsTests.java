@@ -0,0 +1,144 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import static org.kulturguerilla.byterider.ByteRider.*;
+
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.kulturguerilla.byterider.ByteRiderDemo.MyEnum;
+
+public class RecordStreamsTests {
+
+	static ByteRider br = new ByteRider(2);
+
+	private final static BoolField freeway = br.addBool("freeway");
+	private final static IntField net2Class = br.addInt(-2, 6, "net2Class");
+	private final static LongField length = br.addLong(1L << 50, "length");
+	private final static IntField secondWord = br.addInt(100_000, "secondWord");
+	private final static IntMappedObjField<MyEnum> eField = br.addEnum(MyEnum.class, "my enum");
+
+	private static final int N = 10_000;
+
+	private static ByteRiderArray records() {
+		Random random = new Random(42);
+		ByteRiderArray array = new ByteRiderArray(br, N);
+		for (int i = 0; i < N; ++i) {
+			array.append();
+			freeway.set(array, i, random.nextBoolean());
+			net2Class.set(array, i, random.nextInt(9) - 2);
+			length.set(array, i, random.nextInt(1_000_000));
+			secondWord.set(array, i, random.nextInt(100_001));
+			eField.set(array, i, MyEnum.values()[random.nextInt(3)]);
+		}
+		return array;
+	}
+
+	@Test public void spliteratorsAreSizedAndSplit() {
+		ByteRiderArray array = records();
+		Spliterator.OfLong words = RecordStreams.wordSpliterator(array, 1);
+		assertThat(words.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED)).isTrue();
+		assertThat(words.estimateSize()).isEqualTo(N);
+		Spliterator.OfLong prefix = words.trySplit();
+		assertThat(prefix.estimateSize() + words.estimateSize()).isEqualTo(N);
+		long [] first = new long[1];
+		assertThat(prefix.tryAdvance((long w) -> first[0] = w)).isTrue();
+		assertThat(first[0]).isEqualTo(array.word(0, 1));
+
+		Spliterator.OfInt indices = RecordStreams.indexSpliterator(array);
+		assertThat(indices.hasCharacteristics(Spliterator.SORTED | Spliterator.DISTINCT)).isTrue();
+		assertThat(RecordStreams.indices(array).parallel().sum()).isEqualTo(N * (N - 1) / 2);
+	}
+
+	@Test public void fieldStreamsMatchTheRecords() {
+		ByteRiderArray array = records();
+		int [] classes = net2Class.stream(array).toArray();
+		long [] lengths = length.stream(array).parallel().toArray();
+		int [] secondWords = secondWord.stream(array).parallel().toArray();
+		for (int i = 0; i < N; ++i) {
+			assertThat(classes[i]).isEqualTo(net2Class.get(array, i));
+			assertThat(lengths[i]).isEqualTo(length.get(array, i));
+			assertThat(secondWords[i]).isEqualTo(secondWord.get(array, i));
+		}
+		assertThat(eField.stream(array).parallel().collect(Collectors.toList()))
+			.hasSize(N)
+			.startsWith(eField.get(array, 0), eField.get(array, 1));
+		long [] first = RecordStreams.words(array).limit(3).toArray();
+		assertThat(first).containsExactly(array.word(0), array.word(1), array.word(2));
+	}
+
+	@Test public void reductions() {
+		ByteRiderArray array = records();
+		long sum = 0, lengthSum = 0, freeways = 0;
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		long [] histogram = new long[9];
+		long [] enums = new long[MyEnum.values().length];
+		for (int i = 0; i < N; ++i) {
+			int c = net2Class.get(array, i);
+			sum += c;
+			min = Math.min(min, c);
+			max = Math.max(max, c);
+			histogram[c + 2]++;
+			lengthSum += length.get(array, i);
+			freeways += freeway.get(array, i) ? 1 : 0;
+			enums[eField.get(array, i).ordinal()]++;
+		}
+		assertThat(RecordStreams.sum(net2Class, array)).isEqualTo(sum);
+		assertThat(RecordStreams.min(net2Class, array).getAsInt()).isEqualTo(min);
+		assertThat(RecordStreams.max(net2Class, array).getAsInt()).isEqualTo(max);
+		assertThat(RecordStreams.histogram(net2Class, array)).containsExactly(histogram);
+		assertThat(RecordStreams.sum(length, array)).isEqualTo(lengthSum);
+		assertThat(RecordStreams.count(freeway, array)).isEqualTo(freeways);
+		assertThat(RecordStreams.histogram(eField, array)).containsExactly(enums);
+	}
+
+	@Test public void objectHistogramsHaveOneBucketPerObject() {
+		ByteRider layout = new ByteRider();
+		IntMappedObjField<Integer> obj = layout.addIntMappedObj(5, i -> i, i -> i, "obj");
+		ByteRiderArray array = new ByteRiderArray(layout);
+		for (int i = 0; i < 12; ++i) {
+			array.append();
+			obj.set(array, i, i % 5);
+		}
+		assertThat(RecordStreams.histogram(obj, array)).containsExactly(3, 3, 2, 2, 2);
+		assertThat(RecordStreams.histogram(layout.freeze().frozen(obj), array))
+			.containsExactly(3, 3, 2, 2, 2);
+	}
+
+	@Test public void otherStorage() {
+		ByteRiderArray array = records();
+		ByteBufferStorage buffer = ByteBufferStorage.allocateDirect(br, N);
+		for (int i = 0; i < N; ++i) {
+			buffer.setWord(i, 0, array.word(i, 0));
+			buffer.setWord(i, 1, array.word(i, 1));
+		}
+		assertThat(secondWord.stream(buffer).parallel().toArray())
+			.containsExactly(secondWord.stream(array).toArray());
+		assertThat(RecordStreams.max(length, buffer)).isEqualTo(RecordStreams.max(length, array));
+	}
+
+	@Test public void emptyStorage() {
+		ByteRiderArray array = new ByteRiderArray(br);
+		assertThat(RecordStreams.min(net2Class, array).isPresent()).isFalse();
+		assertThat(RecordStreams.sum(length, array)).isZero();
+		assertThat(RecordStreams.histogram(net2Class, array)).containsOnly(0L);
+	}
+
+	@Test public void histogramRangeIsLimited() {
+		ByteRider wide = new ByteRider(2);
+		IntField all = wide.addInt(Integer.MIN_VALUE, Integer.MAX_VALUE, "all");
+		IntField justFits = wide.addInt(-1, RecordStreams.MAX_HISTOGRAM_BUCKETS - 2, "just fits");
+		IntField tooWide = wide.addInt(-1, RecordStreams.MAX_HISTOGRAM_BUCKETS - 1, "too wide");
+		ByteRiderArray array = new ByteRiderArray(wide);
+		array.append(new long[2], 3);
+		assertThatThrownBy(() -> RecordStreams.histogram(all, array))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> RecordStreams.histogram(tooWide, array))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThat(RecordStreams.histogram(justFits, array)).hasSize(RecordStreams.MAX_HISTOGRAM_BUCKETS);
+	}
+}
@@ -0,0 +1,67 @@
+package org.kulturguerilla.byterider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StreamVByteTests {
+
+	@Test public void everyLengthRoundTrips() {
+		Random random = new Random(42);
+		for (int length = 0; length < 100; ++length) {
+			int [] values = new int[length];
+			for (int i = 0; i < length; ++i) {
+				// shifts spread the values over all encoded lengths
+				values[i] = random.nextInt() >> random.nextInt(32);
+			}
+			byte [] encoded = StreamVByte.encode(values);
+			assertThat(encoded.length).isLessThanOrEqualTo(StreamVByte.maxEncodedLength(length));
+			assertThat(StreamVByte.count(encoded, 0)).isEqualTo(length);
+			assertThat(StreamVByte.decode(encoded)).as("length %d", length).containsExactly(values);
+		}
+	}
+
+	@Test public void extremes() {
+		int [] values = {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, 1, 127, -128, 65535, -65536};
+		assertThat(StreamVByte.decode(StreamVByte.encode(values))).containsExactly(values);
+	}
+
+	@Test public void smallValuesTakeOneByte() {
+		int [] values = new int[1000];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = i % 128 - 64;
+		}
+		assertThat(StreamVByte.encode(values)).hasSize(4 + 250 + 1000);
+	}
+
+	@Test public void matchesDeltaCompression() {
+		Random random = new Random(7);
+		int [] values = new int[10_000];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = random.nextInt(2_000_000) - 1_000_000;
+		}
+		assertThat(StreamVByte.decode(StreamVByte.encode(values)))
+			.containsExactly(DeltaCompression.decode(DeltaCompression.encode(values)));
+	}
+
+	@Test public void offsets() {
+		int [] values = {3, -300, 70_000, -20_000_000, 5};
+		byte [] buffer = new byte[StreamVByte.maxEncodedLength(3) + 7];
+		int written = StreamVByte.encode(values, 1, 3, buffer, 7);
+		assertThat(written).isEqualTo(4 + 1 + 2 + 3 + 4);
+		int [] decoded = new int[5];
+		assertThat(StreamVByte.decode(buffer, 7, decoded, 2)).isEqualTo(3);
+		assertThat(decoded).containsExactly(0, 0, -300, 70_000, -20_000_000);
+	}
+
+	@Test public void checks() {
+		byte [] encoded = StreamVByte.encode(new int[] {1, 2, 3});
+		assertThatThrownBy(() -> StreamVByte.decode(encoded, 0, new int[2], 0))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> StreamVByte.encode(new int[3], 0, 3, new byte[6], 0))
+			.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+}
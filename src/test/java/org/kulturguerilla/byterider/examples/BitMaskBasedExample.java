@@ -50,7 +50,6 @@ public class BitMaskBasedExample implements ExampleInterface {
 	}
 
 	public void setSampleEnum(SampleEnum e) {
-		System.out.println("enum: " + e + " (" + e.ordinal() + ")");
 		data &= (ENUM_FIELD_BITS ^ ALL_BITS);
 		data |= (e.ordinal() << ENUM_OFFSET);
 	}
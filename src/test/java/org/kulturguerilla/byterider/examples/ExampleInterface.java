@@ -1,10 +1,16 @@
 package org.kulturguerilla.byterider.examples;
 
+import org.kulturguerilla.byterider.BitLayout;
+
 /**
  * interface that is implemented by both {@link BitMaskBasedExample} and
  * {@link ByteRiderExample}.
+ *
+ * It also serves as layout for the generated ExampleInterfaceBits, used by
+ * {@link GeneratedExample}.
  */
-interface ExampleInterface {
+@BitLayout
+public interface ExampleInterface {
 
 	/** a flag. */
 	boolean booleanField();
@@ -12,6 +18,7 @@ interface ExampleInterface {
 	void clearBooleanField();
 
 	/** an int, allowed range [-4, +4], nine values (4 bits). */
+	@BitLayout.Range(min = -4, max = 4)
 	int intField();
 	void setIntField(int value);
 
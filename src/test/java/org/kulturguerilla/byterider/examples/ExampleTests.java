@@ -6,7 +6,7 @@ import org.kulturguerilla.byterider.examples.ExampleInterface.SampleEnum;
 import org.junit.Test;
 
 /**
- * Tests that exercise the two implementations of {@link ExampleInterface}
+ * Tests that exercise the implementations of {@link ExampleInterface}
  * and make sure they both behave properly for all valid configurations.
  */
 public class ExampleTests {
@@ -19,6 +19,28 @@ public class ExampleTests {
 		exerciseAllAttributes(new ByteRiderExample(true, 0, SampleEnum.ZERO));
 	}
 
+	@Test public void exerciseGenerated() {
+		exerciseAllAttributes(new GeneratedExample(true, 0, SampleEnum.ZERO));
+	}
+
+	@Test public void generatedLayoutMatchesBitMasks() {
+		assertThat(ExampleInterfaceBits.BOOLEAN_FIELD_MASK).isEqualTo(1);
+		assertThat(ExampleInterfaceBits.INT_FIELD_MASK).isEqualTo(0xF << 1);
+		assertThat(ExampleInterfaceBits.SAMPLE_ENUM_MASK).isEqualTo(0x3 << 5);
+	}
+
+	@Test public void generatedSetterDoesNotOverflowIntoNextField() {
+		long data = WideRangeBits.wide(0, Integer.MAX_VALUE);
+		assertThat(data).isEqualTo(Integer.MAX_VALUE + 10L);
+		assertThat(WideRangeBits.wide(data)).isEqualTo(Integer.MAX_VALUE);
+		assertThat(WideRangeBits.flag(data)).isFalse();
+
+		data = WideRangeBits.wide(WideRangeBits.flag(0, true), -10);
+		assertThat(WideRangeBits.wide(data)).isEqualTo(-10);
+		assertThat(WideRangeBits.flag(data)).isTrue();
+		assertThat(WideRangeBits.FLAG_OFFSET).isEqualTo(32);
+	}
+
 	public void exerciseAllAttributes(ExampleInterface instance) {
 		exerciseBoolField(instance);
 		exerciseIntField(instance);
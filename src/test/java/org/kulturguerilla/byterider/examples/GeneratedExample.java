@@ -0,0 +1,49 @@
+package org.kulturguerilla.byterider.examples;
+
+/**
+ * Same as {@link BitMaskBasedExample}, but using the accessors generated from
+ * the {@link org.kulturguerilla.byterider.BitLayout} annotation on
+ * {@link ExampleInterface}.
+ *
+ * The generated masks and offsets are static final constants, so this
+ * compiles down to the same code as the hand-written version, while keeping
+ * the range checks of byte rider.
+ */
+public class GeneratedExample implements ExampleInterface {
+
+	private long data;
+
+	public GeneratedExample(boolean booleanField, int intField, SampleEnum e) {
+		this.data = ExampleInterfaceBits.booleanField(data, booleanField);
+		this.setIntField(intField);
+		setSampleEnum(e);
+	}
+
+	public boolean booleanField() {
+		return ExampleInterfaceBits.booleanField(data);
+	}
+
+	public void setBooleanField() {
+		this.data = ExampleInterfaceBits.booleanField(data, true);
+	}
+
+	public void clearBooleanField() {
+		this.data = ExampleInterfaceBits.booleanField(data, false);
+	}
+
+	public int intField() {
+		return ExampleInterfaceBits.intField(data);
+	}
+
+	public void setIntField(int value) {
+		this.data = ExampleInterfaceBits.intField(data, value);
+	}
+
+	public SampleEnum sampleEnum() {
+		return ExampleInterfaceBits.sampleEnum(data);
+	}
+
+	public void setSampleEnum(SampleEnum e) {
+		this.data = ExampleInterfaceBits.sampleEnum(data, e);
+	}
+}
@@ -0,0 +1,22 @@
+package org.kulturguerilla.byterider.examples;
+
+import org.kulturguerilla.byterider.BitLayout;
+
+/**
+ * layout for the generated WideRangeBits: an int field whose range doesn't
+ * fit in an int, below another field, with getters that aren't fields in
+ * between.
+ */
+@BitLayout
+public interface WideRange {
+
+	/** 2^31 + 10 values (32 bits). */
+	@BitLayout.Range(min = -10, max = Integer.MAX_VALUE)
+	int wide();
+
+	String label();
+
+	double weight();
+
+	boolean flag();
+}
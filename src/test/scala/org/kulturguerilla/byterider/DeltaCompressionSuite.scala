@@ -26,15 +26,115 @@ class DeltaCompressionSuite extends FlatSpec with PropertyChecks with Matchers w
     forAll(Gen.choose(-63,63)) { i =>
       encodeInt(i) should have length 1 } }
 
-  "delta encoding" should "yield input as output" ignore {
+  "delta encoding" should "yield input as output" in {
     forAll { is: Array[Int] =>
-      decode(encode(is)) should be (is) } }
+      decode(encode(is, Mode.DELTAS), Mode.DELTAS) should be (is) } }
+
+  it should "take one byte per value for small steps" in {
+    forAll(Gen.choose(-1000000, 1000000), Gen.listOfN(100, Gen.choose(-63, 63))) { (start, steps) =>
+      val is = steps.scanLeft(start)(_ + _).tail.toArray
+      encode(is, Mode.DELTAS).length should be <= (is.length + 3) } }
+
+  "delta of delta encoding" should "yield input as output" in {
+    forAll { is: Array[Int] =>
+      decode(encode(is, Mode.DELTAS_OF_DELTAS), Mode.DELTAS_OF_DELTAS) should be (is)
+      val dec = decoder(encode(is, Mode.DELTAS_OF_DELTAS), Mode.DELTAS_OF_DELTAS)
+      is.foreach { i => dec.nextInt() should be (i) } } }
+
+  it should "take one byte per value for a constant rate" in {
+    val is = Array.tabulate(1000)(i => 1500000000 + 1000 * i)
+    encode(is, Mode.DELTAS_OF_DELTAS) should have length (is.length + 8) }
+
+  def slowlyChanging(): Gen[Array[Int]] =
+    for {
+      n <- Gen.choose(0, 1000)
+      start <- Gen.choose(Int.MinValue, Int.MaxValue)
+      step <- Gen.choose(0, 100000)
+      steps <- Gen.listOfN(n, Gen.choose(-step, step))
+    } yield steps.scanLeft(start)(_ + _).tail.toArray
+
+  "packed delta encoding" should "yield input as output" in {
+    forAll(slowlyChanging()) { is =>
+      decodePacked(encodePacked(is)) should be (is) }
+    forAll(Gen.listOfN(300, Gen.choose(Int.MinValue, Int.MaxValue))) { is =>
+      decodePacked(encodePacked(is.toArray)) should be (is.toArray) } }
+
+  it should "decode at an offset" in {
+    forAll(slowlyChanging()) { is =>
+      val buffer = new Array[Byte](maxPackedLength(is.length) + 5)
+      val written = encodePacked(is, 0, is.length, buffer, 5)
+      packedCount(buffer, 5) should be (is.length)
+      val decoded = new Array[Int](is.length + 2)
+      decodePacked(buffer, 5, decoded, 2) should be (is.length)
+      decoded.drop(2) should be (is)
+      written should be <= maxPackedLength(is.length) } }
+
+  it should "be smaller than variable size deltas for slowly changing sequences" in {
+    val random = new java.util.Random(42)
+    val is = Array.iterate(0, 10000)(_ + random.nextInt(2001) - 1000)
+    encodePacked(is).length should be < encode(is, Mode.DELTAS).length }
 
   "variable length delta encoding" should "yield input as output" in {
     forAll(randomSeq()) { is =>
       whenever(is.forall(inRange)) {
         decode(encode(is)) should be (is) } } }
 
+  "encoding into a caller supplied array" should "match the allocating encode" in {
+    forAll(randomSeq()) { is =>
+      val buffer = new Array[Byte](maxEncodedLength(is.length) + 3)
+      val written = encode(is, 0, is.length, buffer, 3)
+      buffer.slice(3, 3 + written) should be (encode(is))
+      val decoded = new Array[Int](is.length + 1)
+      decode(buffer, 3, written, decoded, 1) should be (is.length)
+      decoded.drop(1) should be (is) } }
+
+  it should "fail on a cut off value" in {
+    val encoded = encode(Array(1000))
+    an [IllegalArgumentException] should be thrownBy decode(encoded, 0, 1, new Array[Int](1), 0) }
+
+  "encoding into a ByteBuffer" should "match the allocating encode" in {
+    forAll(randomSeq()) { is =>
+      val direct = java.nio.ByteBuffer.allocateDirect(maxEncodedLength(is.length))
+      encode(is, 0, is.length, direct) should be (direct.position())
+      direct.flip()
+      val bytes = new Array[Byte](direct.remaining())
+      direct.get(bytes)
+      bytes should be (encode(is)) } }
+
+  it should "decode values cut off at the limit once refilled" in {
+    forAll(randomSeq()) { is =>
+      val encoded = encode(is)
+      val window = java.nio.ByteBuffer.allocate(7)
+      val decoded = new Array[Int](is.length)
+      var read = 0
+      var count = 0
+      while (count < is.length) {
+        while (window.hasRemaining && read < encoded.length) { window.put(encoded(read)); read += 1 }
+        window.flip()
+        count += decode(window, decoded, count, is.length - count)
+        window.compact()
+      }
+      decoded should be (is) } }
+
+  "the lazy decoder" should "yield all values in order" in {
+    val dec = new Decoder
+    forAll(randomSeq()) { is =>
+      val encoded = encode(is)
+      dec.reset(encoded, 0, encoded.length)
+      val decoded = Array.newBuilder[Int]
+      while (dec.hasNext) decoded += dec.nextInt()
+      decoded.result() should be (is)
+      dec.position() should be (encoded.length) } }
+
+  "long encoding" should "yield input as output in every mode" in {
+    forAll { ls: Array[Long] =>
+      Mode.values.foreach { mode =>
+        decodeLongs(encode(ls, mode), mode) should be (ls) } } }
+
+  it should "take one byte per value for small steps" in {
+    val ls = Array.tabulate(1000)(i => (1L << 40) + i % 3)
+    encode(ls, Mode.DELTAS).length should be < (ls.length + 10) }
+
   def inRange(i: Int): Boolean = i < 1000000000 && i > -1000000000
 
   def printBytes(in: Array[Byte]): Unit = println(in.map(_.toHexString).mkString("[", "|", "]"))